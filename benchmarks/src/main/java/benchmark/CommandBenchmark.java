@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import Sensor.Simulation_Task;
+import utils.CommandTable;
+import utils.SensorCmdHandler;
+import utils.SensorConfig;
+
+/**
+ * CommandBenchmark SensorCmdHandler.doWork查找命令并发送回复（串口没有发送线程，直接写出）。
+ * 数据发送模块不启动，off只回复已停止
+ *
+ * @author Yibing Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark
+{
+    @Param({ "off", "DS", "get sn", "unknown command" })
+    public String            command;// 收到的命令
+
+    private File             profile;// 临时命令配置文件
+    private MemorySerialPort port;   // 内存串口
+    private SensorCmdHandler handler;// 命令处理模块
+
+
+    @Setup
+    public void setup() throws IOException
+    {
+        profile = File.createTempFile("bench", ".properties");
+        StringBuilder commands = new StringBuilder();
+        for (int i = 0; i < 50; i++)
+        {
+            commands.append("cmd").append(i).append("=reply ").append(i).append("\\r\\n\n");
+        }
+        commands.append("DS=SBE37 ${name} V2.6\\r\\nS>\n");
+        commands.append("get\\ sn=SN 1234\\r\\n\n");
+        Files.write(profile.toPath(), commands.toString().getBytes());
+
+        port = new MemorySerialPort("bench");
+        SensorConfig config = new SensorConfig("bench", "CTD", profile.getPath(), 9600, 1, 1000);
+        Simulation_Task task = new Simulation_Task(port, config, config.getInterval(), (ThreadFactory)null);
+        handler = new SensorCmdHandler(task, port, CommandTable.load(profile.getPath(), "CTD"));
+    }
+
+
+    @TearDown
+    public void tearDown()
+    {
+        profile.delete();
+    }
+
+
+    @Benchmark
+    public Simulation_Task doWork()
+    {
+        return handler.doWork(command);
+    }
+}
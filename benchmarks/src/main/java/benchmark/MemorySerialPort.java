@@ -0,0 +1,153 @@
+package benchmark;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import utils.VirtualSerialPort;
+
+/**
+ * MemorySerialPort 内存中的串口，供基准测试使用。receive()放入的数据由输入流读出，没有数据时read返回0（与RXTX相同）；
+ * 输出流只统计字节数；setCTS(false)模拟对端用RTS/CTS流控要求暂停发送。线路参数和其他串口功能由VirtualSerialPort提供
+ *
+ * @author Yibing Zhang
+ */
+public class MemorySerialPort extends VirtualSerialPort
+{
+    private final Input      input  = new Input(); // 输入流
+    private final Output     output = new Output();// 输出流
+    private volatile boolean cts    = true;        // CTS线的状态
+
+
+    public MemorySerialPort(String name)
+    {
+        super(name);
+    }
+
+
+    /**
+     * 模拟串口收到数据，之前未读完的数据被丢弃
+     *
+     * @param data
+     *            数据，不会被复制
+     * @param offset
+     *            起始位置
+     * @param length
+     *            长度
+     */
+    public void receive(byte[] data, int offset, int length)
+    {
+        input.data = data;
+        input.position = offset;
+        input.limit = offset + length;
+    }
+
+
+    /**
+     * 设置CTS线的状态，为false时开启RTS/CTS流控的发送线程不再写出
+     *
+     * @param cts
+     *            CTS线的状态
+     */
+    public void setCTS(boolean cts)
+    {
+        this.cts = cts;
+    }
+
+
+    @Override
+    public boolean isCTS()
+    {
+        return cts;
+    }
+
+
+    /**
+     * 获取输出流写出的总字节数
+     */
+    public long getBytesWritten()
+    {
+        return output.bytes;
+    }
+
+
+    @Override
+    public InputStream getInputStream()
+    {
+        return input;
+    }
+
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        return output;
+    }
+
+
+    /**
+     * 输入流，读取receive()放入的数据
+     */
+    private static final class Input extends InputStream
+    {
+        private byte[] data;    // 收到的数据
+        private int    position;// 读取位置
+        private int    limit;   // 数据结束位置
+
+
+        @Override
+        public int read()
+        {
+            return position < limit ? data[position++] & 0xff : -1;
+        }
+
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            int n = Math.min(len, limit - position);
+            if (n <= 0)
+            {
+                return 0;
+            }
+            System.arraycopy(data, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+
+        @Override
+        public int available()
+        {
+            return limit - position;
+        }
+
+
+        @Override
+        public void close()
+        {
+            // 与串口的输入流一样，关闭后串口仍然可用
+        }
+    }
+
+
+    /**
+     * 输出流，只统计字节数
+     */
+    private static final class Output extends OutputStream
+    {
+        private volatile long bytes;// 写出的字节数
+
+
+        @Override
+        public void write(int b)
+        {
+            bytes++;
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            bytes += len;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.CommandFramer;
+import utils.SerialPortManager;
+
+/**
+ * ReceiveBenchmark 接收路径：从串口读取一次数据（返回新数组 / 读入重复使用的缓冲区），
+ * 以及把读到的数据按CR LF分割成命令
+ *
+ * @author Yibing Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiveBenchmark
+{
+    @Param({ "16", "256", "4096" })
+    public int               chunk;     // 每次串口事件收到的字节数
+
+    private MemorySerialPort port;      // 内存串口
+    private byte[]           received;  // 收到的数据：连续的命令
+    private byte[]           readBuffer;// 重复使用的读取缓冲区
+    private CommandFramer    framer;    // 命令分帧
+    private Blackhole        blackhole; // 接收分割出的命令
+
+
+    @Setup
+    public void setup(Blackhole blackhole)
+    {
+        this.blackhole = blackhole;
+        port = new MemorySerialPort("bench");
+        StringBuilder commands = new StringBuilder();
+        while (commands.length() < chunk)
+        {
+            commands.append("setInterval 10\r\n");
+        }
+        received = commands.substring(0, chunk).getBytes(StandardCharsets.ISO_8859_1);
+        readBuffer = new byte[1024];
+        framer = new CommandFramer(4096, this::frameReceived);
+    }
+
+
+    private void frameReceived(byte[] frame, int offset, int length)
+    {
+        blackhole.consume(length);
+    }
+
+
+    /**
+     * 每次读取返回新数组
+     */
+    @Benchmark
+    public byte[] readFromPortAllocating()
+    {
+        port.receive(received, 0, received.length);
+        return SerialPortManager.readFromPort(port);
+    }
+
+
+    /**
+     * 读取到重复使用的缓冲区，直到没有数据
+     */
+    @Benchmark
+    public int readFromPortBuffer()
+    {
+        port.receive(received, 0, received.length);
+        int total = 0;
+        int bytesNum;
+        while ((bytesNum = SerialPortManager.readFromPort(port, readBuffer)) > 0)
+        {
+            total += bytesNum;
+        }
+        return total;
+    }
+
+
+    /**
+     * 读取并分帧，与SimulatedSensor的串口监听器相同
+     */
+    @Benchmark
+    public void readAndFrame()
+    {
+        port.receive(received, 0, received.length);
+        int bytesNum;
+        while ((bytesNum = SerialPortManager.readFromPort(port, readBuffer)) > 0)
+        {
+            framer.feed(readBuffer, 0, bytesNum);
+        }
+    }
+
+
+    /**
+     * 只分帧
+     */
+    @Benchmark
+    public void frame()
+    {
+        framer.feed(received, 0, received.length);
+    }
+}
@@ -0,0 +1,112 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import Sensor.RecordBuffer;
+import Sensor.RecordSource;
+import Sensor.RecordSources;
+import utils.SimulatorConfig;
+
+/**
+ * RecordSourceBenchmark Simulation_Task每个周期读取一条记录：非二进制文件逐行读取 / 内存映射，
+ * 二进制文件逐字节 / 固定长度记录，以及按模板生成数据
+ *
+ * @author Yibing Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordSourceBenchmark
+{
+    @Param({ "textStream", "textMapped", "binaryByte", "binaryFixed", "binaryFixedHex", "generated" })
+    public String        source;// 数据源种类
+
+    private File         file;  // 临时数据文件
+    private RecordSource reader;// 数据源
+    private RecordBuffer buffer;// 记录缓冲区
+
+
+    @Setup
+    public void setup() throws IOException
+    {
+        file = File.createTempFile("bench", ".dat");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+        {
+            text.append("25.1234, 35.0123, ").append(1000 + i).append(", 2020-01-01T00:00:00\r\n");
+        }
+        Files.write(file.toPath(), text.toString().getBytes());
+
+        Properties props = new Properties();
+        props.setProperty("sensors", "s");
+        props.setProperty("s.port", "bench");
+        props.setProperty("s.file", file.getPath());
+        switch (source)
+        {
+            case "textStream":
+                props.setProperty("s.fileType", "1");
+                break;
+            case "textMapped":
+                props.setProperty("s.fileType", "1");
+                props.setProperty("s.playback", "mapped");
+                break;
+            case "binaryByte":
+                props.setProperty("s.fileType", "2");
+                break;
+            case "binaryFixed":
+                props.setProperty("s.fileType", "2");
+                props.setProperty("s.binaryFraming", "fixed");
+                props.setProperty("s.recordLength", "48");
+                break;
+            case "binaryFixedHex":
+                props.setProperty("s.fileType", "2");
+                props.setProperty("s.binaryFraming", "fixed");
+                props.setProperty("s.recordLength", "48");
+                props.setProperty("s.binaryEncoding", "hex");
+                break;
+            default:
+                props.setProperty("s.fileType", "3");
+                props.setProperty("s.template",
+                    "${counter},${time},${sine offset=20 amplitude=5},${walk start=35 step=0.01},${noise sd=0.1}");
+                break;
+        }
+        reader = RecordSources.create(SimulatorConfig.parse(props).getSensors().get(0));
+        reader.open();
+        buffer = new RecordBuffer(256);
+    }
+
+
+    @TearDown
+    public void tearDown()
+    {
+        reader.close();
+        file.delete();
+    }
+
+
+    @Benchmark
+    public int next() throws IOException
+    {
+        buffer.clear();
+        reader.next(buffer);
+        return buffer.length();
+    }
+}
@@ -0,0 +1,71 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.SerialPortManager;
+
+/**
+ * SendBenchmark SerialPortManager.sendToPort（命令回复）：没有发送线程时每次打开输出流直接写出，
+ * 有发送线程时插到待发送缓冲区中所有数据记录之前，由发送线程合并写出。数据记录的发送见SendRecordBenchmark
+ *
+ * @author Yibing Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendBenchmark
+{
+    @Param({ "direct", "writer" })
+    public String            path;  // 发送方式
+
+    @Param({ "64", "1024" })
+    public int               size;  // 记录长度
+
+    private MemorySerialPort port;  // 内存串口
+    private byte[]           record;// 记录
+
+
+    @Setup
+    public void setup()
+    {
+        port = new MemorySerialPort("bench");
+        record = new byte[size];
+        Arrays.fill(record, (byte)'x');
+        if ("writer".equals(path))
+        {
+            SerialPortManager.attachWriter(port);
+        }
+    }
+
+
+    @TearDown
+    public void tearDown()
+    {
+        if ("writer".equals(path))
+        {
+            SerialPortManager.closePort(port);
+        }
+    }
+
+
+    @Benchmark
+    public void sendToPort()
+    {
+        SerialPortManager.sendToPort(port, record);
+    }
+}
@@ -0,0 +1,92 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import gnu.io.SerialPort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.PortWriter;
+import utils.SerialPortManager;
+
+/**
+ * SendRecordBenchmark SerialPortManager.sendRecord，与Simulation_Task发送数据记录的方式相同：
+ * drained时发送线程照常写出，测量加入待发送缓冲区的常规路径，缓冲区满（block）时与Simulation_Task一样等待后重试；
+ * full时对端拉低CTS，待发送缓冲区一直是满的，测量overflow的处理：block拒绝加入，dropOldest和coalesce移除旧记录，
+ * dropNewest放弃新记录
+ *
+ * @author Yibing Zhang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendRecordBenchmark
+{
+    @Param({ "drained", "full" })
+    public String            queue;   // 待发送缓冲区的状态
+
+    @Param({ "block", "dropOldest", "dropNewest", "coalesce" })
+    public String            overflow;// 缓冲区满时的处理方式
+
+    @Param({ "64", "1024" })
+    public int               size;    // 记录长度
+
+    private MemorySerialPort port;    // 内存串口
+    private PortWriter       writer;  // 串口的发送线程
+    private boolean          stalled; // 对端是否要求暂停发送
+    private byte[]           record;  // 记录
+
+
+    @Setup
+    public void setup()
+    {
+        port = new MemorySerialPort("bench");
+        record = new byte[size];
+        Arrays.fill(record, (byte)'x');
+        writer = SerialPortManager.attachWriter(port);
+        stalled = "full".equals(queue);
+        if (!stalled)
+        {
+            SerialPortManager.setFlowControl(port, SerialPort.FLOWCONTROL_NONE, PortWriter.Overflow.parse(overflow));
+            return;
+        }
+        port.setCTS(false);
+        SerialPortManager.setFlowControl(port, SerialPort.FLOWCONTROL_RTSCTS_OUT, PortWriter.Overflow.parse(overflow));
+        // 填满待发送缓冲区，直到第一次按overflow处理
+        while (writer.getDroppedCount() + writer.getCoalescedCount() + writer.getBlockedCount() == 0)
+        {
+            SerialPortManager.sendRecord(port, record, 0, record.length);
+        }
+    }
+
+
+    @TearDown
+    public void tearDown()
+    {
+        port.setCTS(true);
+        SerialPortManager.closePort(port);
+    }
+
+
+    @Benchmark
+    public void sendRecord() throws InterruptedException
+    {
+        while (!SerialPortManager.sendRecord(port, record, 0, record.length) && !stalled)
+        {
+            // 与Simulation_Task相同：缓冲区满时等待有空间后重试
+            writer.awaitSpace(record.length);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package Runner;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import Sensor.PlaybackCheckpoint;
+import Sensor.Simulation_Task;
+
+/**
+ * CheckpointStore 把各传感器的回放位置保存在一个小的properties文件中（checkpoint.file），进程重新启动时从中恢复。
+ * 发送线程每发出一条记录只更新内存中的位置，由单独的线程按checkpoint.period周期一次取出所有传感器的位置，
+ * 有变化时才写文件；先写临时文件再改名替换，写到一半退出也不会破坏原来的文件。停止时再保存一次最终的位置。
+ * 每个传感器保存以下几项（前缀为传感器id）：
+ *
+ * <pre>
+ * ctd.file=/data/ctd.dat
+ * ctd.source=stream
+ * ctd.size=1048576
+ * ctd.modified=1700000000000
+ * ctd.position=52311
+ * ctd.record=0
+ * ctd.interval=300
+ * </pre>
+ *
+ * @author Yibing Zhang
+ */
+public class CheckpointStore
+{
+    private final String                          fileName;// 保存回放位置的文件
+    private final int                             period;  // 保存周期(s)
+    private final Map<String, PlaybackCheckpoint> loaded;  // 启动时读到的位置
+    private final List<SimulatedSensor>           sensors; // 已打开的模拟传感器
+    private Map<String, PlaybackCheckpoint>       saved;   // 最近写入文件的位置
+    private ScheduledExecutorService              timer;   // 保存线程
+
+
+    /**
+     * Constructor
+     *
+     * @param fileName
+     *            保存回放位置的文件
+     * @param period
+     *            保存周期(s)
+     */
+    public CheckpointStore(String fileName, int period)
+    {
+        this.fileName = fileName;
+        this.period = period;
+        this.loaded = new HashMap<String, PlaybackCheckpoint>();
+        this.sensors = new ArrayList<SimulatedSensor>();
+        this.saved = new HashMap<String, PlaybackCheckpoint>();
+    }
+
+
+    /**
+     * 读取保存的回放位置，文件不存在时没有任何位置，格式有误的项被忽略
+     */
+    public synchronized void load()
+    {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(fileName))
+        {
+            props.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        catch (FileNotFoundException e)
+        {
+            return;
+        }
+        catch (IOException e)
+        {
+            System.err.println("Fail to read checkpoints " + fileName + ": " + e.getMessage());
+            return;
+        }
+        for (String key : props.stringPropertyNames())
+        {
+            if (!key.endsWith(".position"))
+            {
+                continue;
+            }
+            String id = key.substring(0, key.length() - ".position".length());
+            try
+            {
+                // 没有source的旧文件不会与任何数据源匹配，从头开始
+                loaded.put(id, new PlaybackCheckpoint(props.getProperty(id + ".file", ""),
+                    props.getProperty(id + ".source", ""),
+                    Long.parseLong(props.getProperty(id + ".size", "0").trim()),
+                    Long.parseLong(props.getProperty(id + ".modified", "0").trim()),
+                    Long.parseLong(props.getProperty(key).trim()),
+                    Integer.parseInt(props.getProperty(id + ".record", "0").trim()),
+                    Long.parseLong(props.getProperty(id + ".interval").trim())));
+            }
+            catch (NumberFormatException | NullPointerException e)
+            {
+                System.err.println("Invalid checkpoint of " + id + " in " + fileName);
+            }
+        }
+        saved = new HashMap<String, PlaybackCheckpoint>(loaded);
+    }
+
+
+    /**
+     * 获取启动时读到的回放位置
+     *
+     * @param id
+     *            传感器id
+     * @return 没有保存过时为null
+     */
+    public synchronized PlaybackCheckpoint get(String id)
+    {
+        return loaded.get(id);
+    }
+
+
+    /**
+     * 开始按周期保存回放位置
+     *
+     * @param opened
+     *            已打开的模拟传感器
+     */
+    public synchronized void start(List<SimulatedSensor> opened)
+    {
+        sensors.addAll(opened);
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::save, period, period, TimeUnit.SECONDS);
+    }
+
+
+    /**
+     * 停止保存线程并保存最终的回放位置，应在所有传感器停止之后调用
+     */
+    public void stop()
+    {
+        ScheduledExecutorService stopping;
+        synchronized (this)
+        {
+            stopping = timer;
+            timer = null;
+        }
+        if (stopping != null)
+        {
+            stopping.shutdown();
+            try
+            {
+                stopping.awaitTermination(period, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        save();
+        synchronized (this)
+        {
+            sensors.clear();
+        }
+    }
+
+
+    /**
+     * 取出所有传感器当前的回放位置，有变化时写文件。没有打开的传感器沿用启动时读到的位置
+     */
+    private synchronized void save()
+    {
+        try
+        {
+            Map<String, PlaybackCheckpoint> current = new LinkedHashMap<String, PlaybackCheckpoint>(loaded);
+            for (SimulatedSensor sensor : sensors)
+            {
+                Simulation_Task task = sensor.getTask();
+                PlaybackCheckpoint checkpoint = task == null ? null : task.getCheckpoint();
+                if (checkpoint != null)
+                {
+                    current.put(idOf(sensor), checkpoint);
+                }
+            }
+            if (current.equals(saved))
+            {
+                return;
+            }
+            write(current);
+            saved = current;
+        }
+        catch (IOException e)
+        {
+            System.err.println("Fail to write checkpoints " + fileName + ": " + e.getMessage());
+        }
+        catch (RuntimeException e)
+        {
+            // 不能让定时任务因异常停止
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * 写入临时文件后改名替换原来的文件
+     */
+    private void write(Map<String, PlaybackCheckpoint> checkpoints) throws IOException
+    {
+        Properties props = new Properties();
+        for (Map.Entry<String, PlaybackCheckpoint> e : checkpoints.entrySet())
+        {
+            String id = e.getKey();
+            PlaybackCheckpoint c = e.getValue();
+            props.setProperty(id + ".file", c.getFile());
+            props.setProperty(id + ".source", c.getSource());
+            props.setProperty(id + ".size", String.valueOf(c.getSize()));
+            props.setProperty(id + ".modified", String.valueOf(c.getModified()));
+            props.setProperty(id + ".position", String.valueOf(c.getPosition()));
+            props.setProperty(id + ".record", String.valueOf(c.getRecord()));
+            props.setProperty(id + ".interval", String.valueOf(c.getInterval()));
+        }
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile()))
+        {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            props.store(writer, "SensorSimulator playback checkpoints");
+            writer.flush();
+            out.getFD().sync();
+        }
+        try
+        {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+
+    private static String idOf(SimulatedSensor sensor)
+    {
+        return sensor.getConfig().getId() != null ? sensor.getConfig().getId() : sensor.getConfig().getSensorName();
+    }
+}
@@ -0,0 +1,292 @@
+package Runner;
+
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import utils.LatencyHistogram;
+
+/**
+ * CommandDispatcher 处理模拟器接收到的命令。每个传感器有一个命令信箱（Mailbox），信箱收到命令时
+ * 被放入阻塞队列，工作线程在队列为空时阻塞等待，不占用CPU。同一传感器的命令按顺序处理，
+ * 每次最多连续处理BATCH条后让出，命令突发时其他传感器的响应时间仍然有上限。
+ * 每条命令从收到到处理完成（回复已发送）的时间会被记录。
+ *
+ * @author Yibing Zhang
+ */
+public class CommandDispatcher
+{
+    private static final int             BATCH        = 16;                                // 每次连续处理同一信箱的最多命令数
+    private static final long            STOP_TIMEOUT = 2000;                              // shutdown等待工作线程结束的最长时间(ms)
+
+    private final BlockingQueue<Mailbox> ready        = new LinkedBlockingQueue<Mailbox>();// 有待处理命令的信箱
+    private final Thread[]               workers;                                          // 工作线程
+    private volatile boolean             running      = true;                              // 是否运行
+
+
+    /**
+     * 命令的处理者，通常是一个模拟传感器
+     */
+    public interface CommandTarget
+    {
+        void handleCommand(String cmd);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param threads
+     *            工作线程数
+     */
+    public CommandDispatcher(int threads)
+    {
+        this(threads, null);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param threads
+     *            工作线程数
+     * @param factory
+     *            工作线程的创建方式，例如虚拟线程工厂；为null时创建守护平台线程
+     */
+    public CommandDispatcher(int threads, ThreadFactory factory)
+    {
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            if (factory == null)
+            {
+                workers[i] = new Thread(this::work, "dispatcher-" + (i + 1));
+                workers[i].setDaemon(true);
+            }
+            else
+            {
+                workers[i] = factory.newThread(this::work);
+            }
+        }
+    }
+
+
+    /**
+     * 启动工作线程
+     */
+    public void start()
+    {
+        for (Thread worker : workers)
+        {
+            worker.start();
+        }
+    }
+
+
+    /**
+     * 停止工作线程并等待其结束，未处理的命令被丢弃
+     */
+    public void shutdown()
+    {
+        running = false;
+        for (Thread worker : workers)
+        {
+            worker.interrupt();
+        }
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+        try
+        {
+            for (Thread worker : workers)
+            {
+                if (worker != Thread.currentThread())
+                {
+                    worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * 为一个传感器创建命令信箱
+     *
+     * @param name
+     *            传感器名称
+     * @param target
+     *            命令处理者
+     * @return 命令信箱
+     */
+    public Mailbox register(String name, CommandTarget target)
+    {
+        return new Mailbox(name, target);
+    }
+
+
+    /**
+     * 工作线程：阻塞等待有命令的信箱
+     */
+    private void work()
+    {
+        while (running)
+        {
+            Mailbox mailbox;
+            try
+            {
+                mailbox = ready.take();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            mailbox.drain();
+        }
+    }
+
+
+    /**
+     * 一条待处理的命令及其到达时间
+     */
+    private static final class PendingCommand
+    {
+        final String cmd;     // 命令
+        final long   received;// 到达时间(System.nanoTime)
+
+
+        PendingCommand(String cmd, long received)
+        {
+            this.cmd = cmd;
+            this.received = received;
+        }
+    }
+
+
+    /**
+     * Mailbox 一个传感器的命令信箱，同时统计命令响应时间
+     */
+    public final class Mailbox
+    {
+        private final String                name;                                                   // 传感器名称
+        private final CommandTarget         target;                                                 // 命令处理者
+        private final Queue<PendingCommand> commands  = new ConcurrentLinkedQueue<PendingCommand>();// 待处理命令
+        private final AtomicBoolean         scheduled = new AtomicBoolean(false);                   // 是否已在ready队列中
+        private volatile long               count;                                                  // 已处理命令数
+        private volatile long               totalNanos;                                             // 累计响应时间
+        private volatile long               maxNanos;                                               // 最长响应时间
+        private final LatencyHistogram      histogram = new LatencyHistogram();                     // 响应时间分布
+
+
+        private Mailbox(String name, CommandTarget target)
+        {
+            this.name = name;
+            this.target = target;
+        }
+
+
+        /**
+         * 投递一条命令，立即返回
+         *
+         * @param cmd
+         *            命令
+         */
+        public void post(String cmd)
+        {
+            commands.add(new PendingCommand(cmd, System.nanoTime()));
+            if (scheduled.compareAndSet(false, true))
+            {
+                ready.add(this);
+            }
+        }
+
+
+        /**
+         * 处理最多BATCH条命令，仍有命令时重新排队
+         */
+        private void drain()
+        {
+            for (int i = 0; i < BATCH; i++)
+            {
+                PendingCommand pending = commands.poll();
+                if (pending == null)
+                {
+                    break;
+                }
+                System.out.println(name + " about to respond cmd: " + pending.cmd);
+                try
+                {
+                    target.handleCommand(pending.cmd);
+                }
+                catch (RuntimeException e)
+                {
+                    // 参数格式错误等不能让工作线程退出
+                    e.printStackTrace();
+                }
+                long latency = System.nanoTime() - pending.received;
+                count++;
+                totalNanos += latency;
+                if (latency > maxNanos)
+                {
+                    maxNanos = latency;
+                }
+                histogram.record(latency);
+                System.out.println(name + " responded cmd \"" + pending.cmd + "\" in " + latency / 1000 + " us");
+            }
+            scheduled.set(false);
+            if (!commands.isEmpty() && scheduled.compareAndSet(false, true))
+            {
+                ready.add(this);
+            }
+        }
+
+
+        /**
+         * 获取待处理命令数
+         */
+        public int getQueueSize()
+        {
+            return commands.size();
+        }
+
+
+        /**
+         * 获取已处理命令数
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+
+        /**
+         * 获取平均响应时间(ns)
+         */
+        public long getMeanLatencyNanos()
+        {
+            long n = count;
+            return n == 0 ? 0 : totalNanos / n;
+        }
+
+
+        /**
+         * 获取最长响应时间(ns)
+         */
+        public long getMaxLatencyNanos()
+        {
+            return maxNanos;
+        }
+
+
+        /**
+         * 获取从收到命令到处理完成的时间分布
+         */
+        public LatencyHistogram getLatency()
+        {
+            return histogram;
+        }
+    }
+}
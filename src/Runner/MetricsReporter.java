@@ -0,0 +1,205 @@
+package Runner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import utils.SimulatorConfig;
+
+/**
+ * MetricsReporter 为每个模拟传感器注册SensorMonitor MBean（SensorSimulator:type=Sensor,name=传感器id），
+ * 每秒计算一次速率；可选地按metrics.period周期把所有传感器的统计追加到CSV文件或打印出来。
+ * 采样和写文件在单独的线程中进行，不占用发送数据的调度器线程
+ *
+ * @author Yibing Zhang
+ */
+public class MetricsReporter
+{
+    private static final String CSV_HEADER = "time,sensor,running,records,bytes,recordsPerSec,bytesPerSec,"
+        + "sendMeanUs,sendP99Us,sendMaxUs,writeP99Us,writerQueue,jitterMeanUs,jitterSdUs,jitterMaxUs,late,skipped,"
+        + "commandQueue,commands,commandP50Us,commandP99Us,commandMaxUs,replyP99Us,replyMaxUs";
+
+    private final SimulatorConfig     config;                                   // 配置
+    private final List<SensorMonitor> monitors = new ArrayList<SensorMonitor>();// 各传感器的统计
+    private final List<ObjectName>    names    = new ArrayList<ObjectName>();   // 已注册的MBean
+    private ScheduledExecutorService  timer;                                    // 采样线程
+    private PrintWriter               csv;                                      // CSV文件
+    private long                      ticks;                                    // 采样次数
+
+
+    public MetricsReporter(SimulatorConfig config)
+    {
+        this.config = config;
+    }
+
+
+    /**
+     * 注册MBean并开始采样
+     *
+     * @param sensors
+     *            已打开的模拟传感器
+     */
+    public synchronized void start(List<SimulatedSensor> sensors)
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (SimulatedSensor sensor : sensors)
+        {
+            SensorMonitor monitor = new SensorMonitor(sensor);
+            monitors.add(monitor);
+            if (!config.isMetricsJmx())
+            {
+                continue;
+            }
+            String id = sensor.getConfig().getId() != null ? sensor.getConfig().getId()
+                : sensor.getConfig().getSensorName();
+            try
+            {
+                ObjectName name = new ObjectName("SensorSimulator:type=Sensor,name=" + ObjectName.quote(id));
+                server.registerMBean(monitor, name);
+                names.add(name);
+            }
+            catch (JMException e)
+            {
+                System.err.println("Fail to register MBean for " + id + ": " + e.getMessage());
+            }
+        }
+        if (config.getMetricsCsv() != null)
+        {
+            try
+            {
+                boolean exists = new File(config.getMetricsCsv()).length() > 0;
+                csv = new PrintWriter(new OutputStreamWriter(new FileOutputStream(config.getMetricsCsv(), true),
+                    StandardCharsets.UTF_8));
+                if (!exists)
+                {
+                    csv.println(CSV_HEADER);
+                    csv.flush();
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Fail to open metrics file " + config.getMetricsCsv() + ": " + e.getMessage());
+            }
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+    }
+
+
+    /**
+     * 每秒一次：计算速率，到了快照周期时写CSV或打印
+     */
+    private synchronized void tick()
+    {
+        try
+        {
+            long now = System.nanoTime();
+            for (SensorMonitor monitor : monitors)
+            {
+                monitor.sample(now);
+            }
+            ticks++;
+            if (ticks % config.getMetricsPeriod() == 0 && (csv != null || config.isMetricsLog()))
+            {
+                snapshot();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // 不能让定时任务因异常停止
+            e.printStackTrace();
+        }
+    }
+
+
+    private void snapshot()
+    {
+        String time = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date());
+        for (SensorMonitor m : monitors)
+        {
+            if (csv != null)
+            {
+                csv.println(time + "," + m.getSensorName() + "," + m.isRunning() + "," + m.getRecordCount() + ","
+                    + m.getByteCount() + "," + Math.round(m.getRecordsPerSecond()) + ","
+                    + Math.round(m.getBytesPerSecond()) + "," + m.getSendLatencyMeanMicros() + ","
+                    + m.getSendLatencyP99Micros() + "," + m.getSendLatencyMaxMicros() + ","
+                    + m.getWriteLatencyP99Micros() + "," + m.getWriterQueueDepth() + ","
+                    + m.getPeriodJitterMeanMicros() + "," + m.getPeriodJitterStdDevMicros() + ","
+                    + m.getPeriodJitterMaxMicros() + "," + m.getLatePeriods() + "," + m.getSkippedPeriods() + ","
+                    + m.getCommandQueueDepth() + "," + m.getCommandCount() + "," + m.getCommandLatencyP50Micros()
+                    + "," + m.getCommandLatencyP99Micros() + "," + m.getCommandLatencyMaxMicros() + ","
+                    + m.getReplyLatencyP99Micros() + "," + m.getReplyLatencyMaxMicros());
+            }
+            if (config.isMetricsLog())
+            {
+                System.out.println(m.getSensorName() + " metrics: " + Math.round(m.getRecordsPerSecond()) + " rec/s "
+                    + Math.round(m.getBytesPerSecond()) + " B/s, send p99=" + m.getSendLatencyP99Micros()
+                    + "us, jitter sd=" + m.getPeriodJitterStdDevMicros() + "us max=" + m.getPeriodJitterMaxMicros()
+                    + "us, commands queued=" + m.getCommandQueueDepth() + " p99=" + m.getCommandLatencyP99Micros()
+                    + "us, reply p99=" + m.getReplyLatencyP99Micros() + "us");
+            }
+        }
+        if (csv != null)
+        {
+            csv.flush();
+        }
+    }
+
+
+    /**
+     * 停止采样，注销MBean并关闭CSV文件
+     */
+    public synchronized void stop()
+    {
+        if (timer != null)
+        {
+            timer.shutdownNow();
+            timer = null;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : names)
+        {
+            try
+            {
+                server.unregisterMBean(name);
+            }
+            catch (JMException e)
+            {
+                System.err.println("Fail to unregister MBean " + name);
+            }
+        }
+        names.clear();
+        monitors.clear();
+        if (csv != null)
+        {
+            csv.close();
+            csv = null;
+        }
+    }
+
+
+    /**
+     * 获取各传感器的统计
+     */
+    public synchronized List<SensorMonitor> getMonitors()
+    {
+        return new ArrayList<SensorMonitor>(monitors);
+    }
+}
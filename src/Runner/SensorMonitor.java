@@ -0,0 +1,307 @@
+package Runner;
+
+import Sensor.JitterStats;
+import Sensor.SendStats;
+import Sensor.Simulation_Task;
+import utils.LatencyHistogram;
+import utils.PortFanOut;
+import utils.PortWriter;
+
+/**
+ * SensorMonitor SensorMonitorMBean的实现，只读取SimulatedSensor中已有的统计，不在发送和命令处理路径上增加开销。
+ * 速率由MetricsReporter每秒调用sample()计算
+ *
+ * @author Yibing Zhang
+ */
+public class SensorMonitor implements SensorMonitorMBean
+{
+    private final SimulatedSensor sensor;           // 模拟传感器
+    private long                  lastSample;       // 上次采样时间(ns)
+    private long                  lastRecords;      // 上次采样时的记录数
+    private long                  lastBytes;        // 上次采样时的字节数
+    private volatile double       recordsPerSecond; // 最近一秒的记录速率
+    private volatile double       bytesPerSecond;   // 最近一秒的字节速率
+
+
+    public SensorMonitor(SimulatedSensor sensor)
+    {
+        this.sensor = sensor;
+        this.lastSample = System.nanoTime();
+    }
+
+
+    /**
+     * 计算上次采样以来的速率，只由MetricsReporter的线程调用
+     *
+     * @param now
+     *            当前时间(ns)
+     */
+    void sample(long now)
+    {
+        long records = getRecordCount();
+        long bytes = getByteCount();
+        long elapsed = now - lastSample;
+        if (elapsed > 0)
+        {
+            recordsPerSecond = (records - lastRecords) * 1e9 / elapsed;
+            bytesPerSecond = (bytes - lastBytes) * 1e9 / elapsed;
+        }
+        lastSample = now;
+        lastRecords = records;
+        lastBytes = bytes;
+    }
+
+
+    private SendStats sendStats()
+    {
+        Simulation_Task task = sensor.getTask();
+        return task == null ? null : task.getSendStats();
+    }
+
+
+    private JitterStats jitter()
+    {
+        Simulation_Task task = sensor.getTask();
+        return task == null ? null : task.getJitterStats();
+    }
+
+
+    private static long micros(long nanos)
+    {
+        return nanos / 1000;
+    }
+
+
+    @Override
+    public String getSensorName()
+    {
+        return sensor.getConfig().getSensorName();
+    }
+
+
+    @Override
+    public String getPortName()
+    {
+        return sensor.getConfig().getPortName();
+    }
+
+
+    @Override
+    public boolean isRunning()
+    {
+        Simulation_Task task = sensor.getTask();
+        return task != null && task.getRunningState();
+    }
+
+
+    @Override
+    public long getRecordCount()
+    {
+        SendStats stats = sendStats();
+        return stats == null ? 0 : stats.getRecordCount();
+    }
+
+
+    @Override
+    public long getByteCount()
+    {
+        SendStats stats = sendStats();
+        return stats == null ? 0 : stats.getByteCount();
+    }
+
+
+    @Override
+    public double getRecordsPerSecond()
+    {
+        return recordsPerSecond;
+    }
+
+
+    @Override
+    public double getBytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+
+
+    @Override
+    public long getSendLatencyMeanMicros()
+    {
+        SendStats stats = sendStats();
+        return stats == null ? 0 : micros(stats.getSendLatency().getMeanNanos());
+    }
+
+
+    @Override
+    public long getSendLatencyP99Micros()
+    {
+        SendStats stats = sendStats();
+        return stats == null ? 0 : micros(stats.getSendLatency().getPercentileNanos(99));
+    }
+
+
+    @Override
+    public long getSendLatencyMaxMicros()
+    {
+        SendStats stats = sendStats();
+        return stats == null ? 0 : micros(stats.getSendLatency().getMaxNanos());
+    }
+
+
+    @Override
+    public long getWriteLatencyP99Micros()
+    {
+        PortWriter writer = sensor.getWriter();
+        return writer == null ? 0 : micros(writer.getWriteLatency().getPercentileNanos(99));
+    }
+
+
+    @Override
+    public int getWriterQueueDepth()
+    {
+        PortWriter writer = sensor.getWriter();
+        return writer == null ? 0 : writer.getQueueDepth();
+    }
+
+
+    @Override
+    public long getDroppedRecords()
+    {
+        PortWriter writer = sensor.getWriter();
+        return writer == null ? 0 : writer.getDroppedCount();
+    }
+
+
+    @Override
+    public long getCoalescedRecords()
+    {
+        PortWriter writer = sensor.getWriter();
+        return writer == null ? 0 : writer.getCoalescedCount();
+    }
+
+
+    @Override
+    public long getFlowPauses()
+    {
+        PortWriter writer = sensor.getWriter();
+        return writer == null ? 0 : writer.getFlowPauseCount();
+    }
+
+
+    @Override
+    public boolean isFlowPaused()
+    {
+        PortWriter writer = sensor.getWriter();
+        return writer != null && writer.isPaused();
+    }
+
+
+    @Override
+    public String[] getPortLag()
+    {
+        PortFanOut fanOut = sensor.getFanOut();
+        return fanOut == null ? new String[0] : fanOut.describe();
+    }
+
+
+    @Override
+    public long getPeriodJitterMeanMicros()
+    {
+        JitterStats stats = jitter();
+        return stats == null ? 0 : micros(stats.getMeanErrorNanos());
+    }
+
+
+    @Override
+    public long getPeriodJitterStdDevMicros()
+    {
+        JitterStats stats = jitter();
+        return stats == null ? 0 : micros(stats.getStdDevNanos());
+    }
+
+
+    @Override
+    public long getPeriodJitterMaxMicros()
+    {
+        JitterStats stats = jitter();
+        return stats == null ? 0 : micros(stats.getMaxAbsErrorNanos());
+    }
+
+
+    @Override
+    public long getLatePeriods()
+    {
+        JitterStats stats = jitter();
+        return stats == null ? 0 : stats.getLateTicks();
+    }
+
+
+    @Override
+    public long getSkippedPeriods()
+    {
+        JitterStats stats = jitter();
+        return stats == null ? 0 : stats.getSkipped();
+    }
+
+
+    @Override
+    public int getCommandQueueDepth()
+    {
+        CommandDispatcher.Mailbox mailbox = sensor.getMailbox();
+        return mailbox == null ? 0 : mailbox.getQueueSize();
+    }
+
+
+    @Override
+    public long getCommandCount()
+    {
+        CommandDispatcher.Mailbox mailbox = sensor.getMailbox();
+        return mailbox == null ? 0 : mailbox.getCount();
+    }
+
+
+    @Override
+    public long getCommandLatencyP50Micros()
+    {
+        return commandLatency(50);
+    }
+
+
+    @Override
+    public long getCommandLatencyP99Micros()
+    {
+        return commandLatency(99);
+    }
+
+
+    @Override
+    public long getCommandLatencyMaxMicros()
+    {
+        CommandDispatcher.Mailbox mailbox = sensor.getMailbox();
+        return mailbox == null ? 0 : micros(mailbox.getLatency().getMaxNanos());
+    }
+
+
+    @Override
+    public long getReplyLatencyP99Micros()
+    {
+        PortWriter writer = sensor.getWriter();
+        return writer == null ? 0 : micros(writer.getReplyLatency().getPercentileNanos(99));
+    }
+
+
+    @Override
+    public long getReplyLatencyMaxMicros()
+    {
+        PortWriter writer = sensor.getWriter();
+        return writer == null ? 0 : micros(writer.getReplyLatency().getMaxNanos());
+    }
+
+
+    private long commandLatency(double percentile)
+    {
+        CommandDispatcher.Mailbox mailbox = sensor.getMailbox();
+        LatencyHistogram latency = mailbox == null ? null : mailbox.getLatency();
+        return latency == null ? 0 : micros(latency.getPercentileNanos(percentile));
+    }
+}
@@ -0,0 +1,144 @@
+package Runner;
+
+/**
+ * SensorMonitorMBean 一个模拟传感器的运行统计，通过JMX查看（如jconsole，VisualVM）。
+ * 时间单位为微秒，速率为最近一秒的平均值
+ *
+ * @author Yibing Zhang
+ */
+public interface SensorMonitorMBean
+{
+    String getSensorName();
+
+
+    String getPortName();
+
+
+    boolean isRunning();
+
+
+    /**
+     * 已发送的数据记录数
+     */
+    long getRecordCount();
+
+
+    /**
+     * 已发送的数据字节数
+     */
+    long getByteCount();
+
+
+    double getRecordsPerSecond();
+
+
+    double getBytesPerSecond();
+
+
+    /**
+     * 发送模块调用sendToPort的耗时
+     */
+    long getSendLatencyMeanMicros();
+
+
+    long getSendLatencyP99Micros();
+
+
+    long getSendLatencyMaxMicros();
+
+
+    /**
+     * 发送线程每批数据写出串口的耗时
+     */
+    long getWriteLatencyP99Micros();
+
+
+    /**
+     * 发送线程中等待写出的记录数
+     */
+    int getWriterQueueDepth();
+
+
+    /**
+     * 发送线程因缓冲区满而放弃的数据记录数（overflow为dropOldest或dropNewest）
+     */
+    long getDroppedRecords();
+
+
+    /**
+     * 发送线程中被更新的记录替换掉的数据记录数（overflow为coalesce）
+     */
+    long getCoalescedRecords();
+
+
+    /**
+     * 发送线程因对端流控（CTS或XOFF）暂停写出的次数
+     */
+    long getFlowPauses();
+
+
+    /**
+     * 发送线程当前是否正因对端流控暂停写出
+     */
+    boolean isFlowPaused();
+
+
+    /**
+     * 配置了mirrors时每个输出串口的积压：等待写出的记录数和因积压而放弃的记录数，没有mirrors时为空
+     */
+    String[] getPortLag();
+
+
+    /**
+     * 实际发送周期与目标周期的平均偏差
+     */
+    long getPeriodJitterMeanMicros();
+
+
+    long getPeriodJitterStdDevMicros();
+
+
+    long getPeriodJitterMaxMicros();
+
+
+    /**
+     * 落后至少一个周期的次数
+     */
+    long getLatePeriods();
+
+
+    /**
+     * 因落后而跳过的周期数
+     */
+    long getSkippedPeriods();
+
+
+    /**
+     * 等待处理的命令数
+     */
+    int getCommandQueueDepth();
+
+
+    long getCommandCount();
+
+
+    /**
+     * 从收到命令到处理完成（回复已交给发送线程）的时间
+     */
+    long getCommandLatencyP50Micros();
+
+
+    long getCommandLatencyP99Micros();
+
+
+    long getCommandLatencyMaxMicros();
+
+
+    /**
+     * 命令回复从交给发送线程到写出串口的时间，加上命令处理时间即为从收到命令到回复写出的时间
+     */
+    long getReplyLatencyP99Micros();
+
+
+    long getReplyLatencyMaxMicros();
+}
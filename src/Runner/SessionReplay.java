@@ -0,0 +1,267 @@
+package Runner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import Sensor.Simulation_Task;
+import utils.SessionLog;
+
+/**
+ * SessionReplay 把会话记录中的命令按原来的时间重新投递给模拟传感器，用于重现现场问题和回归测试。
+ * 加速回放时命令的时间和传感器的发送周期按同样的倍数缩短。每条命令等到传感器已经发出与记录中同样多的数据记录，
+ * 再从最近一条数据记录起按记录中的间隔（除以加速倍数）投递，使命令与数据记录的相对位置不因调度误差而漂移；
+ * max（尽快）时只看记录数。
+ * 回放期间传感器的输出（数据记录和回复）与记录中的输出比较，结束时打印命令数，记录数，耗时和输出是否一致
+ *
+ * @author Yibing Zhang
+ */
+public class SessionReplay implements SessionLog.Sink
+{
+    private static final long     WAIT_TIMEOUT = 10000000000L;// 等待传感器发出数据记录的最长时间(ns)
+    private static final long     STOP_TIMEOUT = 2000;        // stop()等待回放线程结束的最长时间(ms)
+
+    private final SimulatedSensor sensor;                     // 模拟传感器
+    private final String          fileName;                   // 会话记录文件
+    private final double          speed;                      // 加速倍数，无穷大表示尽快
+    private final SessionLog.Sink downstream;                 // 同时写入的会话记录，可为null
+    private final long            expectedBytes;              // 记录中输出的总字节数
+    private final long            expectedCrc;                // 记录中输出的校验和
+    private final long            expectedRecords;            // 记录中的数据记录数
+    private final long            duration;                   // 记录的时长(ns)
+    private final Object          lock         = new Object();// 保护以下回放输出的统计
+    private final CRC32           output       = new CRC32(); // 回放输出的校验和，只计算到expectedBytes
+    private long                  records;                    // 回放期间发出的数据记录数
+    private long                  bytes;                      // 回放期间输出的字节数
+    private long                  lastRecord;                 // 最近一条数据记录的发出时间(System.nanoTime)
+    private Thread                thread;                     // 回放线程
+    private volatile boolean      running;                    // 是否运行
+
+
+    private SessionReplay(SimulatedSensor sensor, String fileName, double speed, SessionLog.Sink downstream,
+        long expectedBytes, long expectedCrc, long expectedRecords, long duration)
+    {
+        this.sensor = sensor;
+        this.fileName = fileName;
+        this.speed = speed;
+        this.downstream = downstream;
+        this.expectedBytes = expectedBytes;
+        this.expectedCrc = expectedCrc;
+        this.expectedRecords = expectedRecords;
+        this.duration = duration;
+    }
+
+
+    /**
+     * 读取会话记录，统计其中的输出，用于回放结束时比较
+     *
+     * @param sensor
+     *            模拟传感器
+     * @param fileName
+     *            会话记录文件
+     * @param speed
+     *            加速倍数，Double.POSITIVE_INFINITY为尽快
+     * @param downstream
+     *            回放期间同时写入的会话记录，可为null
+     * @return 回放，尚未开始
+     * @throws IOException
+     *             读取文件出错或文件格式错误
+     */
+    public static SessionReplay load(SimulatedSensor sensor, String fileName, double speed,
+        SessionLog.Sink downstream) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        long bytes = 0;
+        long records = 0;
+        long duration = 0;
+        try (SessionLog.Reader reader = SessionLog.open(fileName))
+        {
+            while (reader.next())
+            {
+                duration = reader.getNanos();
+                if (reader.getType() == SessionLog.RECORD)
+                {
+                    records++;
+                }
+                if (reader.getType() != SessionLog.COMMAND)
+                {
+                    crc.update(reader.getData(), 0, reader.getLength());
+                    bytes += reader.getLength();
+                }
+            }
+        }
+        return new SessionReplay(sensor, fileName, speed, downstream, bytes, crc.getValue(), records, duration);
+    }
+
+
+    /**
+     * 记录回放期间传感器的输出，转发给downstream
+     */
+    @Override
+    public void append(int type, byte[] data, int offset, int length)
+    {
+        if (downstream != null)
+        {
+            downstream.append(type, data, offset, length);
+        }
+        if (type == SessionLog.COMMAND)
+        {
+            return;
+        }
+        synchronized (lock)
+        {
+            if (type == SessionLog.RECORD)
+            {
+                records++;
+                lastRecord = System.nanoTime();
+            }
+            int n = (int)Math.max(0, Math.min(length, expectedBytes - bytes));
+            output.update(data, offset, n);
+            bytes += length;
+            lock.notifyAll();
+        }
+    }
+
+
+    /**
+     * 开始回放
+     */
+    public synchronized void start()
+    {
+        if (running)
+        {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "replay-" + sensor.getConfig().getSensorName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * 停止回放并等待回放线程结束，已投递的命令不受影响
+     */
+    public void stop()
+    {
+        Thread replaying;
+        synchronized (this)
+        {
+            running = false;
+            replaying = thread;
+            thread = null;
+        }
+        if (replaying != null && replaying != Thread.currentThread())
+        {
+            replaying.interrupt();
+            try
+            {
+                replaying.join(STOP_TIMEOUT);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private void run()
+    {
+        String name = sensor.getConfig().getSensorName();
+        long begin = System.nanoTime();
+        int commands = 0;
+        long recordsBefore = 0;
+        long recordNanos = 0;
+        try (SessionLog.Reader reader = SessionLog.open(fileName))
+        {
+            System.out.println(name + " replaying " + fileName + " at " + (Double.isInfinite(speed) ? "max" : speed + "x")
+                + " speed");
+            while (running && reader.next())
+            {
+                if (reader.getType() == SessionLog.RECORD)
+                {
+                    recordsBefore++;
+                    recordNanos = reader.getNanos();
+                }
+                if (reader.getType() != SessionLog.COMMAND)
+                {
+                    continue;
+                }
+                awaitOutput(recordsBefore, 0);
+                long delay;
+                synchronized (lock)
+                {
+                    // 已经多发了数据记录时立即投递
+                    long anchor = recordsBefore == 0 ? begin : lastRecord;
+                    delay = records > recordsBefore ? 0
+                        : anchor + scaled(reader.getNanos() - recordNanos) - System.nanoTime();
+                }
+                if (delay > 0)
+                {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                }
+                sensor.inject(new String(reader.getData(), 0, reader.getLength(), StandardCharsets.ISO_8859_1));
+                commands++;
+            }
+            if (!running)
+            {
+                return;
+            }
+            // 最后一条命令之后的输出
+            awaitOutput(expectedRecords, expectedBytes);
+        }
+        catch (IOException e)
+        {
+            System.err.println(name + ": fail to replay " + fileName + ": " + e.getMessage());
+            return;
+        }
+        catch (InterruptedException e)
+        {
+            // stop()
+            return;
+        }
+        boolean matches;
+        long replayed;
+        synchronized (lock)
+        {
+            matches = bytes >= expectedBytes && output.getValue() == expectedCrc;
+            replayed = records;
+        }
+        System.out.println(name + " replay finished: " + commands + " commands, " + replayed + "/" + expectedRecords
+            + " records in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms (captured "
+            + TimeUnit.NANOSECONDS.toMillis(duration) + " ms), output "
+            + (matches ? "matches the capture" : "differs from the capture"));
+    }
+
+
+    private long scaled(long nanos)
+    {
+        return Double.isInfinite(speed) ? 0 : (long)(nanos / speed);
+    }
+
+
+    /**
+     * 等待传感器发出足够的数据记录和字节，超时后打印提示并继续
+     */
+    private void awaitOutput(long minRecords, long minBytes) throws InterruptedException
+    {
+        Simulation_Task task = sensor.getTask();
+        long period = task == null ? 0 : (long)(TimeUnit.MILLISECONDS.toNanos(task.getInterval()) / speed);
+        long deadline = System.nanoTime() + WAIT_TIMEOUT + period;
+        synchronized (lock)
+        {
+            while (records < minRecords || bytes < minBytes)
+            {
+                long left = deadline - System.nanoTime();
+                if (left <= 0)
+                {
+                    System.err.println(sensor.getConfig().getSensorName() + ": replay expected " + minRecords
+                        + " records but the sensor sent " + records);
+                    return;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, left);
+            }
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package Runner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import gnu.io.SerialPort;
+import utils.CommandFramer;
+import utils.CommandTable;
+import utils.PortFanOut;
+import utils.PortWriter;
+import utils.SensorCmdHandler;
+import utils.SensorConfig;
+import utils.SerialPortManager;
+import utils.SessionLog;
+import Sensor.PlaybackCheckpoint;
+import Sensor.Simulation_Task;
+
+/**
+ * SimulatedSensor 一个模拟传感器的运行状态：串口，数据发送模块，命令信箱。数据发送由共享调度器驱动，
+ * 或者在该传感器自己的（虚拟）线程中进行；收到的命令投递到CommandDispatcher，由该传感器唯一的SensorCmdHandler处理。
+ * 配置了capture时收到的命令和发出的数据记录，回复写入会话记录；配置了replay时由SessionReplay按记录投递命令。
+ * 保存回放位置时（CheckpointStore）从上次的位置和采样间隔继续发送，关闭再打开也从停下的位置继续。
+ * 配置了mirrors时同一数据同时发送到这些串口（PortFanOut），它们只输出数据记录，不接收命令。
+ *
+ * @author Yibing Zhang
+ */
+public class SimulatedSensor
+{
+    private static final int               READ_BUFFER_SIZE = 1024;// 串口读取缓冲区大小
+    private static final int               MAX_COMMAND      = 4096;// 单条命令最大长度
+
+    private final SensorConfig             config;                 // 传感器配置
+    private final ScheduledExecutorService scheduler;              // 共享调度器，为null时使用独立线程
+    private final ThreadFactory            threads;                // 独立线程的创建方式
+    private final CommandDispatcher        dispatcher;             // 命令分发器
+    private final byte[]                   readBuffer;             // 串口读取缓冲区，重复使用
+    private final CommandFramer            framer;                 // 命令分帧
+    private CommandDispatcher.Mailbox      mailbox;                // 命令信箱
+    private SensorCmdHandler               handler;                // 命令处理模块
+    private SerialPort                     port;                   // 串口
+    private volatile Simulation_Task       task;                   // 模拟器数据发送模块
+    private SessionLog.Writer              captureLog;             // 会话记录文件，不记录时为null
+    private SessionLog.Sink                capture;                // 会话记录的接收者，不记录也不回放时为null
+    private SessionReplay                  replay;                 // 会话回放，不回放时为null
+    private boolean                        checkpointing;          // 是否记录回放位置
+    private PlaybackCheckpoint             resume;                 // 上次保存的回放位置
+    private final List<SerialPort>         mirrors;                // 同时接收同一数据的其他串口
+    private PortFanOut                     fanOut;                 // 扇出，没有mirrors时为null
+    private Map<String, SerialPort>        opened;                 // 已经打开的串口，为null时自己打开
+
+
+    public SimulatedSensor(SensorConfig config, ScheduledExecutorService scheduler, CommandDispatcher dispatcher)
+    {
+        this(config, scheduler, null, dispatcher);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param config
+     *            传感器配置
+     * @param scheduler
+     *            共享调度器，为null时每次开始发送数据都用threads创建一个独立线程
+     * @param threads
+     *            独立线程的创建方式，例如虚拟线程工厂；为null时新建平台线程
+     * @param dispatcher
+     *            命令分发器
+     */
+    public SimulatedSensor(SensorConfig config, ScheduledExecutorService scheduler, ThreadFactory threads,
+        CommandDispatcher dispatcher)
+    {
+        this.config = config;
+        this.scheduler = scheduler;
+        this.threads = threads;
+        this.dispatcher = dispatcher;
+        this.readBuffer = new byte[READ_BUFFER_SIZE];
+        this.framer = new CommandFramer(MAX_COMMAND, this::frameReceived);
+        this.mirrors = new ArrayList<SerialPort>();
+    }
+
+
+    /**
+     * 读取命令表，打开会话记录，打开串口（包括mirrors），添加监听器并创建数据发送模块；autoStart时立即开始发送数据，
+     * 回放时开始投递记录中的命令
+     *
+     * @return 串口打开成功返回true，命令表或会话记录读取失败，串口打开失败返回false
+     */
+    public boolean open()
+    {
+        return open(null);
+    }
+
+
+    /**
+     * 使用已经打开的串口（SerialPortManager.openPorts()并行打开）打开模拟传感器，其余与open()相同
+     *
+     * @param opened
+     *            已打开的串口，本传感器使用的串口（port和mirrors）从中取出；为null时自己打开串口。
+     *            其中没有的串口视为打开失败
+     * @return 成功返回true
+     */
+    public boolean open(Map<String, SerialPort> opened)
+    {
+        this.opened = opened;
+        CommandTable commands;
+        try
+        {
+            commands = config.getCommandFile() == null ? CommandTable.defaults()
+                : CommandTable.load(config.getCommandFile(), config.getSensorName());
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            System.err.println(config.getSensorName() + ": fail to load commands " + config.getCommandFile() + ": "
+                + e.getMessage());
+            return false;
+        }
+        if (!openSession())
+        {
+            return false;
+        }
+        port = acquirePort(config.getPortName());
+        if (port == null)
+        {
+            closeSession();
+            return false;
+        }
+        configureOutput(port);
+        if (!openMirrors())
+        {
+            SerialPortManager.closePort(port);
+            closeSession();
+            return false;
+        }
+        long interval = resume != null && replay == null ? resume.getInterval() : config.getInterval();
+        task = scheduler != null ? new Simulation_Task(port, config, interval, scheduler)
+            : new Simulation_Task(port, config, interval, threads);
+        handler = new SensorCmdHandler(task, port, commands);
+        if (fanOut != null)
+        {
+            task.setFanOut(fanOut);
+        }
+        if (replay != null)
+        {
+            task.setTimeScale(config.getReplaySpeed());
+        }
+        else if (checkpointing)
+        {
+            // 回放会话记录时总是从头开始
+            task.setCheckpoint(resume);
+        }
+        task.setCapture(capture);
+        handler.setCapture(capture);
+        mailbox = dispatcher.register(config.getSensorName(), this::handleCommand);
+        generateListener();
+        if (config.isAutoStart())
+        {
+            task.start();
+        }
+        if (replay != null)
+        {
+            replay.start();
+        }
+        return true;
+    }
+
+
+    /**
+     * 记录回放位置，open()时从上次保存的位置继续；应在open()之前调用
+     *
+     * @param resume
+     *            上次保存的回放位置，为null时从头开始
+     */
+    public void setCheckpoint(PlaybackCheckpoint resume)
+    {
+        this.checkpointing = true;
+        this.resume = resume;
+    }
+
+
+    /**
+     * 取出已经打开的串口，或者自己打开
+     *
+     * @return 打开失败时返回null
+     */
+    private SerialPort acquirePort(String name)
+    {
+        if (opened == null)
+        {
+            return SerialPortManager.openPort(name, config.getBaudRate());
+        }
+        return opened.remove(name);
+    }
+
+
+    /**
+     * 以相同的波特率打开mirrors中的串口，任何一个打开失败时关闭已打开的
+     */
+    private boolean openMirrors()
+    {
+        for (String name : config.getMirrors())
+        {
+            SerialPort mirror = acquirePort(name);
+            if (mirror == null)
+            {
+                System.err.println(config.getSensorName() + ": fail to open mirror port " + name);
+                closeMirrors();
+                return false;
+            }
+            configureOutput(mirror);
+            if (config.getFlowControl() != SerialPort.FLOWCONTROL_NONE)
+            {
+                // mirrors不接收命令，只需要流控事件
+                SerialPortManager.addListener(mirror, null);
+            }
+            mirrors.add(mirror);
+        }
+        if (!mirrors.isEmpty())
+        {
+            List<SerialPort> outputs = new ArrayList<SerialPort>(mirrors);
+            outputs.add(0, port);
+            fanOut = new PortFanOut(outputs);
+        }
+        return true;
+    }
+
+
+    /**
+     * 按配置设置串口的发送线程：wirePacing，flowControl和overflow
+     */
+    private void configureOutput(SerialPort output)
+    {
+        PortWriter writer = SerialPortManager.getWriter(output);
+        if (writer != null && config.isWirePacing())
+        {
+            writer.setPacing(true);
+        }
+        if (config.getFlowControl() != SerialPort.FLOWCONTROL_NONE || config.getOverflow() != PortWriter.Overflow.BLOCK)
+        {
+            SerialPortManager.setFlowControl(output, config.getFlowControl(), config.getOverflow());
+        }
+    }
+
+
+    private void closeMirrors()
+    {
+        for (SerialPort mirror : mirrors)
+        {
+            SerialPortManager.closePort(mirror);
+        }
+        mirrors.clear();
+    }
+
+
+    /**
+     * 打开会话记录文件，读取回放的会话记录
+     */
+    private boolean openSession()
+    {
+        try
+        {
+            if (config.getCaptureFile() != null)
+            {
+                captureLog = SessionLog.create(config.getCaptureFile(), config.getSensorName());
+                capture = captureLog;
+            }
+            if (config.getReplayFile() != null)
+            {
+                replay = SessionReplay.load(this, config.getReplayFile(), config.getReplaySpeed(), captureLog);
+                capture = replay;
+            }
+            return true;
+        }
+        catch (IOException e)
+        {
+            System.err.println(config.getSensorName() + ": fail to open session log: " + e.getMessage());
+            closeSession();
+            return false;
+        }
+    }
+
+
+    private void closeSession()
+    {
+        if (replay != null)
+        {
+            replay.stop();
+        }
+        if (captureLog != null)
+        {
+            captureLog.close();
+        }
+    }
+
+
+    /**
+     * 停止回放和数据发送（等待发送线程结束），关闭串口（包括mirrors）和会话记录
+     */
+    public void close()
+    {
+        if (replay != null)
+        {
+            replay.stop();
+        }
+        if (task != null)
+        {
+            task.stop();
+        }
+        SerialPortManager.closePort(port);
+        closeMirrors();
+        if (captureLog != null)
+        {
+            captureLog.close();
+        }
+    }
+
+
+    /**
+     * 处理一条命令，由CommandDispatcher的工作线程调用，同一传感器的命令不会并发处理
+     *
+     * @param cmd
+     *            命令
+     */
+    private void handleCommand(String cmd)
+    {
+        task = handler.doWork(cmd);
+    }
+
+
+    /**
+     * 对串口添加监听器，批量读取到重复使用的缓冲区，由CommandFramer分割出完整命令(以CR LF结尾)后投递到命令信箱
+     */
+    private void generateListener()
+    {
+        SerialPortManager.addListener(port, new SerialPortManager.DataAvailableListener() {
+            @Override
+            public void dataAvailable()
+            {
+                int bytesNum;
+                while ((bytesNum = SerialPortManager.readFromPort(port, readBuffer)) > 0)
+                {
+                    framer.feed(readBuffer, 0, bytesNum);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * 收到一条完整命令
+     */
+    private void frameReceived(byte[] frame, int offset, int length)
+    {
+        SessionLog.Sink sink = capture;
+        if (sink != null)
+        {
+            sink.append(SessionLog.COMMAND, frame, offset, length);
+        }
+        mailbox.post(new String(frame, offset, length, StandardCharsets.ISO_8859_1));
+    }
+
+
+    /**
+     * 投递一条命令，与从串口收到的命令相同处理（会话回放使用）
+     *
+     * @param cmd
+     *            命令，不含CR LF
+     */
+    void inject(String cmd)
+    {
+        SessionLog.Sink sink = capture;
+        if (sink != null)
+        {
+            byte[] frame = cmd.getBytes(StandardCharsets.ISO_8859_1);
+            sink.append(SessionLog.COMMAND, frame, 0, frame.length);
+        }
+        mailbox.post(cmd);
+    }
+
+
+    /**
+     * 获取串口的发送线程
+     *
+     * @return 串口未打开时为null
+     */
+    public PortWriter getWriter()
+    {
+        return port == null ? null : SerialPortManager.getWriter(port);
+    }
+
+
+    /**
+     * 获取扇出的各串口
+     *
+     * @return 没有配置mirrors时为null
+     */
+    public PortFanOut getFanOut()
+    {
+        return fanOut;
+    }
+
+
+    public SensorConfig getConfig()
+    {
+        return config;
+    }
+
+
+    public Simulation_Task getTask()
+    {
+        return task;
+    }
+
+
+    public CommandDispatcher.Mailbox getMailbox()
+    {
+        return mailbox;
+    }
+}
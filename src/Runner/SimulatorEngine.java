@@ -0,0 +1,211 @@
+package Runner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import gnu.io.SerialPort;
+import Sensor.DataFileCache;
+import utils.SensorConfig;
+import utils.SerialPortManager;
+import utils.SimulatorConfig;
+import utils.VirtualThreads;
+
+/**
+ * SimulatorEngine 在同一个JVM中运行多个模拟传感器。所有传感器的数据发送由一个固定大小的共享调度器驱动，
+ * 命令由共享的CommandDispatcher处理，不再为每个传感器单独创建平台线程。JVM支持虚拟线程时（scheduler.mode），
+ * 每个传感器在自己的虚拟线程中发送数据，串口的发送线程，gzip文件的预读线程和命令处理线程也都是虚拟线程，
+ * 不再随传感器数增加平台线程。
+ * 配置了checkpoint.file时由CheckpointStore保存各传感器的回放位置，重新启动后从保存的位置继续发送。
+ *
+ * @author Yibing Zhang
+ */
+public class SimulatorEngine
+{
+    private final SimulatorConfig          config;                                    // 多传感器配置
+    private final ScheduledExecutorService scheduler;                                 // 共享调度器，使用虚拟线程时为null
+    private final ThreadFactory            threads;                                   // 发送数据的虚拟线程工厂
+    private final ThreadFactory            writerThreads;                             // 串口发送线程的虚拟线程工厂
+    private final CommandDispatcher        dispatcher;                                // 命令分发器
+    private final List<SimulatedSensor>    sensors = new ArrayList<SimulatedSensor>();// 已打开的模拟传感器
+    private final CountDownLatch           stopped = new CountDownLatch(1);           // shutdown后释放
+    private final MetricsReporter          metrics;                                   // 运行统计
+    private final CheckpointStore          checkpoints;                               // 回放位置，不保存时为null
+
+
+    public SimulatorEngine(SimulatorConfig config)
+    {
+        this.config = config;
+        if (config.isVirtualThreads())
+        {
+            this.scheduler = null;
+            this.threads = VirtualThreads.newFactory("sensor-");
+            this.writerThreads = VirtualThreads.newFactory("writer-");
+            this.dispatcher = new CommandDispatcher(config.getDispatcherThreads(),
+                VirtualThreads.newFactory("dispatcher-"));
+        }
+        else
+        {
+            this.scheduler = Executors.newScheduledThreadPool(config.getSchedulerThreads(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "simulator-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            this.threads = null;
+            this.writerThreads = null;
+            this.dispatcher = new CommandDispatcher(config.getDispatcherThreads());
+        }
+        this.metrics = new MetricsReporter(config);
+        this.checkpoints = config.getCheckpointFile() == null ? null
+            : new CheckpointStore(config.getCheckpointFile(), config.getCheckpointPeriod());
+    }
+
+
+    /**
+     * 读取保存的回放位置，并行打开所有串口，再依次打开配置中的所有传感器，打开失败的传感器会被跳过；
+     * 之后开始运行统计和保存回放位置
+     *
+     * @return 成功打开的传感器数量
+     */
+    public synchronized int start()
+    {
+        DataFileCache.getInstance().setBudget(config.getCacheBytes());
+        dispatcher.start();
+        if (checkpoints != null)
+        {
+            checkpoints.load();
+        }
+        Map<String, SerialPort> opened = openPorts();
+        for (SensorConfig sensorConfig : config.getSensors())
+        {
+            SimulatedSensor sensor = new SimulatedSensor(sensorConfig, scheduler, threads, dispatcher);
+            Map<String, SerialPort> own = new HashMap<String, SerialPort>();
+            for (String portName : portsOf(sensorConfig))
+            {
+                SerialPort port = opened.get(portName);
+                if (port != null)
+                {
+                    own.put(portName, port);
+                }
+            }
+            if (checkpoints != null)
+            {
+                sensor.setCheckpoint(checkpoints.get(sensorConfig.getId() != null ? sensorConfig.getId()
+                    : sensorConfig.getSensorName()));
+            }
+            if (sensor.open(own))
+            {
+                sensors.add(sensor);
+                System.out.println("Sensor " + sensorConfig.getSensorName() + " on " + sensorConfig.getPortName()
+                    + " ready");
+            }
+            else
+            {
+                System.err.println("Fail to open sensor " + sensorConfig.getId() + " on "
+                    + sensorConfig.getPortName());
+            }
+            // 传感器打开失败时没有用上的串口
+            for (SerialPort port : own.values())
+            {
+                SerialPortManager.closePort(port);
+            }
+        }
+        metrics.start(sensors);
+        if (checkpoints != null)
+        {
+            checkpoints.start(sensors);
+        }
+        return sensors.size();
+    }
+
+
+    /**
+     * 列出一次本机的串口，并行打开所有传感器的串口（port和mirrors），打印耗时和打开成功的串口数
+     */
+    private Map<String, SerialPort> openPorts()
+    {
+        Map<String, Integer> ports = new LinkedHashMap<String, Integer>();
+        for (SensorConfig sensorConfig : config.getSensors())
+        {
+            for (String portName : portsOf(sensorConfig))
+            {
+                ports.put(portName, sensorConfig.getBaudRate());
+            }
+        }
+        long begin = System.nanoTime();
+        Map<String, SerialPort> opened = SerialPortManager.openPorts(ports, config.getOpenTimeout(), writerThreads);
+        System.out.println("Opened " + opened.size() + "/" + ports.size() + " ports in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms");
+        return opened;
+    }
+
+
+    private static List<String> portsOf(SensorConfig sensorConfig)
+    {
+        List<String> ports = new ArrayList<String>();
+        ports.add(sensorConfig.getPortName());
+        ports.addAll(sensorConfig.getMirrors());
+        return ports;
+    }
+
+
+    /**
+     * 停止运行统计和所有传感器（等待发送线程结束），保存最终的回放位置，关闭串口，命令分发器和共享调度器
+     */
+    public synchronized void shutdown()
+    {
+        metrics.stop();
+        for (SimulatedSensor sensor : sensors)
+        {
+            sensor.close();
+        }
+        if (checkpoints != null)
+        {
+            checkpoints.stop();
+        }
+        sensors.clear();
+        dispatcher.shutdown();
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+        }
+        stopped.countDown();
+    }
+
+
+    /**
+     * 阻塞直到shutdown被调用
+     *
+     * @throws InterruptedException
+     */
+    public void awaitShutdown() throws InterruptedException
+    {
+        stopped.await();
+    }
+
+
+    public MetricsReporter getMetrics()
+    {
+        return metrics;
+    }
+
+
+    public synchronized List<SimulatedSensor> getSensors()
+    {
+        return Collections.unmodifiableList(new ArrayList<SimulatedSensor>(sensors));
+    }
+}
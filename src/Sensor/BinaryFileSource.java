@@ -0,0 +1,91 @@
+package Sensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * BinaryFileSource 读取二进制文件，每次发送一个byte，以16进制发送
+ *
+ * @author Yibing Zhang
+ */
+class BinaryFileSource implements RecordSource
+{
+    private final String     fileName;// 文件名字
+    private RandomAccessFile scan;    // 数据文件
+    private long             endpos;  // 数据文件长度
+    private long             next;    // 下一条记录的文件偏移
+
+
+    BinaryFileSource(String fileName)
+    {
+        this.fileName = fileName;
+    }
+
+
+    @Override
+    public void open() throws IOException
+    {
+        File f = new File(fileName);
+        scan = new RandomAccessFile(f, "r");
+        endpos = f.length();
+        next = 0;
+    }
+
+
+    @Override
+    public boolean next(RecordBuffer out) throws IOException
+    {
+        if (scan.getFilePointer() == endpos)
+        {
+            return false;
+        }
+        // 读取2进制文件，以16进制发送
+        out.put(Integer.toHexString(scan.readByte() & 0xff).getBytes());
+        next = scan.getFilePointer();
+        if (next == endpos)
+        {
+            scan.seek(0);
+            next = 0;
+        }
+        return true;
+    }
+
+
+    @Override
+    public long position()
+    {
+        return next;
+    }
+
+
+    @Override
+    public boolean seek(long position) throws IOException
+    {
+        if (position < 0 || position >= endpos)
+        {
+            return false;
+        }
+        scan.seek(position);
+        next = position;
+        return true;
+    }
+
+
+    @Override
+    public void close()
+    {
+        if (scan != null)
+        {
+            try
+            {
+                scan.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            scan = null;
+        }
+    }
+}
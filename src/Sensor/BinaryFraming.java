@@ -0,0 +1,221 @@
+package Sensor;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * BinaryFraming 二进制数据文件的记录划分方式：
+ * <ul>
+ * <li>BYTE 每次一个byte（原来的方式）</li>
+ * <li>FIXED 固定长度的记录</li>
+ * <li>LENGTH_PREFIXED 每条记录以1，2或4字节的长度字段开头</li>
+ * <li>SYNC 每条记录以同步字开头，到下一个同步字为止</li>
+ * </ul>
+ *
+ * @author Yibing Zhang
+ */
+public final class BinaryFraming
+{
+    /**
+     * 划分方式
+     */
+    public enum Type
+    {
+        BYTE, FIXED, LENGTH_PREFIXED, SYNC
+    }
+
+    private final Type    type;                // 划分方式
+    private final int     recordLength;        // FIXED：记录长度
+    private final int     lengthBytes;         // LENGTH_PREFIXED：长度字段字节数
+    private final boolean bigEndian;           // LENGTH_PREFIXED：长度字段是否为大端
+    private final boolean lengthIncludesHeader;// LENGTH_PREFIXED：长度是否包含长度字段本身
+    private final byte[]  syncWord;            // SYNC：同步字
+
+
+    private BinaryFraming(Type type, int recordLength, int lengthBytes, boolean bigEndian,
+        boolean lengthIncludesHeader, byte[] syncWord)
+    {
+        this.type = type;
+        this.recordLength = recordLength;
+        this.lengthBytes = lengthBytes;
+        this.bigEndian = bigEndian;
+        this.lengthIncludesHeader = lengthIncludesHeader;
+        this.syncWord = syncWord;
+    }
+
+
+    /**
+     * 每次一个byte
+     */
+    public static BinaryFraming byteWise()
+    {
+        return new BinaryFraming(Type.BYTE, 1, 0, true, false, null);
+    }
+
+
+    /**
+     * 固定长度的记录
+     *
+     * @param recordLength
+     *            记录长度
+     */
+    public static BinaryFraming fixed(int recordLength)
+    {
+        if (recordLength <= 0)
+        {
+            throw new IllegalArgumentException("recordLength must be positive");
+        }
+        return new BinaryFraming(Type.FIXED, recordLength, 0, true, false, null);
+    }
+
+
+    /**
+     * 以长度字段开头的记录
+     *
+     * @param lengthBytes
+     *            长度字段字节数：1，2或4
+     * @param bigEndian
+     *            长度字段是否为大端
+     * @param lengthIncludesHeader
+     *            长度是否包含长度字段本身
+     */
+    public static BinaryFraming lengthPrefixed(int lengthBytes, boolean bigEndian, boolean lengthIncludesHeader)
+    {
+        if (lengthBytes != 1 && lengthBytes != 2 && lengthBytes != 4)
+        {
+            throw new IllegalArgumentException("lengthBytes must be 1, 2 or 4");
+        }
+        return new BinaryFraming(Type.LENGTH_PREFIXED, 0, lengthBytes, bigEndian, lengthIncludesHeader, null);
+    }
+
+
+    /**
+     * 以同步字开头的记录
+     *
+     * @param syncWord
+     *            同步字
+     */
+    public static BinaryFraming sync(byte[] syncWord)
+    {
+        if (syncWord == null || syncWord.length == 0)
+        {
+            throw new IllegalArgumentException("syncWord must not be empty");
+        }
+        return new BinaryFraming(Type.SYNC, 0, 0, true, false, syncWord.clone());
+    }
+
+
+    /**
+     * 解析16进制字符串，如7F7F
+     *
+     * @param hex
+     *            16进制字符串
+     * @return 字节
+     * @throws IllegalArgumentException
+     *             格式错误
+     */
+    public static byte[] parseHex(String hex)
+    {
+        if (hex.length() % 2 != 0)
+        {
+            throw new IllegalArgumentException("Odd number of hex digits: " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0)
+            {
+                throw new IllegalArgumentException("Invalid hex: " + hex);
+            }
+            bytes[i] = (byte)(high << 4 | low);
+        }
+        return bytes;
+    }
+
+
+    public Type getType()
+    {
+        return type;
+    }
+
+
+    public int getRecordLength()
+    {
+        return recordLength;
+    }
+
+
+    public int getLengthBytes()
+    {
+        return lengthBytes;
+    }
+
+
+    public boolean isBigEndian()
+    {
+        return bigEndian;
+    }
+
+
+    public boolean isLengthIncludesHeader()
+    {
+        return lengthIncludesHeader;
+    }
+
+
+    public byte[] getSyncWord()
+    {
+        return syncWord == null ? null : syncWord.clone();
+    }
+
+
+    /**
+     * 与配置相同的写法：byte，fixed:长度，lengthPrefixed:字节数:字节序[:header]，sync:同步字
+     */
+    @Override
+    public String toString()
+    {
+        switch (type)
+        {
+            case FIXED:
+                return "fixed:" + recordLength;
+            case LENGTH_PREFIXED:
+                return "lengthPrefixed:" + lengthBytes + (bigEndian ? ":big" : ":little")
+                    + (lengthIncludesHeader ? ":header" : "");
+            case SYNC:
+                StringBuilder hex = new StringBuilder("sync:");
+                for (byte b : syncWord)
+                {
+                    hex.append(String.format("%02X", b & 0xFF));
+                }
+                return hex.toString();
+            case BYTE:
+            default:
+                return "byte";
+        }
+    }
+
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof BinaryFraming))
+        {
+            return false;
+        }
+        BinaryFraming other = (BinaryFraming)o;
+        return type == other.type && recordLength == other.recordLength && lengthBytes == other.lengthBytes
+            && bigEndian == other.bigEndian && lengthIncludesHeader == other.lengthIncludesHeader
+            && Arrays.equals(syncWord, other.syncWord);
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(type, recordLength, lengthBytes, bigEndian, lengthIncludesHeader)
+            * 31 + Arrays.hashCode(syncWord);
+    }
+}
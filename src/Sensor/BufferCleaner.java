@@ -0,0 +1,92 @@
+package Sensor;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * BufferCleaner 立即解除内存映射区（MappedByteBuffer）的映射，不等GC回收缓冲区对象。工程按Java 8编译，
+ * 因此通过反射调用：Java 9及以上使用sun.misc.Unsafe.invokeCleaner()，Java 8使用DirectBuffer.cleaner().clean()；
+ * 都不可用时不做任何事，映射区仍由GC回收。解除映射之后再访问该映射区（包括duplicate()得到的复制品）会使JVM崩溃，
+ * 调用者必须保证已经没有任何读取者
+ *
+ * @author Yibing Zhang
+ */
+final class BufferCleaner
+{
+    private static final Object UNSAFE         = unsafe();                                             // Java 9及以上
+    private static final Method INVOKE_CLEANER = find("sun.misc.Unsafe", "invokeCleaner", ByteBuffer.class);// Java 9及以上
+    private static final Method CLEANER        = find("sun.nio.ch.DirectBuffer", "cleaner");               // Java 8
+    private static final Method CLEAN          = find("sun.misc.Cleaner", "clean");                        // Java 8
+
+
+    private BufferCleaner()
+    {
+    }
+
+
+    private static Object unsafe()
+    {
+        try
+        {
+            Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return field.get(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+
+    private static Method find(String className, String name, Class<?>... parameterTypes)
+    {
+        try
+        {
+            return Class.forName(className).getMethod(name, parameterTypes);
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * 解除映射区的映射
+     *
+     * @param buffer
+     *            channel.map()返回的映射区本身（不能是复制品或切片）
+     * @return 已解除映射时返回true，JVM不支持时返回false（由GC回收）
+     */
+    static boolean clean(ByteBuffer buffer)
+    {
+        if (buffer == null || !buffer.isDirect())
+        {
+            return false;
+        }
+        try
+        {
+            if (UNSAFE != null && INVOKE_CLEANER != null)
+            {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return true;
+            }
+            if (CLEANER != null && CLEAN != null)
+            {
+                Object cleaner = CLEANER.invoke(buffer);
+                if (cleaner != null)
+                {
+                    CLEAN.invoke(cleaner);
+                    return true;
+                }
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            // 例如被安全管理器禁止，由GC回收
+        }
+        return false;
+    }
+}
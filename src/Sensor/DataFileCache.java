@@ -0,0 +1,286 @@
+package Sensor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * DataFileCache 进程内共享的数据文件缓存。同一个文件（相同的记录划分方式）只映射并建立索引一次，
+ * 记录数据在内存映射区中（堆外），多个数据源共享同一份，各自保存读取位置。
+ * 缓存的总内存（文件长度加索引）有上限，超过时按最近最少使用的顺序淘汰没有数据源在使用的文件，
+ * 淘汰时立即解除其映射区的映射（由使用者计数保证已经没有读取者），不等GC回收；JVM不支持解除映射时仍由GC回收。
+ * 文件长度或修改时间改变后视为新文件重新加载
+ *
+ * @author Yibing Zhang
+ */
+public final class DataFileCache
+{
+    private static final long          DEFAULT_BUDGET = 1024L * 1024 * 1024;      // 缺省内存上限 1GB
+    private static final DataFileCache INSTANCE       = new DataFileCache(DEFAULT_BUDGET);
+
+    private final Map<Key, Entry>      entries        = new LinkedHashMap<Key, Entry>(16, 0.75f, true);// 按访问顺序
+    private long                       budget;                                    // 内存上限(byte)
+    private long                       used;                                      // 已使用内存(byte)
+    private long                       hits;                                      // 命中次数
+    private long                       misses;                                    // 加载次数
+    private long                       evictions;                                 // 淘汰次数
+
+
+    private DataFileCache(long budget)
+    {
+        this.budget = budget;
+    }
+
+
+    /**
+     * 获取进程内唯一的缓存
+     */
+    public static DataFileCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+
+    /**
+     * 设置内存上限，超出的部分立即淘汰
+     *
+     * @param bytes
+     *            内存上限(byte)
+     */
+    public synchronized void setBudget(long bytes)
+    {
+        this.budget = bytes;
+        evict();
+    }
+
+
+    /**
+     * 获取文件，不在缓存中时加载；用完后必须调用release
+     *
+     * @param fileName
+     *            文件名字
+     * @param framing
+     *            二进制记录划分方式，为null时按行划分
+     * @return 缓存项
+     * @throws IOException
+     *             文件不存在或加载出错
+     */
+    Entry acquire(String fileName, BinaryFraming framing) throws IOException
+    {
+        Key key = Key.of(fileName, framing);
+        Entry entry;
+        boolean load = false;
+        synchronized (this)
+        {
+            entry = entries.get(key);
+            if (entry == null)
+            {
+                entry = new Entry(key);
+                entries.put(key, entry);
+                misses++;
+                load = true;
+            }
+            else
+            {
+                hits++;
+            }
+            entry.refs++;
+        }
+        if (load)
+        {
+            // 在锁外加载，其他文件的获取不受影响，同一文件的获取者等待加载完成
+            try
+            {
+                entry.file = MappedRecordFile.map(fileName, framing);
+            }
+            catch (IOException e)
+            {
+                entry.error = e;
+            }
+            finally
+            {
+                entry.loaded.countDown();
+            }
+            synchronized (this)
+            {
+                if (entry.error != null)
+                {
+                    entries.remove(key);
+                }
+                else
+                {
+                    used += entry.file.getMemoryBytes();
+                    evict();
+                }
+            }
+        }
+        else
+        {
+            try
+            {
+                entry.loaded.await();
+            }
+            catch (InterruptedException e)
+            {
+                release(entry);
+                throw new InterruptedIOException("Interrupted while loading " + fileName);
+            }
+        }
+        if (entry.error != null)
+        {
+            release(entry);
+            throw entry.error;
+        }
+        return entry;
+    }
+
+
+    /**
+     * 数据源不再使用该文件
+     *
+     * @param entry
+     *            acquire返回的缓存项
+     */
+    synchronized void release(Entry entry)
+    {
+        entry.refs--;
+        evict();
+    }
+
+
+    /**
+     * 按最近最少使用的顺序淘汰没有在使用的文件并解除其映射，直到不超过内存上限
+     */
+    private void evict()
+    {
+        Iterator<Entry> it = entries.values().iterator();
+        while (used > budget && it.hasNext())
+        {
+            Entry entry = it.next();
+            if (entry.refs == 0 && entry.file != null)
+            {
+                it.remove();
+                used -= entry.file.getMemoryBytes();
+                // refs为0且已移出缓存，不会再有数据源取到它
+                entry.file.unmap();
+                evictions++;
+                System.out.println("Evicted " + entry.key.path + " from data file cache");
+            }
+        }
+    }
+
+
+    public synchronized long getUsedBytes()
+    {
+        return used;
+    }
+
+
+    public synchronized long getBudget()
+    {
+        return budget;
+    }
+
+
+    public synchronized int getFileCount()
+    {
+        return entries.size();
+    }
+
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+
+    /**
+     * 缓存项：映射后的文件及其使用者数量
+     */
+    static final class Entry
+    {
+        private final Key                 key;                           // 文件标识
+        private final CountDownLatch      loaded = new CountDownLatch(1);// 加载完成
+        private volatile MappedRecordFile file;                          // 映射后的文件
+        private volatile IOException      error;                         // 加载错误
+        private int                       refs;                          // 使用者数量
+
+
+        private Entry(Key key)
+        {
+            this.key = key;
+        }
+
+
+        MappedRecordFile getFile()
+        {
+            return file;
+        }
+    }
+
+
+    /**
+     * 文件标识：路径，记录划分方式，长度和修改时间
+     */
+    private static final class Key
+    {
+        private final Path          path;        // 规范化后的路径
+        private final BinaryFraming framing;     // 记录划分方式
+        private final long          size;        // 文件长度
+        private final long          lastModified;// 修改时间
+
+
+        private Key(Path path, BinaryFraming framing, long size, long lastModified)
+        {
+            this.path = path;
+            this.framing = framing;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+
+        static Key of(String fileName, BinaryFraming framing) throws IOException
+        {
+            Path path = Paths.get(fileName).toRealPath();
+            return new Key(path, framing, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        }
+
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key)o;
+            return path.equals(other.path) && size == other.size && lastModified == other.lastModified
+                && (framing == null ? other.framing == null : framing.equals(other.framing));
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return path.hashCode() * 31 + (framing == null ? 0 : framing.hashCode());
+        }
+    }
+}
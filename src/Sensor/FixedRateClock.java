@@ -0,0 +1,158 @@
+package Sensor;
+
+/**
+ * FixedRateClock 按固定周期计算每次发送的截止时间（System.nanoTime），下一次的时间由上一次的截止时间推算，
+ * 而不是由上一次发送完成的时间推算，因此读文件，发送和睡过头的时间都不会累积成频率漂移。
+ * 落后至少一个周期时按LatePolicy处理：
+ * <ul>
+ * <li>CATCH_UP 保留所有落下的周期，之后不等待连续发送直到追上</li>
+ * <li>SKIP 跳过落下的周期，保持原来的相位，发送速率永远不超过设定值</li>
+ * <li>BURST 本次一次性补发所有落下的记录，然后按原相位继续</li>
+ * </ul>
+ * 非线程安全，由发送线程使用
+ *
+ * @author Yibing Zhang
+ */
+public class FixedRateClock
+{
+    /**
+     * 落后时的处理方式
+     */
+    public enum LatePolicy
+    {
+        CATCH_UP, SKIP, BURST;
+
+        /**
+         * 解析配置中的名称：catchUp，skip，burst
+         *
+         * @param name
+         *            名称
+         * @return 处理方式
+         * @throws IllegalArgumentException
+         *             无法识别
+         */
+        public static LatePolicy parse(String name)
+        {
+            switch (name)
+            {
+                case "catchUp":
+                    return CATCH_UP;
+                case "skip":
+                    return SKIP;
+                case "burst":
+                    return BURST;
+                default:
+                    throw new IllegalArgumentException("Unknown late policy " + name);
+            }
+        }
+    }
+
+    private final LatePolicy  policy;  // 落后时的处理方式
+    private final JitterStats stats;   // 抖动统计
+    private long              period;  // 目标周期(ns)
+    private long              next;    // 下一次发送的截止时间
+    private long              last;    // 上一次发送的实际时间
+    private boolean           started; // 是否已经发送过
+
+
+    public FixedRateClock(long periodNanos, LatePolicy policy, JitterStats stats)
+    {
+        this.period = periodNanos;
+        this.policy = policy;
+        this.stats = stats;
+    }
+
+
+    /**
+     * 从now开始计时，第一次发送的截止时间为now
+     */
+    public void start(long now)
+    {
+        next = now;
+        started = false;
+    }
+
+
+    /**
+     * 在每次发送前调用，记录实际周期并推进截止时间
+     *
+     * @param now
+     *            当前时间
+     * @return 本次应发送的记录数，BURST落后时大于1
+     */
+    public int onTick(long now)
+    {
+        return onTick(now, period);
+    }
+
+
+    /**
+     * 按记录的时间戳发送时使用：每条记录之后的周期各不相同。实际周期与上一个目标周期比较，
+     * 截止时间按nextPeriod推进；nextPeriod为0时（时间戳相同的记录）下一次立即发送
+     *
+     * @param now
+     *            当前时间
+     * @param nextPeriod
+     *            本次到下一次发送的周期(ns)
+     * @return 本次应发送的记录数，BURST落后时大于1
+     */
+    public int onTick(long now, long nextPeriod)
+    {
+        if (started)
+        {
+            stats.record(now - last, period);
+        }
+        started = true;
+        last = now;
+        period = nextPeriod;
+        long late = now - next;
+        if (late < period || period == 0)
+        {
+            next += period;
+            return 1;
+        }
+        long missed = late / period;
+        switch (policy)
+        {
+            case CATCH_UP:
+                // 截止时间仍然在过去，下一次立即发送
+                stats.recordLate(0);
+                next += period;
+                return 1;
+            case BURST:
+                stats.recordLate(0);
+                next += (missed + 1) * period;
+                return (int)Math.min(missed + 1, Integer.MAX_VALUE);
+            case SKIP:
+            default:
+                stats.recordLate(missed);
+                next += (missed + 1) * period;
+                return 1;
+        }
+    }
+
+
+    /**
+     * 距离下一次截止时间的时长，已过截止时间时为0
+     */
+    public long delayNanos(long now)
+    {
+        return Math.max(0, next - now);
+    }
+
+
+    /**
+     * 更改周期，下一次截止时间改为上一次发送时间加上新周期
+     */
+    public void setPeriod(long periodNanos, long now)
+    {
+        this.period = periodNanos;
+        this.next = started ? last + periodNanos : now;
+    }
+
+
+    public long getPeriodNanos()
+    {
+        return period;
+    }
+}
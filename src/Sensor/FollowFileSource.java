@@ -0,0 +1,348 @@
+package Sensor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FollowFileSource 跟随一个不断追加的非二进制文件（类似tail -f），每当有新的完整行写入就作为一条记录返回。
+ * 从记下的读取位置继续增量读取，不会从头重新扫描；没有新行时next()阻塞等待，由WatchService的文件变化通知唤醒，
+ * 同时按固定间隔检查文件长度，在不支持通知的文件系统（如网络文件系统）上也能工作。
+ * 文件被截短时从头开始，文件被替换（如日志轮转）时打开新文件从头开始。
+ * 行结束符与RandomAccessFile.readLine()相同（LF，CR或CR LF），最后一行在写入结束符之前不会发送。
+ * 只发送之后追加的行时从文件中最后一个行结束符之后开始，打开时上游正在写的一行写完后整行发送，不会只发出后半行。
+ * next()可以被中断（抛出InterruptedIOException），因此只能在独立线程中使用
+ *
+ * @author Yibing Zhang
+ */
+class FollowFileSource implements RecordSource
+{
+    private static final long POLL_INTERVAL = 100;      // 没有变化通知时检查文件的间隔(ms)
+    private static final int  BUFFER_SIZE   = 64 * 1024;// 读取缓冲区初始大小
+    private static final int  SCAN_SIZE     = 4096;     // 向前查找行结束符时每次读取的字节数
+
+    private final Path        path;                     // 文件路径
+    private final byte[]      prefix;                   // 记录前缀
+    private final byte[]      suffix;                   // 记录后缀
+    private final boolean     fromStart;                // 是否先发送文件中已有的行
+    private FileChannel       channel;                  // 打开的文件
+    private Object            fileKey;                  // 打开的文件的标识，用于发现文件被替换
+    private long              position;                 // 下一次读取的文件位置
+    private ByteBuffer        pending;                  // 已读取但还没有发送的数据（读模式）
+    private boolean           pendingCR;                // 上一行以CR结束，紧接着的LF要跳过
+    private WatchService      watcher;                  // 文件变化通知，不支持时为null
+
+
+    /**
+     * Constructor
+     *
+     * @param fileName
+     *            文件名字
+     * @param prefix
+     *            记录前缀
+     * @param suffix
+     *            记录后缀
+     * @param fromStart
+     *            为true时先发送文件中已有的行，否则只发送之后追加的行
+     */
+    FollowFileSource(String fileName, byte[] prefix, byte[] suffix, boolean fromStart)
+    {
+        this.path = Paths.get(fileName).toAbsolutePath();
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.fromStart = fromStart;
+    }
+
+
+    @Override
+    public void open() throws IOException
+    {
+        close();
+        openChannel();
+        pending = ByteBuffer.allocate(BUFFER_SIZE);
+        restart();
+        if (!fromStart)
+        {
+            seek(lastLineStart(channel.size()));
+        }
+        try
+        {
+            watcher = path.getFileSystem().newWatchService();
+            path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_CREATE);
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            // 例如inotify实例数达到上限，只按间隔检查
+            closeWatcher();
+            System.err.println(path + ": no file change notification, polling every " + POLL_INTERVAL + " ms");
+        }
+    }
+
+
+    private void openChannel() throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+
+    /**
+     * 从文件末尾向前查找最后一个行结束符
+     *
+     * @param size
+     *            文件长度
+     * @return 最后一个行结束符之后的位置，文件以行结束符结尾时为size，没有行结束符时为0
+     */
+    private long lastLineStart(long size) throws IOException
+    {
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_SIZE);
+        long end = size;
+        while (end > 0)
+        {
+            long start = Math.max(0, end - SCAN_SIZE);
+            chunk.clear();
+            chunk.limit((int)(end - start));
+            while (chunk.hasRemaining() && channel.read(chunk, start + chunk.position()) > 0)
+            {
+                // 读满这一段
+            }
+            for (int i = chunk.position() - 1; i >= 0; i--)
+            {
+                byte b = chunk.get(i);
+                if (b == '\n' || b == '\r')
+                {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+
+    @Override
+    public boolean next(RecordBuffer out) throws IOException
+    {
+        while (true)
+        {
+            if (nextLine(out))
+            {
+                return true;
+            }
+            if (!read())
+            {
+                await();
+                checkFile();
+            }
+        }
+    }
+
+
+    /**
+     * 从已读取的数据中取出一个完整行
+     *
+     * @return 没有完整行时返回false
+     */
+    private boolean nextLine(RecordBuffer out)
+    {
+        if (pendingCR && pending.hasRemaining())
+        {
+            pendingCR = false;
+            if (pending.get(pending.position()) == '\n')
+            {
+                pending.position(pending.position() + 1);
+            }
+        }
+        byte[] data = pending.array();
+        int start = pending.position();
+        for (int i = start; i < pending.limit(); i++)
+        {
+            byte b = data[i];
+            if (b == '\n' || b == '\r')
+            {
+                out.put(prefix);
+                out.put(data, start, i - start);
+                out.put(suffix);
+                pending.position(i + 1);
+                pendingCR = b == '\r';
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * 从读取位置读取新追加的数据
+     *
+     * @return 没有新数据时返回false
+     */
+    private boolean read() throws IOException
+    {
+        pending.compact();
+        if (!pending.hasRemaining())
+        {
+            // 一行超过了缓冲区
+            ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        int n = channel.read(pending, position);
+        pending.flip();
+        if (n <= 0)
+        {
+            return false;
+        }
+        position += n;
+        return true;
+    }
+
+
+    /**
+     * 等待文件变化通知，最多等待POLL_INTERVAL
+     */
+    private void await() throws IOException
+    {
+        try
+        {
+            if (watcher == null)
+            {
+                Thread.sleep(POLL_INTERVAL);
+                return;
+            }
+            WatchKey key = watcher.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            if (key != null)
+            {
+                // 同一目录中其他文件的变化也会唤醒，读取时自然会发现没有新数据
+                key.pollEvents();
+                key.reset();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            throw new InterruptedIOException("Interrupted while following " + path);
+        }
+        catch (ClosedWatchServiceException e)
+        {
+            throw new InterruptedIOException("Stopped following " + path);
+        }
+    }
+
+
+    /**
+     * 文件被截短时从头开始；文件被替换时打开新文件，从头开始
+     */
+    private void checkFile() throws IOException
+    {
+        Object key;
+        try
+        {
+            key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        }
+        catch (NoSuchFileException e)
+        {
+            // 轮转中，旧文件已改名而新文件还没有创建
+            return;
+        }
+        if (key != null && !key.equals(fileKey))
+        {
+            System.out.println(path + " was replaced, following the new file");
+            channel.close();
+            openChannel();
+            restart();
+        }
+        else if (channel.size() < position)
+        {
+            System.out.println(path + " was truncated, following from the start");
+            restart();
+        }
+    }
+
+
+    private void restart()
+    {
+        position = 0;
+        pending.clear();
+        pending.flip();
+        pendingCR = false;
+    }
+
+
+    /**
+     * 下一行的文件偏移：读取位置减去已读取但还没有发送的数据
+     */
+    @Override
+    public long position()
+    {
+        return position - pending.remaining();
+    }
+
+
+    @Override
+    public boolean seek(long position) throws IOException
+    {
+        if (position < 0 || position > channel.size())
+        {
+            return false;
+        }
+        restart();
+        this.position = position;
+        if (position > 0)
+        {
+            // 上一行以CR结束时，紧接着的LF要跳过
+            ByteBuffer previous = ByteBuffer.allocate(1);
+            pendingCR = channel.read(previous, position - 1) == 1 && previous.get(0) == '\r';
+        }
+        return true;
+    }
+
+
+    @Override
+    public void close()
+    {
+        closeWatcher();
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+    }
+
+
+    private void closeWatcher()
+    {
+        if (watcher != null)
+        {
+            try
+            {
+                watcher.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            watcher = null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package Sensor;
+
+/**
+ * GeneratedSource 不读取文件，按记录模板实时生成数据，每条记录加上前后缀后发送。
+ * 用于录制文件无法覆盖的高频率，长时间压力测试
+ *
+ * @author Yibing Zhang
+ */
+class GeneratedSource implements RecordSource
+{
+    private final RecordTemplate template;// 记录模板
+    private final byte[]         prefix;  // 记录前缀
+    private final byte[]         suffix;  // 记录后缀
+
+
+    GeneratedSource(RecordTemplate template, byte[] prefix, byte[] suffix)
+    {
+        this.template = template;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+
+    @Override
+    public void open()
+    {
+        template.reset();
+    }
+
+
+    @Override
+    public boolean next(RecordBuffer out)
+    {
+        out.put(prefix);
+        template.write(out);
+        out.put(suffix);
+        return true;
+    }
+
+
+    @Override
+    public void close()
+    {
+    }
+}
@@ -0,0 +1,417 @@
+package Sensor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * GzipFileSource 回放gzip压缩的数据文件，不需要先解压到磁盘。预读线程流式解压并划分记录，
+ * 放入容量有限的就绪队列（每块64KB，最多16块），发送线程只从队列中取出已经划分好的记录，不等待解压；
+ * 队列满时预读线程等待。读到文件末尾时预读线程重新打开文件从头解压，不在内存或磁盘上保存整个解压后的文件。
+ * 非二进制文件按行划分（行结束符与RandomAccessFile.readLine()相同），每行加上前后缀；
+ * 二进制文件每次发送一个byte的16进制字符，与BinaryFileSource相同。支持多个gzip成员首尾相接的文件
+ *
+ * @author Yibing Zhang
+ */
+class GzipFileSource implements RecordSource
+{
+    private static final int    BLOCK_SIZE   = 64 * 1024;       // 块大小，一行更长时该块扩大
+    private static final int    READ_AHEAD   = 16;              // 就绪队列最多的块数
+    private static final int    STREAM_SIZE  = 64 * 1024;       // 解压缓冲区大小
+    private static final long   STOP_TIMEOUT = 1000;            // 关闭时等待预读线程结束的最长时间(ms)
+    private static final Block  END          = new Block(false);// 文件中没有记录
+
+    private final String        fileName;                       // 文件名字
+    private final byte[]        prefix;                         // 记录前缀
+    private final byte[]        suffix;                         // 记录后缀
+    private final boolean       lines;                          // 为true时按行划分，否则每个byte一条记录
+    private final ThreadFactory threads;                        // 预读线程的线程工厂，为null时使用平台守护线程
+    private ReadAhead           readAhead;                      // 预读
+    private Block               current;                        // 正在发送的块
+    private int                 record;                         // 当前块中下一条要发送的记录
+
+
+    /**
+     * Constructor
+     *
+     * @param fileName
+     *            文件名字
+     * @param prefix
+     *            记录前缀，每个byte一条记录时不使用
+     * @param suffix
+     *            记录后缀，每个byte一条记录时不使用
+     * @param lines
+     *            为true时按行划分（非二进制文件），否则每个byte一条记录
+     * @param threads
+     *            预读线程的线程工厂，例如虚拟线程工厂；为null时使用平台守护线程
+     */
+    GzipFileSource(String fileName, byte[] prefix, byte[] suffix, boolean lines, ThreadFactory threads)
+    {
+        this.fileName = fileName;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.lines = lines;
+        this.threads = threads;
+    }
+
+
+    @Override
+    public void open() throws IOException
+    {
+        close();
+        // 在调用者线程中打开一次，文件不存在或不是gzip格式时立即报告
+        openStream().close();
+        current = null;
+        record = 0;
+        readAhead = new ReadAhead();
+        readAhead.start();
+    }
+
+
+    private InputStream openStream() throws IOException
+    {
+        FileInputStream file = new FileInputStream(fileName);
+        try
+        {
+            return new GZIPInputStream(file, STREAM_SIZE);
+        }
+        catch (IOException e)
+        {
+            file.close();
+            throw e;
+        }
+    }
+
+
+    @Override
+    public boolean next(RecordBuffer out) throws IOException
+    {
+        while (current == null || record == current.count)
+        {
+            if (current != null)
+            {
+                readAhead.free.offer(current);
+                current = null;
+            }
+            Block block;
+            try
+            {
+                block = readAhead.ready.take();
+            }
+            catch (InterruptedException e)
+            {
+                throw new InterruptedIOException("Interrupted while reading " + fileName);
+            }
+            if (block == END)
+            {
+                readAhead.ready.offer(END);
+                return false;
+            }
+            if (block.error != null)
+            {
+                throw block.error;
+            }
+            current = block;
+            record = 0;
+        }
+        if (lines)
+        {
+            int start = record == 0 ? 0 : current.ends[record - 1];
+            out.put(prefix);
+            out.put(current.data, start, current.ends[record] - start);
+            out.put(suffix);
+        }
+        else
+        {
+            // 读取2进制文件，以16进制发送
+            out.put(Integer.toHexString(current.data[record] & 0xff).getBytes());
+        }
+        record++;
+        return true;
+    }
+
+
+    @Override
+    public void close()
+    {
+        if (readAhead != null)
+        {
+            readAhead.stop();
+            readAhead = null;
+        }
+        current = null;
+    }
+
+
+    /**
+     * ReadAhead 预读线程：反复从头解压文件，把划分好的记录按块放入就绪队列。每次open()使用新的实例，
+     * 关闭时来不及结束的旧线程不会影响新的队列
+     */
+    private final class ReadAhead implements Runnable
+    {
+        private final BlockingQueue<Block> ready = new ArrayBlockingQueue<>(READ_AHEAD);    // 就绪队列
+        private final BlockingQueue<Block> free  = new ArrayBlockingQueue<>(READ_AHEAD + 2);// 可重复使用的块
+        private final Thread               thread;                                          // 预读线程
+        private volatile boolean           closed;                                          // 是否已关闭
+        private Block                      block;                                           // 正在填充的块
+        private long                       records;                                         // 本遍划分出的记录数
+
+
+        ReadAhead()
+        {
+            if (threads == null)
+            {
+                this.thread = new Thread(this, "gunzip-" + fileName);
+                this.thread.setDaemon(true);
+            }
+            else
+            {
+                this.thread = threads.newThread(this);
+                this.thread.setName("gunzip-" + fileName);
+            }
+        }
+
+
+        void start()
+        {
+            thread.start();
+        }
+
+
+        void stop()
+        {
+            closed = true;
+            thread.interrupt();
+            try
+            {
+                thread.join(STOP_TIMEOUT);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+
+        @Override
+        public void run()
+        {
+            byte[] input = new byte[STREAM_SIZE];
+            block = newBlock();
+            try
+            {
+                while (!closed)
+                {
+                    records = 0;
+                    try (InputStream in = openStream())
+                    {
+                        boolean pendingCR = false;
+                        int n;
+                        while (!closed && (n = in.read(input)) > 0)
+                        {
+                            if (lines)
+                            {
+                                pendingCR = splitLines(input, n, pendingCR);
+                            }
+                            else
+                            {
+                                splitBytes(input, n);
+                            }
+                        }
+                    }
+                    // 最后一行可以没有结束符
+                    if (lines && block.length > block.end())
+                    {
+                        endRecord();
+                    }
+                    if (records == 0)
+                    {
+                        ready.put(END);
+                        return;
+                    }
+                    // 小文件不必等块填满
+                    if (block.count > 0)
+                    {
+                        ready.put(block);
+                        block = newBlock();
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // close()
+            }
+            catch (IOException e)
+            {
+                if (!closed)
+                {
+                    Block error = new Block(false);
+                    error.error = e;
+                    try
+                    {
+                        // 队列满时等发送线程取走已有的块，不能丢掉错误，否则next()一直等待
+                        ready.put(error);
+                    }
+                    catch (InterruptedException stopped)
+                    {
+                        // close()
+                    }
+                }
+            }
+        }
+
+
+        /**
+         * 按行结束符划分，连续的CR LF算一个结束符
+         *
+         * @return 最后一个字节是否为CR
+         */
+        private boolean splitLines(byte[] input, int n, boolean pendingCR) throws InterruptedException
+        {
+            int start = 0;
+            for (int i = 0; i < n; i++)
+            {
+                byte b = input[i];
+                if (b != '\n' && b != '\r')
+                {
+                    continue;
+                }
+                if (pendingCR && b == '\n' && i == start)
+                {
+                    // CR LF中的LF
+                    pendingCR = false;
+                    start = i + 1;
+                    continue;
+                }
+                append(input, start, i - start);
+                endRecord();
+                pendingCR = b == '\r';
+                start = i + 1;
+            }
+            if (start < n)
+            {
+                append(input, start, n - start);
+                return false;
+            }
+            return pendingCR;
+        }
+
+
+        private void splitBytes(byte[] input, int n) throws InterruptedException
+        {
+            for (int off = 0; off < n;)
+            {
+                int len = Math.min(n - off, block.data.length - block.length);
+                System.arraycopy(input, off, block.data, block.length, len);
+                block.length += len;
+                block.count = block.length;
+                records += len;
+                off += len;
+                if (block.length == block.data.length)
+                {
+                    ready.put(block);
+                    block = newBlock();
+                }
+            }
+        }
+
+
+        private void append(byte[] src, int offset, int len) throws InterruptedException
+        {
+            if (block.length + len > block.data.length)
+            {
+                spill(len);
+            }
+            System.arraycopy(src, offset, block.data, block.length, len);
+            block.length += len;
+        }
+
+
+        private void endRecord() throws InterruptedException
+        {
+            if (block.count == block.ends.length)
+            {
+                spill(0);
+            }
+            block.ends[block.count++] = block.length;
+            records++;
+        }
+
+
+        /**
+         * 当前块放不下时，把已完成的记录放入就绪队列，未完成的行移到新块；没有完成的记录时扩大当前块
+         *
+         * @param extra
+         *            还要追加的长度
+         */
+        private void spill(int extra) throws InterruptedException
+        {
+            int start = block.end();
+            int partial = block.length - start;
+            Block next = block.count == 0 ? block : newBlock();
+            if (partial + extra > next.data.length)
+            {
+                byte[] larger = new byte[Math.max(partial + extra, next.data.length * 2)];
+                System.arraycopy(block.data, start, larger, 0, partial);
+                next.data = larger;
+            }
+            else if (next != block)
+            {
+                System.arraycopy(block.data, start, next.data, 0, partial);
+            }
+            next.length = partial;
+            if (next != block)
+            {
+                block.length = start;
+                ready.put(block);
+                block = next;
+            }
+        }
+
+
+        private Block newBlock()
+        {
+            Block reused = free.poll();
+            if (reused == null)
+            {
+                return new Block(lines);
+            }
+            reused.count = 0;
+            reused.length = 0;
+            return reused;
+        }
+    }
+
+
+    /**
+     * Block 一块解压后的数据和其中每条记录的结束位置
+     */
+    private static final class Block
+    {
+        private byte[]      data = new byte[BLOCK_SIZE];// 数据
+        private final int[] ends;                       // 每条记录的结束位置，每个byte一条记录时为null
+        private int         count;                      // 完整记录数
+        private int         length;                     // 数据长度（含末尾未完成的行）
+        private IOException error;                      // 预读出错
+
+
+        Block(boolean lines)
+        {
+            this.ends = lines ? new int[BLOCK_SIZE / 16] : null;
+        }
+
+
+        /**
+         * 最后一条完整记录的结束位置
+         */
+        int end()
+        {
+            return count == 0 ? 0 : ends[count - 1];
+        }
+    }
+}
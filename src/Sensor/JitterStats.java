@@ -0,0 +1,106 @@
+package Sensor;
+
+/**
+ * JitterStats 统计实际发送周期与目标周期的偏差（抖动），用于证明负载下的定时精度。
+ * 只由发送线程写入，其他线程读取时不加锁，读到的各项数值之间可能相差一次记录
+ *
+ * @author Yibing Zhang
+ */
+public class JitterStats
+{
+    private volatile long   count;      // 记录的周期数
+    private volatile long   sumError;   // 偏差之和(ns)
+    private volatile double sumSquares; // 偏差平方和
+    private volatile long   maxAbsError;// 最大偏差绝对值(ns)
+    private volatile long   lateTicks;  // 晚了至少一个周期的次数
+    private volatile long   skipped;    // 因落后而跳过的周期数
+
+
+    /**
+     * 记录一个周期
+     *
+     * @param actualNanos
+     *            实际周期
+     * @param targetNanos
+     *            目标周期
+     */
+    public void record(long actualNanos, long targetNanos)
+    {
+        long error = actualNanos - targetNanos;
+        count++;
+        sumError += error;
+        sumSquares += (double)error * error;
+        long abs = Math.abs(error);
+        if (abs > maxAbsError)
+        {
+            maxAbsError = abs;
+        }
+    }
+
+
+    /**
+     * 记录一次落后至少一个周期，skipped为被跳过（不再发送）的周期数
+     */
+    public void recordLate(long skipped)
+    {
+        lateTicks++;
+        this.skipped += skipped;
+    }
+
+
+    public long getCount()
+    {
+        return count;
+    }
+
+
+    /**
+     * 平均偏差(ns)，正数表示实际周期偏长
+     */
+    public long getMeanErrorNanos()
+    {
+        long n = count;
+        return n == 0 ? 0 : sumError / n;
+    }
+
+
+    /**
+     * 偏差的标准差(ns)
+     */
+    public long getStdDevNanos()
+    {
+        long n = count;
+        if (n == 0)
+        {
+            return 0;
+        }
+        double mean = (double)sumError / n;
+        return (long)Math.sqrt(Math.max(0, sumSquares / n - mean * mean));
+    }
+
+
+    public long getMaxAbsErrorNanos()
+    {
+        return maxAbsError;
+    }
+
+
+    public long getLateTicks()
+    {
+        return lateTicks;
+    }
+
+
+    public long getSkipped()
+    {
+        return skipped;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "periods=" + count + " mean=" + getMeanErrorNanos() / 1000 + "us sd=" + getStdDevNanos() / 1000
+            + "us max=" + maxAbsError / 1000 + "us late=" + lateTicks + " skipped=" + skipped;
+    }
+}
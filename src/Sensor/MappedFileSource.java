@@ -0,0 +1,118 @@
+package Sensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * MappedFileSource 以内存映射方式回放数据文件。打开时建立记录索引，之后每条记录直接从映射区
+ * 复制到记录缓冲区并加上前后缀，中间不经过String。非二进制文件按行回放；二进制文件按BinaryFraming
+ * 整条回放，可以原样发送，也可以编码为16进制字符。映射后的文件来自DataFileCache，多个数据源共享
+ *
+ * @author Yibing Zhang
+ */
+class MappedFileSource implements RecordSource
+{
+    private final String        fileName;// 文件名字
+    private final BinaryFraming framing; // 二进制记录划分方式，为null时按行划分
+    private final byte[]        prefix;  // 记录前缀
+    private final byte[]        suffix;  // 记录后缀
+    private final boolean       hex;     // 是否编码为16进制字符
+    private DataFileCache.Entry entry;   // 缓存项
+    private MappedRecordFile    file;    // 映射后的文件
+    private ByteBuffer[]        regions; // 本数据源使用的映射区复制品
+    private int                 record;  // 下一条要发送的记录序号
+    private int                 region;  // 上一条记录所在的映射区
+
+
+    /**
+     * Constructor
+     *
+     * @param fileName
+     *            文件名字
+     * @param framing
+     *            二进制记录划分方式，为null时按行划分
+     * @param prefix
+     *            记录前缀
+     * @param suffix
+     *            记录后缀
+     * @param hex
+     *            是否把记录编码为16进制字符
+     */
+    MappedFileSource(String fileName, BinaryFraming framing, byte[] prefix, byte[] suffix, boolean hex)
+    {
+        this.fileName = fileName;
+        this.framing = framing;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.hex = hex;
+    }
+
+
+    @Override
+    public void open() throws IOException
+    {
+        close();
+        entry = DataFileCache.getInstance().acquire(fileName, framing);
+        file = entry.getFile();
+        regions = file.duplicateRegions();
+        record = 0;
+        region = 0;
+    }
+
+
+    @Override
+    public boolean next(RecordBuffer out)
+    {
+        int count = file.getRecordCount();
+        if (count == 0)
+        {
+            return false;
+        }
+        region = file.regionOf(record, region);
+        out.put(prefix);
+        if (hex)
+        {
+            out.putHex(regions[region], file.offsetInRegion(record, region), file.lengthOf(record));
+        }
+        else
+        {
+            out.put(regions[region], file.offsetInRegion(record, region), file.lengthOf(record));
+        }
+        out.put(suffix);
+        // 当该文件被读取至底时，回到第一条记录
+        record = record + 1 == count ? 0 : record + 1;
+        return true;
+    }
+
+
+    @Override
+    public long position()
+    {
+        return record;
+    }
+
+
+    @Override
+    public boolean seek(long position)
+    {
+        if (position < 0 || position >= file.getRecordCount())
+        {
+            return false;
+        }
+        record = (int)position;
+        return true;
+    }
+
+
+    @Override
+    public void close()
+    {
+        if (entry != null)
+        {
+            DataFileCache.getInstance().release(entry);
+            entry = null;
+        }
+        file = null;
+        regions = null;
+    }
+}
@@ -0,0 +1,447 @@
+package Sensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * MappedRecordFile 以内存映射方式打开的数据文件，打开时扫描一遍建立每条记录的偏移量索引。
+ * 非二进制文件按行划分，行结束符与RandomAccessFile.readLine()相同（LF，CR或CR LF），最后一行可以没有结束符；
+ * 二进制文件按BinaryFraming划分。大文件按记录边界分成多个不超过1GB的映射区；映射区本身只读，
+ * 多个数据源可以共享同一个实例。建立索引时的映射窗口用完立即解除映射，映射区在unmap()时解除映射
+ *
+ * @author Yibing Zhang
+ */
+public final class MappedRecordFile
+{
+    private static final long  MAX_REGION = 1L << 30;// 单个映射区最大长度
+
+    private final String       fileName;             // 文件名字
+    private final long         size;                 // 文件长度
+    private final ByteBuffer[] regions;              // 映射区
+    private final long[]       regionStart;          // 每个映射区在文件中的起始偏移
+    private final int[]        regionFirst;          // 每个映射区的第一条记录序号，末尾为记录数
+    private final long[]       starts;               // 每条记录在文件中的起始偏移
+    private final int[]        lengths;              // 每条记录长度（不含行结束符）
+
+
+    private MappedRecordFile(String fileName, long size, ByteBuffer[] regions, long[] regionStart, int[] regionFirst,
+        long[] starts, int[] lengths)
+    {
+        this.fileName = fileName;
+        this.size = size;
+        this.regions = regions;
+        this.regionStart = regionStart;
+        this.regionFirst = regionFirst;
+        this.starts = starts;
+        this.lengths = lengths;
+    }
+
+
+    /**
+     * 映射非二进制文件并建立行索引
+     *
+     * @param fileName
+     *            文件名字
+     * @return 映射后的文件
+     * @throws IOException
+     *             打开或映射文件出错，或单行超过1GB
+     */
+    public static MappedRecordFile mapLines(String fileName) throws IOException
+    {
+        return map(fileName, null);
+    }
+
+
+    /**
+     * 映射文件并建立记录索引
+     *
+     * @param fileName
+     *            文件名字
+     * @param framing
+     *            二进制记录划分方式，为null时按行划分
+     * @return 映射后的文件
+     * @throws IOException
+     *             打开或映射文件出错，记录长度字段错误，或单条记录超过1GB
+     */
+    public static MappedRecordFile map(String fileName, BinaryFraming framing) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            WindowReader reader = new WindowReader(channel);
+            RecordIndex index = new RecordIndex();
+            if (framing == null)
+            {
+                indexLines(reader, index);
+            }
+            else
+            {
+                switch (framing.getType())
+                {
+                    case FIXED:
+                        indexFixed(reader, framing, index, fileName);
+                        break;
+                    case LENGTH_PREFIXED:
+                        indexLengthPrefixed(reader, framing, index, fileName);
+                        break;
+                    case SYNC:
+                        indexSync(reader, framing, index);
+                        break;
+                    default:
+                        indexFixed(reader, BinaryFraming.fixed(1), index, fileName);
+                        break;
+                }
+            }
+            try
+            {
+                return build(fileName, channel, reader.size, index);
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+    }
+
+
+    /**
+     * 按行结束符划分记录
+     */
+    private static void indexLines(WindowReader reader, RecordIndex index) throws IOException
+    {
+        long size = reader.size;
+        long lineStart = 0;
+        boolean pendingCR = false;
+        for (long pos = 0; pos < size; pos++)
+        {
+            byte b = reader.get(pos);
+            if (pendingCR)
+            {
+                pendingCR = false;
+                if (b == '\n')
+                {
+                    lineStart = pos + 1;
+                    continue;
+                }
+            }
+            if (b == '\n' || b == '\r')
+            {
+                index.add(lineStart, pos - lineStart);
+                pendingCR = b == '\r';
+                lineStart = pos + 1;
+            }
+        }
+        if (lineStart < size)
+        {
+            index.add(lineStart, size - lineStart);
+        }
+    }
+
+
+    /**
+     * 按固定长度划分记录，末尾不完整的记录被忽略
+     */
+    private static void indexFixed(WindowReader reader, BinaryFraming framing, RecordIndex index, String fileName)
+        throws IOException
+    {
+        long length = framing.getRecordLength();
+        long pos = 0;
+        for (; pos + length <= reader.size; pos += length)
+        {
+            index.add(pos, length);
+        }
+        if (pos < reader.size)
+        {
+            System.err.println(fileName + ": ignored " + (reader.size - pos) + " trailing bytes");
+        }
+    }
+
+
+    /**
+     * 按长度字段划分记录，末尾不完整的记录被忽略
+     */
+    private static void indexLengthPrefixed(WindowReader reader, BinaryFraming framing, RecordIndex index,
+        String fileName) throws IOException
+    {
+        int header = framing.getLengthBytes();
+        long pos = 0;
+        while (pos + header <= reader.size)
+        {
+            long value = 0;
+            for (int i = 0; i < header; i++)
+            {
+                int b = reader.get(pos + (framing.isBigEndian() ? i : header - 1 - i)) & 0xff;
+                value = value << 8 | b;
+            }
+            long total = framing.isLengthIncludesHeader() ? value : header + value;
+            if (total < header || total == 0)
+            {
+                throw new IOException(fileName + ": invalid record length " + value + " at offset " + pos);
+            }
+            if (pos + total > reader.size)
+            {
+                break;
+            }
+            index.add(pos, total);
+            pos += total;
+        }
+        if (pos < reader.size)
+        {
+            System.err.println(fileName + ": ignored " + (reader.size - pos) + " trailing bytes");
+        }
+    }
+
+
+    /**
+     * 按同步字划分记录，第一个同步字之前的数据被忽略
+     */
+    private static void indexSync(WindowReader reader, BinaryFraming framing, RecordIndex index) throws IOException
+    {
+        byte[] sync = framing.getSyncWord();
+        long recordStart = -1;
+        long pos = 0;
+        while (pos + sync.length <= reader.size)
+        {
+            int i = 0;
+            while (i < sync.length && reader.get(pos + i) == sync[i])
+            {
+                i++;
+            }
+            if (i < sync.length)
+            {
+                pos++;
+                continue;
+            }
+            if (recordStart >= 0)
+            {
+                index.add(recordStart, pos - recordStart);
+            }
+            recordStart = pos;
+            pos += sync.length;
+        }
+        if (recordStart >= 0)
+        {
+            index.add(recordStart, reader.size - recordStart);
+        }
+    }
+
+
+    /**
+     * 按记录边界划分映射区
+     */
+    private static MappedRecordFile build(String fileName, FileChannel channel, long size, RecordIndex index)
+        throws IOException
+    {
+        int count = index.count;
+        long[] starts = Arrays.copyOf(index.starts, count);
+        int[] lengths = Arrays.copyOf(index.lengths, count);
+        List<ByteBuffer> regions = new ArrayList<ByteBuffer>();
+        List<Long> regionStart = new ArrayList<Long>();
+        List<Integer> regionFirst = new ArrayList<Integer>();
+        int first = 0;
+        while (first < count)
+        {
+            long start = starts[first];
+            int last = first;
+            while (last + 1 < count && starts[last + 1] + lengths[last + 1] - start <= MAX_REGION)
+            {
+                last++;
+            }
+            long end = starts[last] + lengths[last];
+            regions.add(channel.map(MapMode.READ_ONLY, start, end - start));
+            regionStart.add(start);
+            regionFirst.add(first);
+            first = last + 1;
+        }
+        regionFirst.add(count);
+
+        long[] regionStartArray = new long[regionStart.size()];
+        for (int i = 0; i < regionStartArray.length; i++)
+        {
+            regionStartArray[i] = regionStart.get(i);
+        }
+        int[] regionFirstArray = new int[regionFirst.size()];
+        for (int i = 0; i < regionFirstArray.length; i++)
+        {
+            regionFirstArray[i] = regionFirst.get(i);
+        }
+        return new MappedRecordFile(fileName, size, regions.toArray(new ByteBuffer[regions.size()]),
+            regionStartArray, regionFirstArray, starts, lengths);
+    }
+
+
+    /**
+     * 建立索引时按窗口映射文件，顺序读取
+     */
+    private static final class WindowReader
+    {
+        private final FileChannel channel;    // 文件
+        private final long        size;       // 文件长度
+        private MappedByteBuffer  window;     // 当前窗口
+        private long              windowStart;// 当前窗口起始偏移
+        private long              windowEnd;  // 当前窗口结束偏移
+
+
+        WindowReader(FileChannel channel) throws IOException
+        {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+
+        byte get(long pos) throws IOException
+        {
+            if (pos < windowStart || pos >= windowEnd)
+            {
+                close();
+                windowStart = pos;
+                windowEnd = Math.min(size, pos + MAX_REGION);
+                window = channel.map(MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+            }
+            return window.get((int)(pos - windowStart));
+        }
+
+
+        /**
+         * 解除当前窗口的映射
+         */
+        void close()
+        {
+            BufferCleaner.clean(window);
+            window = null;
+        }
+    }
+
+
+    /**
+     * 可增长的记录索引
+     */
+    private static final class RecordIndex
+    {
+        private long[] starts  = new long[1024];// 记录起始偏移
+        private int[]  lengths = new int[1024]; // 记录长度
+        private int    count;                   // 记录数
+
+
+        void add(long start, long length) throws IOException
+        {
+            if (length > MAX_REGION)
+            {
+                throw new IOException("Record longer than " + MAX_REGION + " bytes");
+            }
+            if (count == starts.length)
+            {
+                starts = Arrays.copyOf(starts, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            starts[count] = start;
+            lengths[count] = (int)length;
+            count++;
+        }
+    }
+
+
+    /**
+     * 立即解除所有映射区的映射（JVM不支持时由GC回收），之后不能再读取。
+     * 只能在没有任何读取者时调用（DataFileCache淘汰没有数据源在使用的文件时），否则访问复制品会使JVM崩溃
+     */
+    void unmap()
+    {
+        for (int i = 0; i < regions.length; i++)
+        {
+            BufferCleaner.clean(regions[i]);
+            regions[i] = null;
+        }
+    }
+
+
+    /**
+     * 为一个读取者复制映射区，复制品有独立的position，可以与其他读取者并发使用
+     *
+     * @return 映射区的复制品
+     */
+    ByteBuffer[] duplicateRegions()
+    {
+        ByteBuffer[] copies = new ByteBuffer[regions.length];
+        for (int i = 0; i < regions.length; i++)
+        {
+            copies[i] = regions[i].duplicate();
+        }
+        return copies;
+    }
+
+
+    /**
+     * 查找记录所在的映射区
+     *
+     * @param record
+     *            记录序号
+     * @param hint
+     *            上一条记录所在的映射区，顺序读取时可避免查找
+     * @return 映射区序号
+     */
+    int regionOf(int record, int hint)
+    {
+        if (hint >= 0 && hint < regions.length && record >= regionFirst[hint] && record < regionFirst[hint + 1])
+        {
+            return hint;
+        }
+        int index = Arrays.binarySearch(regionFirst, record);
+        return index >= 0 ? index : -index - 2;
+    }
+
+
+    /**
+     * 记录在所属映射区内的偏移
+     */
+    int offsetInRegion(int record, int region)
+    {
+        return (int)(starts[record] - regionStart[region]);
+    }
+
+
+    /**
+     * 记录长度（不含行结束符）
+     */
+    int lengthOf(int record)
+    {
+        return lengths[record];
+    }
+
+
+    /**
+     * 记录数
+     */
+    public int getRecordCount()
+    {
+        return starts.length;
+    }
+
+
+    public long getSize()
+    {
+        return size;
+    }
+
+
+    /**
+     * 占用的内存：映射的文件长度加上索引
+     */
+    public long getMemoryBytes()
+    {
+        return size + 12L * starts.length;
+    }
+
+
+    public String getFileName()
+    {
+        return fileName;
+    }
+}
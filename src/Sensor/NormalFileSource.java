@@ -0,0 +1,97 @@
+package Sensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * NormalFileSource 逐行读取非二进制文件，每行加上前后缀后发送
+ *
+ * @author Yibing Zhang
+ */
+class NormalFileSource implements RecordSource
+{
+    private final String     fileName;// 文件名字
+    private final byte[]     prefix;  // 记录前缀
+    private final byte[]     suffix;  // 记录后缀
+    private RandomAccessFile scan;    // 数据文件
+    private long             endpos;  // 数据文件长度
+    private long             next;    // 下一条记录的文件偏移
+
+
+    NormalFileSource(String fileName, byte[] prefix, byte[] suffix)
+    {
+        this.fileName = fileName;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+
+    @Override
+    public void open() throws IOException
+    {
+        File f = new File(fileName);
+        scan = new RandomAccessFile(f, "r");
+        endpos = f.length();
+        next = 0;
+    }
+
+
+    @Override
+    public boolean next(RecordBuffer out) throws IOException
+    {
+        if (scan.getFilePointer() == endpos)
+        {
+            return false;
+        }
+        out.put(prefix);
+        out.put(scan.readLine().getBytes());
+        out.put(suffix);
+        // 当该文件被读取至底时，重置读取指针到文件初始位置
+        next = scan.getFilePointer();
+        if (next == endpos)
+        {
+            scan.seek(0);
+            next = 0;
+        }
+        return true;
+    }
+
+
+    @Override
+    public long position()
+    {
+        return next;
+    }
+
+
+    @Override
+    public boolean seek(long position) throws IOException
+    {
+        if (position < 0 || position >= endpos)
+        {
+            return false;
+        }
+        scan.seek(position);
+        next = position;
+        return true;
+    }
+
+
+    @Override
+    public void close()
+    {
+        if (scan != null)
+        {
+            try
+            {
+                scan.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            scan = null;
+        }
+    }
+}
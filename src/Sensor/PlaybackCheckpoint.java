@@ -0,0 +1,172 @@
+package Sensor;
+
+import java.io.File;
+
+/**
+ * PlaybackCheckpoint 一个传感器的回放位置：数据文件的标识（路径，长度，修改时间），数据源的种类，
+ * 下一条记录在数据源中的位置和采样间隔。重新启动时数据文件和数据源种类都没有变化就直接定位到该位置继续发送，不需要从头扫描。
+ * 位置是数据源自己的定位方式：逐行和二进制逐byte回放为文件偏移，内存映射回放为记录序号，跟随文件为文件偏移，
+ * 因此更改playback或binaryFraming之后保存的位置不再有效；不支持定位的数据源（gzip文件，按模板生成）位置为-1，只保存采样间隔
+ *
+ * @author Yibing Zhang
+ */
+public final class PlaybackCheckpoint
+{
+    private final String file;    // 数据文件的绝对路径
+    private final String source;  // 数据源的种类（见RecordSources.kindOf），决定位置的含义
+    private final long   size;    // 打开时的文件长度
+    private final long   modified;// 打开时的文件修改时间(ms)
+    private final long   position;// 下一条记录在数据源中的位置，没有位置时为-1
+    private final int    record;  // 按时间戳发送时下一条记录的序号
+    private final long   interval;// 采样间隔(ms)
+
+
+    public PlaybackCheckpoint(String file, String source, long size, long modified, long position, int record,
+        long interval)
+    {
+        this.file = file;
+        this.source = source;
+        this.size = size;
+        this.modified = modified;
+        this.position = position;
+        this.record = record;
+        this.interval = interval;
+    }
+
+
+    /**
+     * 记下数据文件当前的标识，位置为-1
+     *
+     * @param fileName
+     *            数据文件，按模板生成时可为null
+     * @param source
+     *            数据源的种类
+     * @param interval
+     *            采样间隔(ms)
+     * @return 回放位置
+     */
+    static PlaybackCheckpoint of(String fileName, String source, long interval)
+    {
+        if (fileName == null)
+        {
+            return new PlaybackCheckpoint("", source, 0, 0, -1, 0, interval);
+        }
+        File f = new File(fileName).getAbsoluteFile();
+        return new PlaybackCheckpoint(f.getPath(), source, f.length(), f.lastModified(), -1, 0, interval);
+    }
+
+
+    /**
+     * 同一数据文件中的另一个位置
+     */
+    PlaybackCheckpoint at(long position, int record, long interval)
+    {
+        return new PlaybackCheckpoint(file, source, size, modified, position, record, interval);
+    }
+
+
+    /**
+     * 数据文件是否仍是记下位置时的文件：路径和数据源种类相同，长度和修改时间都没有变化；
+     * 跟随的文件不断追加，只要求长度不小于该位置
+     *
+     * @param fileName
+     *            数据文件
+     * @param source
+     *            现在的数据源种类
+     * @param growing
+     *            是否为跟随的文件
+     * @return 可以直接定位到该位置时返回true
+     */
+    boolean matches(String fileName, String source, boolean growing)
+    {
+        if (position < 0 || fileName == null || !this.source.equals(source))
+        {
+            return false;
+        }
+        File f = new File(fileName).getAbsoluteFile();
+        if (!f.getPath().equals(file))
+        {
+            return false;
+        }
+        return growing ? f.length() >= position : f.length() == size && f.lastModified() == modified;
+    }
+
+
+    public String getFile()
+    {
+        return file;
+    }
+
+
+    /**
+     * 获取数据源的种类
+     *
+     * @return 种类，如stream，mapped，follow，binary:fixed:16
+     */
+    public String getSource()
+    {
+        return source;
+    }
+
+
+    public long getSize()
+    {
+        return size;
+    }
+
+
+    public long getModified()
+    {
+        return modified;
+    }
+
+
+    /**
+     * 获取下一条记录在数据源中的位置
+     *
+     * @return 文件偏移或记录序号，没有位置时为-1
+     */
+    public long getPosition()
+    {
+        return position;
+    }
+
+
+    public int getRecord()
+    {
+        return record;
+    }
+
+
+    public long getInterval()
+    {
+        return interval;
+    }
+
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof PlaybackCheckpoint))
+        {
+            return false;
+        }
+        PlaybackCheckpoint c = (PlaybackCheckpoint)o;
+        return file.equals(c.file) && source.equals(c.source) && size == c.size && modified == c.modified && position == c.position
+            && record == c.record && interval == c.interval;
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        return (int)(31 * (31 * file.hashCode() + position) + record);
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return file + "@" + position;
+    }
+}
@@ -0,0 +1,220 @@
+package Sensor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RecordBuffer 可重复使用的记录缓冲区，数据源把一条完整的记录（含前后缀）写入其中，
+ * 发送模块再一次性写出，避免每条记录都创建新的byte数组
+ *
+ * @author Yibing Zhang
+ */
+public final class RecordBuffer
+{
+    private static final byte[] HEX   = "0123456789abcdef".getBytes();// 16进制字符
+    private static final byte[] NAN   = "NaN".getBytes();             // 非数值
+    private static final long[] POW10 = new long[19];                 // 10的0至18次方
+
+    static
+    {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++)
+        {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private byte[] data;  // 缓冲数据
+    private int    length;// 当前记录长度
+
+
+    public RecordBuffer(int capacity)
+    {
+        this.data = new byte[Math.max(capacity, 16)];
+    }
+
+
+    /**
+     * 清空缓冲区，准备写入下一条记录
+     */
+    public void clear()
+    {
+        length = 0;
+    }
+
+
+    public void put(byte b)
+    {
+        ensureCapacity(1);
+        data[length++] = b;
+    }
+
+
+    public void put(byte[] src)
+    {
+        put(src, 0, src.length);
+    }
+
+
+    public void put(byte[] src, int offset, int len)
+    {
+        ensureCapacity(len);
+        System.arraycopy(src, offset, data, length, len);
+        length += len;
+    }
+
+
+    /**
+     * 从src的index处复制len个字节，会改变src的position
+     *
+     * @param src
+     *            源缓冲区（如内存映射的文件）
+     * @param index
+     *            起始位置
+     * @param len
+     *            长度
+     */
+    public void put(ByteBuffer src, int index, int len)
+    {
+        ensureCapacity(len);
+        src.position(index);
+        src.get(data, length, len);
+        length += len;
+    }
+
+
+    /**
+     * 从src的index处读取len个字节，每个字节以两位小写16进制字符写入，会改变src的position
+     *
+     * @param src
+     *            源缓冲区
+     * @param index
+     *            起始位置
+     * @param len
+     *            长度
+     */
+    public void putHex(ByteBuffer src, int index, int len)
+    {
+        ensureCapacity(2 * len);
+        src.position(index);
+        for (int i = 0; i < len; i++)
+        {
+            int b = src.get() & 0xff;
+            data[length++] = HEX[b >>> 4];
+            data[length++] = HEX[b & 0x0f];
+        }
+    }
+
+
+    /**
+     * 写入十进制整数，不创建字符串
+     *
+     * @param value
+     *            整数
+     */
+    public void putLong(long value)
+    {
+        if (value < 0)
+        {
+            put((byte)'-');
+            if (value == Long.MIN_VALUE)
+            {
+                // 最小值没有对应的正数，先写出最高位
+                put((byte)'9');
+                value = -(value + 9000000000000000000L);
+                putDigits(value, 18);
+                return;
+            }
+            value = -value;
+        }
+        putDigits(value, digitCount(value));
+    }
+
+
+    /**
+     * 写入固定位数的十进制整数，不足时前面补0
+     *
+     * @param value
+     *            非负整数
+     * @param width
+     *            位数
+     */
+    public void putDigits(long value, int width)
+    {
+        ensureCapacity(width);
+        for (int i = length + width - 1; i >= length; i--)
+        {
+            data[i] = (byte)('0' + value % 10);
+            value /= 10;
+        }
+        length += width;
+    }
+
+
+    /**
+     * 写入保留decimals位小数的十进制数（四舍五入），不创建字符串；绝对值超过long范围时写入边界值
+     *
+     * @param value
+     *            数值
+     * @param decimals
+     *            小数位数，0至9
+     */
+    public void putDecimal(double value, int decimals)
+    {
+        if (Double.isNaN(value))
+        {
+            put(NAN);
+            return;
+        }
+        long scale = POW10[decimals];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0)
+        {
+            put((byte)'-');
+        }
+        putLong(scaled / scale);
+        if (decimals > 0)
+        {
+            put((byte)'.');
+            putDigits(scaled % scale, decimals);
+        }
+    }
+
+
+    private static int digitCount(long value)
+    {
+        int count = 1;
+        while (count < 19 && value >= POW10[count])
+        {
+            count++;
+        }
+        return count;
+    }
+
+
+    /**
+     * 获取底层数组，有效数据为[0, length())
+     *
+     * @return 底层数组
+     */
+    public byte[] array()
+    {
+        return data;
+    }
+
+
+    public int length()
+    {
+        return length;
+    }
+
+
+    private void ensureCapacity(int extra)
+    {
+        if (length + extra > data.length)
+        {
+            byte[] bigger = new byte[Math.max(data.length * 2, length + extra)];
+            System.arraycopy(data, 0, bigger, 0, length);
+            data = bigger;
+        }
+    }
+}
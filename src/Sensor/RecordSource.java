@@ -0,0 +1,64 @@
+package Sensor;
+
+import java.io.IOException;
+
+/**
+ * RecordSource 模拟传感器的数据源，每次提供一条可以直接发送的记录。读到文件末尾时自动回到开头，
+ * 与原来的循环发送方式一致
+ *
+ * @author Yibing Zhang
+ */
+public interface RecordSource
+{
+    /**
+     * 打开数据源
+     *
+     * @throws IOException
+     *             打开文件出错
+     */
+    void open() throws IOException;
+
+
+    /**
+     * 读取下一条记录到out中
+     *
+     * @param out
+     *            记录缓冲区，调用前已清空
+     * @return 数据源为空时返回false
+     * @throws IOException
+     *             读取出错
+     */
+    boolean next(RecordBuffer out) throws IOException;
+
+
+    /**
+     * 获取下一条记录在数据源中的位置，用于记录回放位置
+     *
+     * @return 文件偏移或记录序号，不支持定位时返回-1
+     */
+    default long position()
+    {
+        return -1;
+    }
+
+
+    /**
+     * 直接定位到position()返回过的位置，下一条记录从该位置读取
+     *
+     * @param position
+     *            文件偏移或记录序号
+     * @return 不支持定位或位置超出数据源时返回false，位置不变
+     * @throws IOException
+     *             读取出错
+     */
+    default boolean seek(long position) throws IOException
+    {
+        return false;
+    }
+
+
+    /**
+     * 关闭数据源
+     */
+    void close();
+}
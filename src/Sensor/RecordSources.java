@@ -0,0 +1,114 @@
+package Sensor;
+
+import java.util.concurrent.ThreadFactory;
+import utils.SensorConfig;
+
+/**
+ * RecordSources 根据传感器配置创建相应的数据源
+ *
+ * @author Yibing Zhang
+ */
+public class RecordSources
+{
+    private RecordSources()
+    {
+    }
+
+
+    /**
+     * 数据源的种类，决定回放位置的含义（文件偏移或记录序号）：stream，mapped，follow，binary:划分方式，gzip，generated
+     *
+     * @param config
+     *            传感器配置
+     * @return 种类，与create()创建的数据源对应
+     */
+    static String kindOf(SensorConfig config)
+    {
+        if (config.isCompressed())
+        {
+            return "gzip";
+        }
+        switch (config.getFileType())
+        {
+            case 1:
+                if (config.isFollow())
+                {
+                    return "follow";
+                }
+                return SensorConfig.PLAYBACK_MAPPED.equals(config.getPlayback()) ? "mapped" : "stream";
+            case 2:
+                return "binary:" + config.getBinaryFraming();
+            case 3:
+                return "generated";
+            default:
+                return "";
+        }
+    }
+
+
+    /**
+     * 创建数据源（未打开）
+     *
+     * @param config
+     *            传感器配置
+     * @return 数据源，文件种类无法识别时返回null
+     */
+    public static RecordSource create(SensorConfig config)
+    {
+        return create(config, null);
+    }
+
+
+    /**
+     * 创建数据源（未打开），需要后台线程的数据源（gzip预读）用threads创建线程
+     *
+     * @param config
+     *            传感器配置
+     * @param threads
+     *            线程工厂，例如虚拟线程工厂；为null时使用平台守护线程
+     * @return 数据源，文件种类无法识别时返回null
+     */
+    public static RecordSource create(SensorConfig config, ThreadFactory threads)
+    {
+        if (config.isCompressed())
+        {
+            // 流式解压，只支持逐行回放和每次一个byte的二进制回放
+            return new GzipFileSource(config.getFileName(), config.getPrefix().getBytes(), config.getSuffix().getBytes(),
+                config.getFileType() == 1, threads);
+        }
+        switch (config.getFileType())
+        {
+            case 1:
+                if (config.isFollow())
+                {
+                    return new FollowFileSource(config.getFileName(), config.getPrefix().getBytes(),
+                        config.getSuffix().getBytes(), config.isFollowFromStart());
+                }
+                if (SensorConfig.PLAYBACK_MAPPED.equals(config.getPlayback()))
+                {
+                    return new MappedFileSource(config.getFileName(), null, config.getPrefix().getBytes(),
+                        config.getSuffix().getBytes(), false);
+                }
+                return new NormalFileSource(config.getFileName(), config.getPrefix().getBytes(),
+                    config.getSuffix().getBytes());
+            case 2:
+                if (config.getBinaryFraming().getType() == BinaryFraming.Type.BYTE)
+                {
+                    return new BinaryFileSource(config.getFileName());
+                }
+                // 整条记录回放：原样发送，或编码为16进制字符后加上后缀
+                if (SensorConfig.ENCODING_HEX.equals(config.getBinaryEncoding()))
+                {
+                    return new MappedFileSource(config.getFileName(), config.getBinaryFraming(), new byte[0],
+                        config.getSuffix().getBytes(), true);
+                }
+                return new MappedFileSource(config.getFileName(), config.getBinaryFraming(), new byte[0],
+                    new byte[0], false);
+            case 3:
+                return new GeneratedSource(RecordTemplate.parse(config.getTemplate()), config.getPrefix().getBytes(),
+                    config.getSuffix().getBytes());
+            default:
+                return null;
+        }
+    }
+}
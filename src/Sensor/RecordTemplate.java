@@ -0,0 +1,454 @@
+package Sensor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * RecordTemplate 生成数据的记录模板。模板是普通文字中夹着${类型 参数=值 ...}形式的字段，$$表示一个$：
+ * <ul>
+ * <li>${counter start=0 step=1} 计数器</li>
+ * <li>${time format=iso|epoch} 当前时间，iso为本地时间yyyy-MM-ddTHH:mm:ss.SSS，epoch为毫秒数</li>
+ * <li>${sine offset=0 amplitude=1 period=60 phase=0 decimals=3} 正弦波，period和phase的单位为秒</li>
+ * <li>${walk start=0 step=1 min=-1e9 max=1e9 seed=1 decimals=3} 随机游走，每条记录变化不超过step，限制在min至max之间</li>
+ * <li>${noise mean=0 sd=1 seed=1 decimals=3} 正态分布噪声</li>
+ * </ul>
+ * 解析在创建时完成；生成记录时数字直接写入记录缓冲区，不创建字符串。每个实例有自己的状态（计数器，游走位置，随机数），
+ * 只能由一个数据源使用
+ *
+ * @author Yibing Zhang
+ */
+public final class RecordTemplate
+{
+    private final byte[][] literals;// 每个字段之前的文字，最后一个是最后一个字段之后的文字
+    private final Field[]  fields;  // 字段
+    private long           start;   // 开始生成的时间(ns)
+
+
+    private RecordTemplate(byte[][] literals, Field[] fields)
+    {
+        this.literals = literals;
+        this.fields = fields;
+        this.start = System.nanoTime();
+    }
+
+
+    /**
+     * 解析模板
+     *
+     * @param template
+     *            模板
+     * @return 新的模板实例
+     * @throws IllegalArgumentException
+     *             模板格式错误
+     */
+    public static RecordTemplate parse(String template)
+    {
+        List<byte[]> literals = new ArrayList<byte[]>();
+        List<Field> fields = new ArrayList<Field>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length())
+        {
+            char c = template.charAt(i);
+            if (c != '$')
+            {
+                literal.append(c);
+                i++;
+            }
+            else if (template.startsWith("$$", i))
+            {
+                literal.append('$');
+                i += 2;
+            }
+            else if (template.startsWith("${", i))
+            {
+                int end = template.indexOf('}', i);
+                if (end < 0)
+                {
+                    throw new IllegalArgumentException("Unclosed field in template: " + template);
+                }
+                literals.add(literal.toString().getBytes());
+                literal.setLength(0);
+                fields.add(parseField(template.substring(i + 2, end).trim()));
+                i = end + 1;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Use $$ for a literal $ in template: " + template);
+            }
+        }
+        literals.add(literal.toString().getBytes());
+        return new RecordTemplate(literals.toArray(new byte[literals.size()][]),
+            fields.toArray(new Field[fields.size()]));
+    }
+
+
+    private static Field parseField(String spec)
+    {
+        String[] words = spec.split("\\s+");
+        Map<String, String> params = new HashMap<String, String>();
+        for (int i = 1; i < words.length; i++)
+        {
+            int eq = words[i].indexOf('=');
+            if (eq <= 0)
+            {
+                throw new IllegalArgumentException("Expected name=value in field ${" + spec + "}");
+            }
+            params.put(words[i].substring(0, eq), words[i].substring(eq + 1));
+        }
+        Params p = new Params(spec, params);
+        Field field;
+        switch (words[0])
+        {
+            case "counter":
+                field = new Counter(p.getLong("start", 0), p.getLong("step", 1));
+                break;
+            case "time":
+                String format = p.getString("format", "iso");
+                if (!"iso".equals(format) && !"epoch".equals(format))
+                {
+                    throw new IllegalArgumentException("format must be iso or epoch in field ${" + spec + "}");
+                }
+                field = new Time("iso".equals(format));
+                break;
+            case "sine":
+                field = new Sine(p.getDouble("offset", 0), p.getDouble("amplitude", 1), p.getDouble("period", 60),
+                    p.getDouble("phase", 0), p.getDecimals());
+                break;
+            case "walk":
+                field = new Walk(p.getDouble("start", 0), p.getDouble("step", 1), p.getDouble("min", -1e9),
+                    p.getDouble("max", 1e9), p.getLong("seed", 1), p.getDecimals());
+                break;
+            case "noise":
+                field = new Noise(p.getDouble("mean", 0), p.getDouble("sd", 1), p.getLong("seed", 1), p.getDecimals());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown field type in ${" + spec + "}");
+        }
+        p.checkUnused();
+        return field;
+    }
+
+
+    /**
+     * 生成一条记录，写入out
+     *
+     * @param out
+     *            记录缓冲区
+     */
+    public void write(RecordBuffer out)
+    {
+        long now = System.nanoTime();
+        long millis = System.currentTimeMillis();
+        double seconds = (now - start) / 1e9;
+        for (int i = 0; i < fields.length; i++)
+        {
+            out.put(literals[i]);
+            fields[i].write(out, seconds, millis);
+        }
+        out.put(literals[fields.length]);
+    }
+
+
+    /**
+     * 重新开始：计数器，游走位置和随机数回到初始状态，正弦波从相位起点开始
+     */
+    public void reset()
+    {
+        start = System.nanoTime();
+        for (Field field : fields)
+        {
+            field.reset();
+        }
+    }
+
+
+    /**
+     * 字段参数，记录用过的参数以便发现拼写错误
+     */
+    private static final class Params
+    {
+        private final String              spec;  // 字段原文
+        private final Map<String, String> values;// 参数值
+
+
+        Params(String spec, Map<String, String> values)
+        {
+            this.spec = spec;
+            this.values = values;
+        }
+
+
+        String getString(String name, String def)
+        {
+            String value = values.remove(name);
+            return value == null ? def : value;
+        }
+
+
+        long getLong(String name, long def)
+        {
+            String value = values.remove(name);
+            try
+            {
+                return value == null ? def : Long.parseLong(value);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException(name + " must be an integer in field ${" + spec + "}");
+            }
+        }
+
+
+        double getDouble(String name, double def)
+        {
+            String value = values.remove(name);
+            try
+            {
+                return value == null ? def : Double.parseDouble(value);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException(name + " must be a number in field ${" + spec + "}");
+            }
+        }
+
+
+        int getDecimals()
+        {
+            long decimals = getLong("decimals", 3);
+            if (decimals < 0 || decimals > 9)
+            {
+                throw new IllegalArgumentException("decimals must be 0 to 9 in field ${" + spec + "}");
+            }
+            return (int)decimals;
+        }
+
+
+        void checkUnused()
+        {
+            if (!values.isEmpty())
+            {
+                throw new IllegalArgumentException("Unknown parameter " + values.keySet() + " in field ${" + spec + "}");
+            }
+        }
+    }
+
+
+    /**
+     * 字段：把当前值写入记录缓冲区
+     */
+    private abstract static class Field
+    {
+        /**
+         * @param out
+         *            记录缓冲区
+         * @param seconds
+         *            开始生成后经过的时间(s)
+         * @param millis
+         *            当前时间(ms)
+         */
+        abstract void write(RecordBuffer out, double seconds, long millis);
+
+
+        void reset()
+        {
+        }
+    }
+
+
+    private static final class Counter extends Field
+    {
+        private final long first;// 初始值
+        private final long step; // 步长
+        private long       value;// 当前值
+
+
+        Counter(long first, long step)
+        {
+            this.first = first;
+            this.step = step;
+            this.value = first;
+        }
+
+
+        @Override
+        void write(RecordBuffer out, double seconds, long millis)
+        {
+            out.putLong(value);
+            value += step;
+        }
+
+
+        @Override
+        void reset()
+        {
+            value = first;
+        }
+    }
+
+
+    private static final class Time extends Field
+    {
+        private final boolean  iso;                       // 是否为iso格式
+        private final TimeZone zone = TimeZone.getDefault();// 本地时区
+
+
+        Time(boolean iso)
+        {
+            this.iso = iso;
+        }
+
+
+        @Override
+        void write(RecordBuffer out, double seconds, long millis)
+        {
+            if (!iso)
+            {
+                out.putLong(millis);
+                return;
+            }
+            long local = millis + zone.getOffset(millis);
+            long days = Math.floorDiv(local, 86400000L);
+            long ms = Math.floorMod(local, 86400000L);
+            // 由1970-01-01起的天数计算年月日（公历）
+            long z = days + 719468;
+            long era = Math.floorDiv(z, 146097);
+            long doe = z - era * 146097;
+            long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+            long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+            long mp = (5 * doy + 2) / 153;
+            long day = doy - (153 * mp + 2) / 5 + 1;
+            long month = mp < 10 ? mp + 3 : mp - 9;
+            long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+            out.putDigits(year, 4);
+            out.put((byte)'-');
+            out.putDigits(month, 2);
+            out.put((byte)'-');
+            out.putDigits(day, 2);
+            out.put((byte)'T');
+            out.putDigits(ms / 3600000, 2);
+            out.put((byte)':');
+            out.putDigits(ms / 60000 % 60, 2);
+            out.put((byte)':');
+            out.putDigits(ms / 1000 % 60, 2);
+            out.put((byte)'.');
+            out.putDigits(ms % 1000, 3);
+        }
+    }
+
+
+    private static final class Sine extends Field
+    {
+        private final double offset;   // 中心值
+        private final double amplitude;// 振幅
+        private final double omega;    // 角频率
+        private final double phase;    // 相位(s)
+        private final int    decimals; // 小数位数
+
+
+        Sine(double offset, double amplitude, double period, double phase, int decimals)
+        {
+            if (period <= 0)
+            {
+                throw new IllegalArgumentException("sine period must be positive");
+            }
+            this.offset = offset;
+            this.amplitude = amplitude;
+            this.omega = 2 * Math.PI / period;
+            this.phase = phase;
+            this.decimals = decimals;
+        }
+
+
+        @Override
+        void write(RecordBuffer out, double seconds, long millis)
+        {
+            out.putDecimal(offset + amplitude * Math.sin(omega * (seconds + phase)), decimals);
+        }
+    }
+
+
+    private static final class Walk extends Field
+    {
+        private final double first;   // 初始值
+        private final double step;    // 每条记录最大变化
+        private final double min;     // 下限
+        private final double max;     // 上限
+        private final long   seed;    // 随机数种子
+        private final Random random;  // 随机数
+        private final int    decimals;// 小数位数
+        private double       value;   // 当前值
+
+
+        Walk(double first, double step, double min, double max, long seed, int decimals)
+        {
+            if (min > max)
+            {
+                throw new IllegalArgumentException("walk min must not exceed max");
+            }
+            this.first = first;
+            this.step = step;
+            this.min = min;
+            this.max = max;
+            this.seed = seed;
+            this.random = new Random(seed);
+            this.decimals = decimals;
+            this.value = first;
+        }
+
+
+        @Override
+        void write(RecordBuffer out, double seconds, long millis)
+        {
+            out.putDecimal(value, decimals);
+            value = Math.max(min, Math.min(max, value + step * (2 * random.nextDouble() - 1)));
+        }
+
+
+        @Override
+        void reset()
+        {
+            value = first;
+            random.setSeed(seed);
+        }
+    }
+
+
+    private static final class Noise extends Field
+    {
+        private final double mean;    // 均值
+        private final double sd;      // 标准差
+        private final long   seed;    // 随机数种子
+        private final Random random;  // 随机数
+        private final int    decimals;// 小数位数
+
+
+        Noise(double mean, double sd, long seed, int decimals)
+        {
+            this.mean = mean;
+            this.sd = sd;
+            this.seed = seed;
+            this.random = new Random(seed);
+            this.decimals = decimals;
+        }
+
+
+        @Override
+        void write(RecordBuffer out, double seconds, long millis)
+        {
+            out.putDecimal(mean + sd * random.nextGaussian(), decimals);
+        }
+
+
+        @Override
+        void reset()
+        {
+            random.setSeed(seed);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package Sensor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+import utils.SensorConfig;
+
+/**
+ * RecordTimeline 按记录中的时间戳回放时每条记录之后的间隔。打开时扫描一遍数据文件，解析每行的时间戳字段，
+ * 把相邻记录的时间差预先算成数组，发送时每条记录只需按序号取一个间隔，与文件大小无关。
+ * 时间戳格式：
+ * <ul>
+ * <li>seconds 秒数，可带小数（如epoch秒或相对时间）</li>
+ * <li>millis 毫秒数，可带小数</li>
+ * <li>其他为DateTimeFormatter格式，如yyyy-MM-dd HH:mm:ss.SSS；只有时间没有日期时倒退超过12小时按跨过午夜计算</li>
+ * </ul>
+ * 无法解析时间戳的行（如表头）与上一条记录同时发送；时间倒退时间隔为0。
+ * 行的划分与NormalFileSource和MappedFileSource相同，记录序号与数据源一一对应
+ *
+ * @author Yibing Zhang
+ */
+public final class RecordTimeline
+{
+    public static final String FORMAT_SECONDS = "seconds";      // 秒数
+    public static final String FORMAT_MILLIS  = "millis";       // 毫秒数
+
+    private static final long  DAY            = 86400000000000L;// 一天(ns)
+    private static final int   MAX_LINE       = 1024;           // 只在每行的前1024字节中查找时间戳
+
+    private final long[]       gaps;                            // 第i条记录到下一条记录的间隔(ns)，最后一条为-1
+    private final int          unparsed;                        // 无法解析时间戳的记录数
+    private final long         span;                            // 第一条到最后一条记录的时长(ns)
+
+
+    private RecordTimeline(long[] gaps, int unparsed, long span)
+    {
+        this.gaps = gaps;
+        this.unparsed = unparsed;
+        this.span = span;
+    }
+
+
+    /**
+     * 扫描传感器的数据文件，建立记录间隔数组
+     *
+     * @param config
+     *            传感器配置（数据文件，时间戳字段，分隔符和格式）
+     * @return 记录间隔
+     * @throws IOException
+     *             读取文件出错，或没有一条记录能解析出时间戳
+     */
+    public static RecordTimeline load(SensorConfig config) throws IOException
+    {
+        Parser parser = new Parser(config.getTimestampField(), config.getTimestampDelimiters(),
+            config.getTimestampFormat());
+        DataFileCache cache = DataFileCache.getInstance();
+        DataFileCache.Entry entry = cache.acquire(config.getFileName(), null);
+        try
+        {
+            MappedRecordFile file = entry.getFile();
+            ByteBuffer[] regions = file.duplicateRegions();
+            int count = file.getRecordCount();
+            long[] gaps = new long[count];
+            byte[] line = new byte[MAX_LINE];
+            int unparsed = 0;
+            int region = 0;
+            long first = 0;
+            long previous = 0;
+            boolean found = false;
+            for (int i = 0; i < count; i++)
+            {
+                region = file.regionOf(i, region);
+                int length = Math.min(file.lengthOf(i), line.length);
+                ByteBuffer buffer = regions[region];
+                buffer.position(file.offsetInRegion(i, region));
+                buffer.get(line, 0, length);
+                long time = parser.parse(line, length, previous, found);
+                if (time < 0)
+                {
+                    unparsed++;
+                    time = previous;
+                }
+                else if (!found)
+                {
+                    found = true;
+                    first = time;
+                    previous = time;
+                }
+                if (i > 0)
+                {
+                    gaps[i - 1] = Math.max(0, time - previous);
+                }
+                previous = Math.max(previous, time);
+            }
+            if (!found)
+            {
+                throw new IOException("No timestamp found in " + config.getFileName());
+            }
+            if (count > 0)
+            {
+                gaps[count - 1] = -1;
+            }
+            return new RecordTimeline(gaps, unparsed, previous - first);
+        }
+        finally
+        {
+            cache.release(entry);
+        }
+    }
+
+
+    /**
+     * 检查时间戳格式
+     *
+     * @param format
+     *            seconds，millis或DateTimeFormatter格式
+     * @throws IllegalArgumentException
+     *             格式错误
+     */
+    public static void checkFormat(String format)
+    {
+        new Parser(1, " ", format);
+    }
+
+
+    /**
+     * 获取一条记录之后到下一条记录的间隔
+     *
+     * @param record
+     *            记录序号
+     * @return 间隔(ns)，最后一条记录（之后回到开头）为-1
+     */
+    public long gapAfter(int record)
+    {
+        return gaps[record];
+    }
+
+
+    public int size()
+    {
+        return gaps.length;
+    }
+
+
+    /**
+     * 获取无法解析时间戳的记录数
+     */
+    public int getUnparsed()
+    {
+        return unparsed;
+    }
+
+
+    /**
+     * 获取第一条到最后一条记录的时长(ns)
+     */
+    public long getSpan()
+    {
+        return span;
+    }
+
+
+    /**
+     * Parser 从一行中取出时间戳字段并解析为纳秒
+     */
+    private static final class Parser
+    {
+        private final int               field;     // 时间戳从第几个字段开始，从1开始
+        private final int               fields;    // 时间戳占几个字段（格式中含有分隔符时大于1）
+        private final boolean[]         delimiter; // 分隔符（ISO-8859-1字符）
+        private final String            format;    // 时间戳格式
+        private final DateTimeFormatter formatter; // 日期时间格式，seconds和millis时为null
+        private long                    day;       // 只有时间时，跨过午夜的天数
+
+
+        Parser(int field, String delimiters, String format)
+        {
+            this.field = field;
+            this.format = format;
+            this.delimiter = new boolean[256];
+            for (char c : delimiters.toCharArray())
+            {
+                if (c < 256)
+                {
+                    delimiter[c] = true;
+                }
+            }
+            if (FORMAT_SECONDS.equals(format) || FORMAT_MILLIS.equals(format))
+            {
+                this.formatter = null;
+                this.fields = 1;
+            }
+            else
+            {
+                this.formatter = DateTimeFormatter.ofPattern(format, Locale.ROOT);
+                // 格式中的分隔符把时间戳分成了几个字段
+                int n = 1;
+                boolean inDelimiter = false;
+                for (char c : format.toCharArray())
+                {
+                    boolean d = c < 256 && delimiter[c];
+                    if (d && !inDelimiter)
+                    {
+                        n++;
+                    }
+                    inDelimiter = d;
+                }
+                this.fields = n;
+            }
+        }
+
+
+        /**
+         * 解析一行的时间戳
+         *
+         * @param line
+         *            行内容
+         * @param length
+         *            行长度
+         * @param previous
+         *            上一条记录的时间，只有时间时用于判断跨过午夜
+         * @param found
+         *            之前是否已有记录解析成功
+         * @return 时间(ns)，无法解析时返回-1
+         */
+        long parse(byte[] line, int length, long previous, boolean found)
+        {
+            // 找到第field个字段的开头和之后第fields个字段的结尾，连续的分隔符算一个
+            int start = -1;
+            int end = -1;
+            int index = 0;
+            int pos = 0;
+            while (pos < length)
+            {
+                while (pos < length && delimiter[line[pos] & 0xff])
+                {
+                    pos++;
+                }
+                if (pos == length)
+                {
+                    break;
+                }
+                index++;
+                if (index == field)
+                {
+                    start = pos;
+                }
+                while (pos < length && !delimiter[line[pos] & 0xff])
+                {
+                    pos++;
+                }
+                if (index == field + fields - 1)
+                {
+                    end = pos;
+                    break;
+                }
+            }
+            if (start < 0 || end < 0)
+            {
+                return -1;
+            }
+            if (formatter == null)
+            {
+                return parseNumber(line, start, end, FORMAT_SECONDS.equals(format) ? 9 : 6);
+            }
+            try
+            {
+                TemporalAccessor t = formatter.parse(new String(line, start, end - start, StandardCharsets.ISO_8859_1));
+                long nanoOfDay = t.isSupported(ChronoField.NANO_OF_DAY) ? t.getLong(ChronoField.NANO_OF_DAY) : 0;
+                if (t.isSupported(ChronoField.EPOCH_DAY))
+                {
+                    return t.getLong(ChronoField.EPOCH_DAY) * DAY + nanoOfDay;
+                }
+                long time = day * DAY + nanoOfDay;
+                if (found && time < previous)
+                {
+                    if (previous - time <= DAY / 2)
+                    {
+                        // 小的倒退不是跨过午夜，间隔为0
+                        return previous;
+                    }
+                    day++;
+                    time += DAY;
+                }
+                return time;
+            }
+            catch (DateTimeParseException e)
+            {
+                return -1;
+            }
+        }
+
+
+        /**
+         * 解析非负的十进制数，scale为单位对应的纳秒数的位数（秒为9，毫秒为6）
+         */
+        private static long parseNumber(byte[] line, int start, int end, int scale)
+        {
+            long value = 0;
+            int digits = -1;
+            for (int i = start; i < end; i++)
+            {
+                int b = line[i];
+                if (b == '.' && digits < 0)
+                {
+                    digits = 0;
+                    continue;
+                }
+                if (b < '0' || b > '9' || value > Long.MAX_VALUE / 10)
+                {
+                    return -1;
+                }
+                if (digits < 0)
+                {
+                    value = value * 10 + (b - '0');
+                }
+                else if (digits < scale)
+                {
+                    value = value * 10 + (b - '0');
+                    digits++;
+                }
+            }
+            for (int i = Math.max(digits, 0); i < scale; i++)
+            {
+                if (value > Long.MAX_VALUE / 10)
+                {
+                    return -1;
+                }
+                value *= 10;
+            }
+            return value;
+        }
+    }
+}
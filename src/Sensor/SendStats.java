@@ -0,0 +1,62 @@
+package Sensor;
+
+import java.util.concurrent.atomic.LongAdder;
+import utils.LatencyHistogram;
+
+/**
+ * SendStats 一个模拟传感器发送数据记录的统计：记录数，字节数，每次调用sendToPort的耗时。
+ * 计数使用LongAdder，记录时不加锁；重新启动发送模块时沿用同一个实例
+ *
+ * @author Yibing Zhang
+ */
+public class SendStats
+{
+    private final LongAdder        records     = new LongAdder();       // 已发送记录数
+    private final LongAdder        bytes       = new LongAdder();       // 已发送字节数
+    private final LatencyHistogram sendLatency = new LatencyHistogram();// sendToPort的耗时
+
+
+    /**
+     * 记录一次发送
+     *
+     * @param length
+     *            记录长度
+     * @param nanos
+     *            sendToPort的耗时
+     */
+    public void record(int length, long nanos)
+    {
+        records.increment();
+        bytes.add(length);
+        sendLatency.record(nanos);
+    }
+
+
+    public long getRecordCount()
+    {
+        return records.sum();
+    }
+
+
+    public long getByteCount()
+    {
+        return bytes.sum();
+    }
+
+
+    public LatencyHistogram getSendLatency()
+    {
+        return sendLatency;
+    }
+
+
+    /**
+     * 清空统计
+     */
+    public void reset()
+    {
+        records.reset();
+        bytes.reset();
+        sendLatency.reset();
+    }
+}
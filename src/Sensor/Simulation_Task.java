@@ -1,202 +1,888 @@
-package Sensor;
-
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.RandomAccessFile;
-import gnu.io.SerialPort;
-import utils.SerialPortManager;
-
-/**
- * Simulation_Task 模拟传感器数据发送模块，读取指定传感器数据文件里的数据， 实时给指定串口发送回去。
- * 
- * @author lenovo
- */
-public class Simulation_Task implements Runnable
-{
-    private String           sensorName;    // 模拟器名称
-    private SerialPort       port;          // 串口号
-    private volatile boolean running = false;// 判断是否要停止发送
-    private String           fileName;      // 文件名字
-    private int              fileType;      // 文件种类，1为非2进制文件，2为2进制文件
-    private volatile long interval;
-
-    /**
-     * Constructor 用于初始化Simulation_Task
-     * 
-     * @param sensorName
-     *            传感器名称
-     * @param port
-     *            串口
-     * @param fileName
-     *            文件名称
-     * @param fileType
-     *            文件种类
-     */
-    public Simulation_Task(String sensorName, SerialPort port, String fileName, int fileType,long interval)
-    {
-        this.sensorName = sensorName;
-        this.port = port;
-        this.fileName = fileName;
-        this.fileType = fileType;
-        this.interval=interval;
-    }
-
-
-    /**
-     * Override run method，用于启动数据发送模块
-     */
-    @Override
-    public void run()
-    {
-        // 判断文件的种类,读取相应的文件
-        switch (fileType)
-        {
-            case 1:
-                readNormalFile();
-                break;
-            case 2:
-                readBinaryFile();
-                break;
-            default:
-                return;
-        }
-    }
-
-
-    /**
-     * 读取非二进制文件，并发送至指定串口。每隔三秒读取并发送一行数据;休眠时间后续可用于模拟器发送数据间隔 （添加休眠参数可模拟部分传感器set
-     * interval）
-     */
-    private void readNormalFile()
-    {
-        File f = new File(fileName);
-        RandomAccessFile scan;
-        try
-        {
-            scan = new RandomAccessFile(f, "r");
-            long endpos = f.length();
-            while (scan.getFilePointer() != endpos && running)
-            {
-
-                String rec_data = ">" + scan.readLine() + "\n";
-                // 发送数据至串口
-                SerialPortManager.sendToPort(port, rec_data.getBytes());
-                Thread.sleep(interval);
-                // 当该文件被读取至底时，重置读取指针到文件初始位置
-                if (scan.getFilePointer() == endpos)
-                {
-                    scan.seek(0);
-                }
-            }
-            scan.close();
-        }
-        catch (FileNotFoundException e)
-        {
-            System.err.println("No such file");
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-        catch (InterruptedException e)
-        {
-            e.printStackTrace();
-        }
-    }
-
-
-    /**
-     * 读取二进制文件，并发送至指定串口。每隔三秒读取并发送一个byte
-     */
-    private void readBinaryFile()
-    {
-        File f = new File(fileName);
-        RandomAccessFile scan;
-        try
-        {
-            scan = new RandomAccessFile(f, "r");
-            long endpos = f.length();
-            while (scan.getFilePointer() != endpos && running)
-            {
-                // 读取2进制文件，以16进制发送
-                String rec_data = Integer.toHexString(scan.readByte() & 0xff);
-                SerialPortManager.sendToPort(port, rec_data.getBytes());
-                Thread.sleep(interval);
-                if (scan.getFilePointer() == endpos)
-                {
-                    scan.seek(0);
-                }
-            }
-            scan.close();
-        }
-        catch (FileNotFoundException e)
-        {
-            System.err.println("No such file");
-        }
-        catch (IOException e)
-        {
-            e.printStackTrace();
-        }
-        catch (InterruptedException e)
-        {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-             * 设置采样间隔
-     * @param interval 采样间隔
-     * 
-     * @return true 如果在运行中，否则为false
-     */
-    public void setInterval(long interval)
-    {
-        System.out.println("Interval before(ms): "+this.interval);
-        this.interval=interval;
-        System.out.println("Interval after(ms): "+this.interval);
-    }
-    /**
-     * 获取采样间隔
-     * @return 采样间隔
-     */
-    public long getInterval() {
-       return this.interval;
-    }
-    /**
-             * 获取运行状态
-     * @return 运行状态
-     */
-    public boolean getRunningState()
-    {
-        return this.running;
-    }
-    /**
-             * 设置运行状态
-     * @param run 设置运行状态
-     */
-    public void setRunningState(boolean run)
-    {
-        this.running=run;
-    }
-
-
-    /**
-     * 获取模拟传感器名称
-     * 
-     * @return 模拟传感器的名称
-     */
-    public String getsensorName()
-    {
-        return this.sensorName;
-    }
-
-
-    /**
-     * 停止该模块，将运行状态改为false，即可实现停止工作
-     */
-    public void stop()
-    {
-        running = false;
-    }
-}
+package Sensor;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import gnu.io.SerialPort;
+import utils.LinePacer;
+import utils.PortFanOut;
+import utils.PortWriter;
+import utils.SensorConfig;
+import utils.SerialPortManager;
+import utils.SessionLog;
+
+/**
+ * Simulation_Task 模拟传感器数据发送模块，读取指定传感器数据文件里的数据， 实时给指定串口发送回去。
+ * 可以挂在共享的调度器上按采样间隔逐条发送，也可以在独立线程（例如虚拟线程）中运行。发送时间由FixedRateClock
+ * 按截止时间计算，读取和发送的耗时不会使实际频率低于设定值，实际周期的抖动记录在JitterStats中。
+ * timing=recorded时按数据文件中记录的时间戳间隔（除以speed）发送，间隔由RecordTimeline预先算好。
+ * playback=follow时跟随不断追加的文件，新行一写入就发送，不按采样间隔；等待新行会阻塞，因此总是使用独立线程。
+ * stop()立即生效：取消调度或中断独立线程并等待其结束，之后可以再次start()。
+ * 串口发送缓冲区满且overflow=block时不在锁中等待：记录保留在buffer中，独立线程在锁外等缓冲区有空间，
+ * 调度模式下稍后重新调度，不占用共享调度器的线程。
+ * hold()和resume()暂停和继续发送而不关闭数据源，用于在发送过程中更改波特率，继续时从下一条记录接着发送。
+ * setCheckpoint()之后每条记录发出时记下下一条记录的位置（只写一个volatile字段，不做I/O），getCheckpoint()供后台线程保存；
+ * 重新启动（包括renew()得到的新模块）时数据文件没有变化就直接定位到记下的位置继续发送。
+ * setFanOut()之后每条记录只读取一次，由PortFanOut同时发送到多个串口。
+ * 读取数据源和交给发送线程都在ReentrantLock中进行而不用synchronized，虚拟线程在锁中阻塞时不占住载体线程。
+ *
+ * @author lenovo
+ */
+public class Simulation_Task implements Runnable
+{
+    private static final long        STOP_TIMEOUT = 2000;  // stop()等待独立线程结束的最长时间(ms)
+    private static final long        MIN_PERIOD   = 100000;// 加速回放时的最短发送周期(ns)
+    private static final long        RETRY_PERIOD = 10000000;// 发送缓冲区满（overflow=block）时调度模式重试的间隔(ns)
+
+    private String                   sensorName;    // 模拟器名称
+    private SerialPort               port;          // 串口号
+    private volatile boolean         running = false;// 判断是否要停止发送
+    private volatile boolean         held;          // 是否暂停发送（保留数据源和回放位置）
+    private SensorConfig             config;        // 传感器配置（数据文件，文件种类，回放方式）
+    private volatile long            interval;
+    private ScheduledExecutorService scheduler;     // 共享调度器，为null时使用独立线程
+    private ThreadFactory            threads;       // 独立线程的创建方式，为null时新建平台线程
+    private volatile Thread          thread;        // 正在运行的独立线程
+    private volatile Thread          exiting;       // stop()等待超时后仍未结束的独立线程
+    private ScheduledFuture<?>       future;        // 调度器上的发送任务
+    private RecordSource             source;        // 数据源
+    private final RecordBuffer       buffer  = new RecordBuffer(256);// 记录缓冲区，每条记录重复使用
+    private final ReentrantLock      lock    = new ReentrantLock();// 发送，暂停和停止互斥
+    private final FixedRateClock     clock;         // 发送时钟
+    private final JitterStats        jitter;        // 发送周期抖动统计
+    private final SendStats          sendStats;     // 发送统计
+    private PortWriter               writer;        // 串口的发送线程
+    private volatile boolean         wireLimited;   // 按线路速率发送时，一条记录的发送时间是否超过采样间隔
+    private double                   timeScale;     // 时间加速倍数，回放时大于1
+    private volatile SessionLog.Sink capture;       // 会话记录，为null时不记录
+    private RecordTimeline           timeline;      // 按时间戳发送时的记录间隔，按采样间隔发送时为null
+    private int                      position;      // 按时间戳发送时下一条记录的序号
+    private boolean                  checkpointing; // 是否记录回放位置
+    private PlaybackCheckpoint       resume;        // 启动时要定位到的回放位置，为null时从头开始
+    private volatile PlaybackCheckpoint origin;     // 打开的数据文件的标识，尚未打开时为null
+    private volatile long            sourcePosition = -1;// 下一条记录在数据源中的位置，不支持定位时为-1
+    private PortFanOut               fanOut;        // 同时发送到多个串口，为null时只发送到port
+    private boolean                  unsent;        // buffer中已读出的记录还没有发出（hold()或发送缓冲区满）
+
+    /**
+     * Constructor 用于初始化Simulation_Task
+     *
+     * @param port
+     *            串口
+     * @param config
+     *            传感器配置
+     * @param interval
+     *            采样间隔
+     * @param scheduler
+     *            共享调度器，为null时start()使用独立线程
+     */
+    public Simulation_Task(SerialPort port, SensorConfig config, long interval, ScheduledExecutorService scheduler)
+    {
+        this(port, config, interval, scheduler, null, new JitterStats(), new SendStats(), 1, null, null);
+    }
+
+
+    /**
+     * Constructor 每次start()时用threads创建一个独立线程发送数据
+     *
+     * @param port
+     *            串口
+     * @param config
+     *            传感器配置
+     * @param interval
+     *            采样间隔
+     * @param threads
+     *            线程工厂，例如虚拟线程工厂；为null时新建平台线程
+     */
+    public Simulation_Task(SerialPort port, SensorConfig config, long interval, ThreadFactory threads)
+    {
+        this(port, config, interval, null, threads, new JitterStats(), new SendStats(), 1, null, null);
+    }
+
+
+    private Simulation_Task(SerialPort port, SensorConfig config, long interval, ScheduledExecutorService scheduler,
+        ThreadFactory threads, JitterStats jitter, SendStats sendStats, double timeScale, SessionLog.Sink capture,
+        RecordTimeline timeline)
+    {
+        this.sensorName = config.getSensorName();
+        this.port = port;
+        this.config = config;
+        this.interval = interval;
+        this.scheduler = scheduler;
+        this.threads = threads;
+        this.jitter = jitter;
+        this.sendStats = sendStats;
+        this.timeScale = timeScale;
+        this.capture = capture;
+        this.timeline = timeline;
+        this.clock = new FixedRateClock(periodNanos(interval), config.getLatePolicy(), jitter);
+    }
+
+
+    /**
+     * 创建一个参数相同的新发送模块（用于重新启动），沿用串口，调度器或线程工厂，抖动统计，发送统计，
+     * 时间加速倍数，会话记录，记录间隔和扇出的串口；记录回放位置时从当前位置继续
+     *
+     * @param interval
+     *            采样间隔
+     * @return 新的发送模块，尚未启动
+     */
+    public Simulation_Task renew(long interval)
+    {
+        Simulation_Task task = new Simulation_Task(port, config, interval, scheduler, threads, jitter, sendStats,
+            timeScale, capture, timeline);
+        task.fanOut = fanOut;
+        if (checkpointing)
+        {
+            task.setCheckpoint(getCheckpoint());
+        }
+        return task;
+    }
+
+
+    /**
+     * 采样间隔按时间加速倍数换算为发送周期
+     */
+    private long periodNanos(long interval)
+    {
+        return Math.max(MIN_PERIOD, (long)(TimeUnit.MILLISECONDS.toNanos(interval) / timeScale));
+    }
+
+
+    /**
+     * 按时间戳发送时，下一条记录之后的发送周期：记录间隔除以speed和时间加速倍数（不短于MIN_PERIOD，
+     * 时间戳相同的记录为0，一起发出），回到文件开头时为采样间隔
+     */
+    private long recordedPeriod()
+    {
+        long gap = timeline.gapAfter(position);
+        if (gap < 0)
+        {
+            return periodNanos(interval);
+        }
+        return gap == 0 ? 0 : Math.max(MIN_PERIOD, (long)(gap / (config.getSpeed() * timeScale)));
+    }
+
+
+    /**
+     * Override run method，独立线程模式下发送数据，直到stop()或数据源出错
+     */
+    @Override
+    public void run()
+    {
+        try
+        {
+            if (config.isFollow())
+            {
+                while (running)
+                {
+                    if (held)
+                    {
+                        pause();
+                        continue;
+                    }
+                    // 阻塞在数据源中等待新行，不持有锁
+                    if (!unsent && !readRecord())
+                    {
+                        break;
+                    }
+                    boolean blocked;
+                    lock.lock();
+                    try
+                    {
+                        // 读取期间开始了hold()时保留这条记录，resume()之后再发出
+                        blocked = running && !held && !deliverRecord();
+                    }
+                    finally
+                    {
+                        lock.unlock();
+                    }
+                    if (blocked)
+                    {
+                        awaitWriter();
+                    }
+                }
+                return;
+            }
+            clock.start(System.nanoTime());
+            while (running && emit())
+            {
+                if (unsent)
+                {
+                    awaitWriter();
+                }
+                pause();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // stop()中断了等待，正常结束
+        }
+        finally
+        {
+            lock.lock();
+            try
+            {
+                running = false;
+                closeFile();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * 在锁外等待串口的发送缓冲区放得下保留的记录
+     *
+     * @throws InterruptedException
+     *             stop()中断了等待
+     */
+    private void awaitWriter() throws InterruptedException
+    {
+        PortWriter portWriter = writer;
+        if (portWriter != null)
+        {
+            portWriter.awaitSpace(buffer.length());
+        }
+    }
+
+
+    /**
+     * 等待到下一次发送的截止时间，暂停期间一直等待。setInterval和resume会唤醒等待以便按新的间隔计算，stop会中断等待
+     *
+     * @throws InterruptedException
+     *             线程被中断
+     */
+    private void pause() throws InterruptedException
+    {
+        while (running)
+        {
+            long delay = held ? TimeUnit.MILLISECONDS.toNanos(STOP_TIMEOUT) : delayNanos();
+            if (delay <= 0)
+            {
+                return;
+            }
+            LockSupport.parkNanos(this, delay);
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+
+    /**
+     * 启动数据发送模块。有共享调度器时按采样间隔调度，否则（或跟随文件时）创建独立线程运行；已在运行时不做任何事。
+     * 上次stop()时没有结束的独立线程先等待其结束，仍未结束时不启动：旧线程结束时会关闭数据源
+     */
+    public void start()
+    {
+        Thread previous = exiting;
+        if (previous != null)
+        {
+            // 在锁外等待，旧线程结束前还要取锁关闭数据源
+            join(previous);
+        }
+        lock.lock();
+        try
+        {
+            if (running)
+            {
+                return;
+            }
+            if (previous != null)
+            {
+                if (previous.isAlive())
+                {
+                    System.err.println(sensorName + ": previous sending thread has not stopped, not restarting");
+                    return;
+                }
+                exiting = null;
+            }
+            if (!openFile())
+            {
+                return;
+            }
+            running = true;
+            held = false;
+            if (scheduler == null || config.isFollow())
+            {
+                thread = threads == null ? new Thread(this, sensorName) : threads.newThread(this);
+                thread.start();
+                return;
+            }
+            clock.start(System.nanoTime());
+            future = scheduler.schedule(this::tick, 0, TimeUnit.NANOSECONDS);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 调度器每个周期调用一次，发送记录后按下一次的截止时间重新调度
+     */
+    private void tick()
+    {
+        lock.lock();
+        try
+        {
+            if (!running || held)
+            {
+                // 暂停时不再调度，resume()重新调度
+                return;
+            }
+            if (!emit())
+            {
+                stop();
+                return;
+            }
+            long delay = clock.delayNanos(System.nanoTime());
+            if (unsent)
+            {
+                // 发送缓冲区满，不等待，稍后再试
+                delay = Math.max(delay, RETRY_PERIOD);
+            }
+            future = scheduler.schedule(this::tick, delay, TimeUnit.NANOSECONDS);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 推进发送时钟并发送本周期的记录（BURST落后时可能多于一条）
+     *
+     * @return 文件为空或读取出错时返回false
+     */
+    private boolean emit()
+    {
+        lock.lock();
+        try
+        {
+            if (held)
+            {
+                return true;
+            }
+            long now = System.nanoTime();
+            int count = timeline == null ? clock.onTick(now) : clock.onTick(now, recordedPeriod());
+            for (int i = 0; i < count; i++)
+            {
+                if (!sendRecord())
+                {
+                    return false;
+                }
+                if (unsent)
+                {
+                    // 发送缓冲区满，保留这条记录
+                    break;
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    private long delayNanos()
+    {
+        lock.lock();
+        try
+        {
+            return clock.delayNanos(System.nanoTime());
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 根据文件的种类打开相应的数据源
+     *
+     * @return 打开成功返回true
+     */
+    private boolean openFile()
+    {
+        writer = SerialPortManager.getWriter(port);
+        source = RecordSources.create(config, threads);
+        if (source == null)
+        {
+            return false;
+        }
+        try
+        {
+            if (config.isRecordedTiming() && timeline == null)
+            {
+                timeline = RecordTimeline.load(config);
+                System.out.println(sensorName + " recorded timing: " + timeline.size() + " records over "
+                    + TimeUnit.NANOSECONDS.toMillis(timeline.getSpan()) + " ms, " + timeline.getUnparsed()
+                    + " without timestamp, speed " + config.getSpeed() + "x");
+            }
+            position = 0;
+            PlaybackCheckpoint opened = PlaybackCheckpoint.of(config.getFileName(), RecordSources.kindOf(config),
+                interval);
+            source.open();
+            sourcePosition = source.position();
+            if (resume != null && sourcePosition >= 0)
+            {
+                seek(resume);
+            }
+            origin = opened;
+            return true;
+        }
+        catch (FileNotFoundException | NoSuchFileException e)
+        {
+            System.err.println("No such file");
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        source = null;
+        return false;
+    }
+
+
+    /**
+     * 定位到记下的回放位置，数据文件已经变化或数据源种类（playback，binaryFraming）不同时从头开始
+     */
+    private void seek(PlaybackCheckpoint checkpoint) throws IOException
+    {
+        if (!checkpoint.matches(config.getFileName(), RecordSources.kindOf(config), config.isFollow())
+            || !source.seek(checkpoint.getPosition()))
+        {
+            System.out.println(sensorName + ": " + config.getFileName()
+                + " or its playback changed since the checkpoint, starting over");
+            return;
+        }
+        if (timeline != null && checkpoint.getRecord() < timeline.size())
+        {
+            position = checkpoint.getRecord();
+        }
+        sourcePosition = checkpoint.getPosition();
+        System.out.println(sensorName + " resumed " + config.getFileName() + " at " + sourcePosition);
+    }
+
+
+    /**
+     * 关闭数据源
+     */
+    private void closeFile()
+    {
+        if (source != null)
+        {
+            source.close();
+            source = null;
+        }
+    }
+
+
+    /**
+     * 发送下一条记录（保留的记录，或者从数据源读取一条），数据源读至底时会自动回到文件初始位置
+     *
+     * @return 文件为空或读取出错时返回false
+     */
+    private boolean sendRecord()
+    {
+        if (!unsent && !readRecord())
+        {
+            return false;
+        }
+        deliverRecord();
+        return true;
+    }
+
+
+    /**
+     * 从数据源读取一条记录到buffer，跟随文件时会阻塞等待新行
+     *
+     * @return 文件为空或读取出错时返回false
+     */
+    private boolean readRecord()
+    {
+        try
+        {
+            buffer.clear();
+            if (!source.next(buffer))
+            {
+                return false;
+            }
+            unsent = true;
+            return true;
+        }
+        catch (InterruptedIOException | ClosedByInterruptException e)
+        {
+            // stop()中断了跟随文件的等待
+            return false;
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+
+    /**
+     * 把buffer中的记录发送至串口，并记下回放位置
+     *
+     * @return 发送缓冲区满（overflow=block）时返回false，记录保留在buffer中
+     */
+    private boolean deliverRecord()
+    {
+        long start = System.nanoTime();
+        if (fanOut == null)
+        {
+            if (!SerialPortManager.sendRecord(port, buffer.array(), 0, buffer.length()))
+            {
+                return false;
+            }
+        }
+        else
+        {
+            fanOut.send(buffer.array(), 0, buffer.length());
+        }
+        unsent = false;
+        sendStats.record(buffer.length(), System.nanoTime() - start);
+        SessionLog.Sink log = capture;
+        if (log != null)
+        {
+            log.append(SessionLog.RECORD, buffer.array(), 0, buffer.length());
+        }
+        if (timeline != null)
+        {
+            position = position + 1 == timeline.size() ? 0 : position + 1;
+        }
+        sourcePosition = source.position();
+        checkWireTime(buffer.length());
+        return true;
+    }
+
+    /**
+     * 按线路速率发送时，检查当前波特率下一条记录的发送时间能否满足采样间隔，不能满足时提示一次
+     *
+     * @param length
+     *            记录长度
+     */
+    private void checkWireTime(int length)
+    {
+        LinePacer pacer = writer == null ? null : writer.getPacer();
+        if (pacer == null)
+        {
+            return;
+        }
+        long wire = pacer.wireNanos(length);
+        boolean limited = wire > clock.getPeriodNanos();
+        if (limited && !wireLimited)
+        {
+            System.err.println(sensorName + ": a " + length + " byte record needs " + wire / 1000000 + " ms at "
+                + pacer.getLineFormat() + ", interval " + interval + " ms cannot be met");
+        }
+        wireLimited = limited;
+    }
+
+    /**
+             * 设置采样间隔，调度模式下立即按新的间隔重新调度
+     * @param interval 采样间隔
+     */
+    public void setInterval(long interval)
+    {
+        lock.lock();
+        try
+        {
+            System.out.println("Interval before(ms): "+this.interval);
+            this.interval=interval;
+            System.out.println("Interval after(ms): "+this.interval);
+            if (timeline != null)
+            {
+                // 按时间戳发送时采样间隔只用于回到文件开头
+                return;
+            }
+            long now = System.nanoTime();
+            clock.setPeriod(periodNanos(interval), now);
+            if (future != null)
+            {
+                future.cancel(false);
+                future = scheduler.schedule(this::tick, clock.delayNanos(now), TimeUnit.NANOSECONDS);
+            }
+            if (thread != null)
+            {
+                LockSupport.unpark(thread);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    /**
+     * 暂停发送，返回时正在发送的记录已经交给串口的发送线程，之后不会再有记录发出；数据源和回放位置保持不变。
+     * 跟随文件时正在等待的新行在hold()之后才读到的，保留到resume()之后发出
+     */
+    public void hold()
+    {
+        held = true;
+        // 等待正在进行的emit()结束
+        lock.lock();
+        lock.unlock();
+    }
+
+
+    /**
+     * 继续发送，立即发送下一条记录，之后按原来的间隔继续
+     */
+    public void resume()
+    {
+        lock.lock();
+        try
+        {
+            if (!held)
+            {
+                return;
+            }
+            held = false;
+            clock.start(System.nanoTime());
+            if (future != null)
+            {
+                future.cancel(false);
+                future = scheduler.schedule(this::tick, 0, TimeUnit.NANOSECONDS);
+            }
+            if (thread != null)
+            {
+                LockSupport.unpark(thread);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    /**
+     * 设置时间加速倍数：实际发送周期为采样间隔除以该倍数（不短于0.1ms），用于加速回放会话记录
+     * @param timeScale 加速倍数，1为实时，Double.POSITIVE_INFINITY为尽快
+     */
+    public void setTimeScale(double timeScale)
+    {
+        lock.lock();
+        try
+        {
+            this.timeScale = timeScale;
+            if (timeline != null)
+            {
+                // 从下一条记录开始生效
+                return;
+            }
+            clock.setPeriod(periodNanos(interval), System.nanoTime());
+            if (thread != null)
+            {
+                LockSupport.unpark(thread);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+    /**
+     * 开始记录回放位置，start()时定位到resume继续发送；只能在start()之前调用
+     * @param resume 上次记下的回放位置，为null时从头开始
+     */
+    public void setCheckpoint(PlaybackCheckpoint resume)
+    {
+        this.checkpointing = true;
+        this.resume = resume;
+    }
+    /**
+     * 获取当前的回放位置，可以在任何线程中调用
+     * @return 回放位置，没有调用setCheckpoint()时为null；尚未打开数据源时为上次记下的位置
+     */
+    public PlaybackCheckpoint getCheckpoint()
+    {
+        if (!checkpointing)
+        {
+            return null;
+        }
+        PlaybackCheckpoint opened = origin;
+        if (opened == null)
+        {
+            return resume == null ? null : resume.at(resume.getPosition(), resume.getRecord(), interval);
+        }
+        return opened.at(sourcePosition, position, interval);
+    }
+    /**
+     * 把每条记录同时发送到多个串口；只能在start()之前调用
+     * @param fanOut 输出串口，第一个应为port
+     */
+    public void setFanOut(PortFanOut fanOut)
+    {
+        this.fanOut = fanOut;
+    }
+    /**
+     * 设置会话记录，之后发出的每条数据记录都会被记录
+     * @param capture 会话记录，为null时不记录
+     */
+    public void setCapture(SessionLog.Sink capture)
+    {
+        this.capture = capture;
+    }
+    /**
+     * 获取采样间隔
+     * @return 采样间隔
+     */
+    public long getInterval() {
+       return this.interval;
+    }
+    /**
+     * 获取传感器配置
+     * @return 传感器配置
+     */
+    public SensorConfig getConfig()
+    {
+        return this.config;
+    }
+    /**
+     * 获取发送周期抖动统计
+     * @return 抖动统计
+     */
+    public JitterStats getJitterStats()
+    {
+        return this.jitter;
+    }
+    /**
+     * 获取发送统计
+     * @return 发送统计
+     */
+    public SendStats getSendStats()
+    {
+        return this.sendStats;
+    }
+    /**
+     * 按线路速率发送时，当前波特率是否满足不了采样间隔
+     * @return 满足不了时为true
+     */
+    public boolean isWireLimited()
+    {
+        return this.wireLimited;
+    }
+    /**
+     * 获取共享调度器
+     * @return 共享调度器，独立线程模式下为null
+     */
+    public ScheduledExecutorService getScheduler()
+    {
+        return this.scheduler;
+    }
+    /**
+             * 获取运行状态
+     * @return 运行状态
+     */
+    public boolean getRunningState()
+    {
+        return this.running;
+    }
+    /**
+             * 设置运行状态
+     * @param run 设置运行状态
+     */
+    public void setRunningState(boolean run)
+    {
+        this.running=run;
+    }
+
+
+    /**
+     * 获取模拟传感器名称
+     *
+     * @return 模拟传感器的名称
+     */
+    public String getsensorName()
+    {
+        return this.sensorName;
+    }
+
+
+    /**
+     * 等待独立线程结束，最多等待STOP_TIMEOUT
+     *
+     * @return 线程已经结束时返回true
+     */
+    private boolean join(Thread sender)
+    {
+        try
+        {
+            sender.join(STOP_TIMEOUT);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return !sender.isAlive();
+    }
+
+
+    /**
+     * 停止该模块，返回时不会再有数据发出：调度模式下取消调度并关闭文件；独立线程模式下中断线程并等待其结束，
+     * 由线程关闭文件。由发送线程自己调用时不等待
+     */
+    public void stop()
+    {
+        boolean wasRunning = running;
+        running = false;
+        // 先中断再取锁：发送线程可能正持有锁阻塞在数据源中
+        Thread sender = thread;
+        if (sender != null && sender != Thread.currentThread())
+        {
+            sender.interrupt();
+        }
+        lock.lock();
+        try
+        {
+            if (future != null)
+            {
+                future.cancel(false);
+                future = null;
+                closeFile();
+            }
+            thread = null;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        // 在锁外等待，发送线程结束前还要进入emit()和closeFile()
+        if (sender != null && sender != Thread.currentThread() && !join(sender))
+        {
+            // 记下还没有结束的线程，start()在它结束之前不会打开新的数据源
+            exiting = sender;
+            System.err.println(sensorName + ": sending thread did not stop in " + STOP_TIMEOUT + " ms");
+        }
+        if (wasRunning && !config.isFollow())
+        {
+            System.out.println(sensorName + " period jitter: " + jitter);
+        }
+        if (wasRunning && fanOut != null)
+        {
+            System.out.println(sensorName + " fan-out: " + fanOut);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package utils;
+
+/**
+ * CommandFramer 把串口收到的字节流按 CR LF 分割成命令帧。未完成的命令保存在固定大小的环形缓冲区里，
+ * CR 和 LF 分在两次读取中也能正确识别；只有 CR LF 结束一条命令，单独的 CR 或 LF 属于命令内容。
+ * 分帧过程不为每个字节创建对象，完整的命令帧复制到一个重复使用的数组中交给FrameListener。
+ * 同一个CommandFramer只能由一个线程（串口的事件线程）调用。
+ *
+ * @author Yibing Zhang
+ */
+public class CommandFramer
+{
+    private static final byte   CR = 13;      // carriage return（回车）
+    private static final byte   LF = 10;      // line feed（换行）
+
+    private final byte[]        ring;         // 环形缓冲区，保存未完成的命令
+    private final int           mask;         // 环形缓冲区下标掩码
+    private final byte[]        frame;        // 完整命令帧，重复使用
+    private final FrameListener listener;     // 命令帧的接收者
+    private int                 start;        // 当前命令在环形缓冲区中的起始位置
+    private int                 length;       // 当前命令已收到的长度
+    private boolean             pendingCR;    // 上一个字节是否为CR
+    private boolean             overflow;     // 当前命令是否超长，超长的命令被整条丢弃
+
+
+    /**
+     * 命令帧的接收者
+     */
+    public interface FrameListener
+    {
+        /**
+         * 收到一条完整命令（不含CR LF），frame在返回后会被重复使用
+         *
+         * @param frame
+         *            命令数据
+         * @param offset
+         *            起始位置
+         * @param length
+         *            长度
+         */
+        void frameReceived(byte[] frame, int offset, int length);
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @param capacity
+     *            单条命令的最大长度，向上取为2的幂
+     * @param listener
+     *            命令帧的接收者
+     */
+    public CommandFramer(int capacity, FrameListener listener)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.ring = new byte[size];
+        this.mask = size - 1;
+        this.frame = new byte[size];
+        this.listener = listener;
+    }
+
+
+    /**
+     * 处理一次读取到的数据
+     *
+     * @param data
+     *            数据
+     * @param offset
+     *            起始位置
+     * @param len
+     *            长度
+     */
+    public void feed(byte[] data, int offset, int len)
+    {
+        int end = offset + len;
+        for (int i = offset; i < end; i++)
+        {
+            byte b = data[i];
+            if (pendingCR)
+            {
+                pendingCR = false;
+                if (b == LF)
+                {
+                    emit();
+                    continue;
+                }
+                // 单独的CR属于命令内容
+                append(CR);
+            }
+            if (b == CR)
+            {
+                pendingCR = true;
+            }
+            else
+            {
+                append(b);
+            }
+        }
+    }
+
+
+    /**
+     * 丢弃未完成的命令
+     */
+    public void reset()
+    {
+        start = 0;
+        length = 0;
+        pendingCR = false;
+        overflow = false;
+    }
+
+
+    private void append(byte b)
+    {
+        if (length == ring.length)
+        {
+            if (!overflow)
+            {
+                System.err.println("Command longer than " + ring.length + " bytes, discarded");
+            }
+            overflow = true;
+            return;
+        }
+        ring[(start + length) & mask] = b;
+        length++;
+    }
+
+
+    private void emit()
+    {
+        if (!overflow)
+        {
+            // 命令在环形缓冲区中可能跨过末尾，分两段复制
+            int first = Math.min(length, ring.length - start);
+            System.arraycopy(ring, start, frame, 0, first);
+            System.arraycopy(ring, 0, frame, first, length - first);
+            listener.frameReceived(frame, 0, length);
+        }
+        start = (start + length) & mask;
+        length = 0;
+        overflow = false;
+    }
+}
@@ -0,0 +1,266 @@
+package utils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * CommandTable 一个模拟传感器的命令表。除了内置的on，off，br，setInterval外，可以从命令配置文件加载
+ * 仪器的命令集：每行一条 命令=回复，回复在加载时编码成字节，收到命令时直接发送；
+ * 回复以@开头时表示内置命令的别名，如 start=@on。回复中的${name}替换为传感器名称。
+ * 配置文件按ISO-8859-1读取，回复按ISO-8859-1编码，用properties的unicode转义可以表示0至255的任意一个字节。
+ * <p>
+ * 查找使用开放寻址的哈希表，按命令的字符直接计算哈希值并比较，不分割字符串，不创建对象。
+ * 固定回复的命令匹配整行命令；带参数的内置命令（br，setInterval）匹配第一个空格之前的命令名
+ *
+ * @author Yibing Zhang
+ */
+public final class CommandTable
+{
+    /**
+     * 命令的处理方式
+     */
+    public enum Action
+    {
+        REPLY, ON, OFF, BAUD_RATE, INTERVAL;
+
+        /**
+         * 是否需要参数
+         */
+        boolean hasArgument()
+        {
+            return this == BAUD_RATE || this == INTERVAL;
+        }
+    }
+
+    private final Command[] slots;// 哈希表
+    private final int       mask; // 哈希表大小-1
+    private final int       size; // 命令数
+
+
+    private CommandTable(List<Command> commands)
+    {
+        int capacity = 16;
+        while (capacity < commands.size() * 2)
+        {
+            capacity <<= 1;
+        }
+        this.slots = new Command[capacity];
+        this.mask = capacity - 1;
+        this.size = commands.size();
+        for (Command command : commands)
+        {
+            int i = spread(command.keyword.hashCode()) & mask;
+            while (slots[i] != null)
+            {
+                i = (i + 1) & mask;
+            }
+            slots[i] = command;
+        }
+    }
+
+
+    /**
+     * 只有内置命令的命令表
+     *
+     * @return 命令表
+     */
+    public static CommandTable defaults()
+    {
+        return new CommandTable(new ArrayList<Command>(builtins().values()));
+    }
+
+
+    /**
+     * 读取命令配置文件，内置命令仍然有效，配置文件中同名的命令覆盖内置命令
+     *
+     * @param fileName
+     *            命令配置文件
+     * @param sensorName
+     *            传感器名称，替换回复中的${name}
+     * @return 命令表
+     * @throws IOException
+     *             读取文件出错
+     * @throws IllegalArgumentException
+     *             别名指向不存在的内置命令
+     */
+    public static CommandTable load(String fileName, String sensorName) throws IOException
+    {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(fileName))
+        {
+            props.load(in);
+        }
+        Map<String, Command> commands = builtins();
+        for (String keyword : props.stringPropertyNames())
+        {
+            String value = props.getProperty(keyword);
+            if (value.startsWith("@") && !value.startsWith("@@"))
+            {
+                Action action = parseAction(value.substring(1).trim());
+                if (action == null)
+                {
+                    throw new IllegalArgumentException(fileName + ": unknown built-in command " + value);
+                }
+                commands.put(keyword, new Command(keyword, action, null));
+            }
+            else
+            {
+                // @@开头表示回复本身以@开头
+                String reply = (value.startsWith("@@") ? value.substring(1) : value).replace("${name}", sensorName);
+                commands.put(keyword, new Command(keyword, Action.REPLY, reply.getBytes(StandardCharsets.ISO_8859_1)));
+            }
+        }
+        return new CommandTable(new ArrayList<Command>(commands.values()));
+    }
+
+
+    private static Map<String, Command> builtins()
+    {
+        Map<String, Command> commands = new LinkedHashMap<String, Command>();
+        commands.put("on", new Command("on", Action.ON, null));
+        commands.put("off", new Command("off", Action.OFF, null));
+        commands.put("br", new Command("br", Action.BAUD_RATE, null));
+        commands.put("setInterval", new Command("setInterval", Action.INTERVAL, null));
+        return commands;
+    }
+
+
+    private static Action parseAction(String name)
+    {
+        switch (name)
+        {
+            case "on":
+                return Action.ON;
+            case "off":
+                return Action.OFF;
+            case "br":
+                return Action.BAUD_RATE;
+            case "setInterval":
+                return Action.INTERVAL;
+            default:
+                return null;
+        }
+    }
+
+
+    /**
+     * 查找命令：先按整行查找，找不到且带有参数时按第一个空格之前的命令名查找需要参数的内置命令
+     *
+     * @param cmd
+     *            收到的命令
+     * @return 找不到时返回null
+     */
+    public Command lookup(String cmd)
+    {
+        int length = cmd.length();
+        int space = -1;
+        int keywordHash = 0;
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+        {
+            char c = cmd.charAt(i);
+            if (c == ' ' && space < 0)
+            {
+                space = i;
+                keywordHash = hash;
+            }
+            hash = 31 * hash + c;
+        }
+        Command command = find(cmd, length, hash);
+        if (command != null && !command.action.hasArgument())
+        {
+            return command;
+        }
+        if (space >= 0)
+        {
+            command = find(cmd, space, keywordHash);
+            if (command != null && command.action.hasArgument())
+            {
+                return command;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * 在哈希表中查找cmd的前length个字符
+     */
+    private Command find(String cmd, int length, int hash)
+    {
+        for (int i = spread(hash) & mask;; i = (i + 1) & mask)
+        {
+            Command command = slots[i];
+            if (command == null)
+            {
+                return null;
+            }
+            if (command.keyword.length() == length && command.keyword.regionMatches(0, cmd, 0, length))
+            {
+                return command;
+            }
+        }
+    }
+
+
+    private static int spread(int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+
+    /**
+     * 获取命令数
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * 一条命令：命令名，处理方式，预先编码的回复
+     */
+    public static final class Command
+    {
+        private final String keyword;// 命令名
+        private final Action action; // 处理方式
+        private final byte[] reply;  // 固定回复
+
+
+        private Command(String keyword, Action action, byte[] reply)
+        {
+            this.keyword = keyword;
+            this.action = action;
+            this.reply = reply;
+        }
+
+
+        public String getKeyword()
+        {
+            return keyword;
+        }
+
+
+        public Action getAction()
+        {
+            return action;
+        }
+
+
+        /**
+         * 获取预先编码的回复，内置命令为null；返回的数组不能修改
+         */
+        byte[] getReply()
+        {
+            return reply;
+        }
+    }
+}
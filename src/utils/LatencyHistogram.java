@@ -0,0 +1,154 @@
+package utils;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram 无锁的时间分布统计。按2的幂分段，每段再分8格，相对误差不超过12.5%；
+ * 每格是一个LongAdder（分段计数），多个线程同时记录时不争用同一个变量。
+ * 读取时不加锁，各项数值之间可能相差正在进行的几次记录
+ *
+ * @author Yibing Zhang
+ */
+public final class LatencyHistogram
+{
+    private static final int      SUB_BITS  = 3;                                // 每段分格数的位数
+    private static final int      SUB_COUNT = 1 << SUB_BITS;                    // 每段分格数
+    private static final int      MAX_EXP   = 40;                               // 最大记录值约为2^41 ns（约36分钟）
+    private static final int      BUCKETS   = (MAX_EXP - SUB_BITS + 2) * SUB_COUNT;// 格数
+
+    private final LongAdder[]     buckets   = new LongAdder[BUCKETS];           // 各格的记录次数
+    private final LongAdder       count     = new LongAdder();                  // 记录次数
+    private final LongAdder       sum       = new LongAdder();                  // 记录值之和(ns)
+    private final LongAccumulator max       = new LongAccumulator(Math::max, 0);// 最大记录值(ns)
+
+
+    public LatencyHistogram()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+
+    /**
+     * 记录一次时间
+     *
+     * @param nanos
+     *            时间(ns)，负数按0记录
+     */
+    public void record(long nanos)
+    {
+        long value = Math.max(0, nanos);
+        buckets[indexOf(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+
+    private static int indexOf(long value)
+    {
+        if (value < SUB_COUNT)
+        {
+            return (int)value;
+        }
+        int exp = Math.min(MAX_EXP, 63 - Long.numberOfLeadingZeros(value));
+        int sub = exp == MAX_EXP && value >>> MAX_EXP > 1 ? SUB_COUNT - 1
+            : (int)(value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+
+    /**
+     * 格的上限（含）
+     */
+    private static long upperBoundOf(int index)
+    {
+        if (index < SUB_COUNT)
+        {
+            return index;
+        }
+        int exp = index / SUB_COUNT + SUB_BITS - 1;
+        int sub = index % SUB_COUNT;
+        long width = 1L << (exp - SUB_BITS);
+        return ((long)(SUB_COUNT + sub) << (exp - SUB_BITS)) + width - 1;
+    }
+
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+
+    public long getMeanNanos()
+    {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+
+    public long getMaxNanos()
+    {
+        return max.get();
+    }
+
+
+    /**
+     * 获取百分位数
+     *
+     * @param percentile
+     *            百分位，如99
+     * @return 该百分位所在格的上限(ns)，不超过最大记录值；没有记录时为0
+     */
+    public long getPercentileNanos(double percentile)
+    {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long rank = (long)Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0)
+            {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+
+    /**
+     * 清空统计
+     */
+    public void reset()
+    {
+        for (LongAdder bucket : buckets)
+        {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "n=" + getCount() + " mean=" + getMeanNanos() / 1000 + "us p50=" + getPercentileNanos(50) / 1000
+            + "us p99=" + getPercentileNanos(99) / 1000 + "us max=" + getMaxNanos() / 1000 + "us";
+    }
+}
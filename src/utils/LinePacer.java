@@ -0,0 +1,151 @@
+package utils;
+
+import java.util.concurrent.TimeUnit;
+import gnu.io.SerialPort;
+
+/**
+ * LinePacer 按串口的真实字符速率限制发送速度（令牌桶）。每个字符在线路上占用
+ * 1个起始位 + 数据位 + 校验位 + 停止位，字符速率 = 波特率 / 每字符位数。
+ * 桶的容量相当于UART的发送FIFO（至少16个字符，或10ms的字符数），超出部分要等线路把之前的字符发完。
+ * 只由PortWriter的发送线程调用acquire
+ *
+ * @author Yibing Zhang
+ */
+public class LinePacer
+{
+    private static final int    FIFO_CHARS  = 16;       // UART发送FIFO大小
+    private static final long   FIFO_WINDOW = 10000000L;// 桶容量对应的最短时间(ns)
+
+    private volatile double     charNanos;              // 每个字符在线路上的时间(ns)
+    private volatile int        chunkSize;              // 每次写出的最大字节数（桶容量）
+    private volatile String     lineFormat;             // 线路参数说明，如9600 8N1
+    private long                lineFree;               // 已写出的字符在线路上发送完的时间
+
+
+    /**
+     * Constructor 读取串口当前的波特率和帧格式
+     *
+     * @param port
+     *            串口
+     */
+    public LinePacer(SerialPort port)
+    {
+        configure(port);
+        lineFree = System.nanoTime();
+    }
+
+
+    /**
+     * 计算每个字符占用的位数
+     *
+     * @param dataBits
+     *            SerialPort.DATABITS_5 ~ DATABITS_8
+     * @param stopBits
+     *            SerialPort.STOPBITS_1, STOPBITS_1_5, STOPBITS_2
+     * @param parity
+     *            SerialPort.PARITY_NONE 等
+     * @return 每字符位数
+     */
+    public static double bitsPerChar(int dataBits, int stopBits, int parity)
+    {
+        double stop;
+        switch (stopBits)
+        {
+            case SerialPort.STOPBITS_2:
+                stop = 2;
+                break;
+            case SerialPort.STOPBITS_1_5:
+                stop = 1.5;
+                break;
+            default:
+                stop = 1;
+                break;
+        }
+        return 1 + dataBits + (parity == SerialPort.PARITY_NONE ? 0 : 1) + stop;
+    }
+
+
+    /**
+     * 按串口当前参数重新计算字符速率，更改波特率后调用
+     *
+     * @param port
+     *            串口
+     */
+    public void configure(SerialPort port)
+    {
+        double bits = bitsPerChar(port.getDataBits(), port.getStopBits(), port.getParity());
+        double charsPerSecond = port.getBaudRate() / bits;
+        charNanos = 1e9 / charsPerSecond;
+        chunkSize = (int)Math.max(FIFO_CHARS, charsPerSecond * FIFO_WINDOW / 1e9);
+        lineFormat = port.getBaudRate() + " " + port.getDataBits() + parityChar(port.getParity())
+            + (port.getStopBits() == SerialPort.STOPBITS_1_5 ? "1.5" : port.getStopBits());
+    }
+
+
+    private static char parityChar(int parity)
+    {
+        switch (parity)
+        {
+            case SerialPort.PARITY_ODD:
+                return 'O';
+            case SerialPort.PARITY_EVEN:
+                return 'E';
+            case SerialPort.PARITY_MARK:
+                return 'M';
+            case SerialPort.PARITY_SPACE:
+                return 'S';
+            default:
+                return 'N';
+        }
+    }
+
+
+    /**
+     * 等待直到线路可以再接收chars个字符，chars不应超过getChunkSize()
+     *
+     * @param chars
+     *            字符数
+     * @throws InterruptedException
+     */
+    public void acquire(int chars) throws InterruptedException
+    {
+        long cost = (long)(chars * charNanos);
+        long burst = (long)(chunkSize * charNanos);
+        long now = System.nanoTime();
+        if (lineFree < now)
+        {
+            lineFree = now;
+        }
+        long wait = lineFree + cost - burst - now;
+        if (wait > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        lineFree += cost;
+    }
+
+
+    /**
+     * 计算length个字符在线路上需要的时间
+     *
+     * @param length
+     *            字符数
+     * @return 时间(ns)
+     */
+    public long wireNanos(int length)
+    {
+        return (long)(length * charNanos);
+    }
+
+
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+
+    public String getLineFormat()
+    {
+        return lineFormat;
+    }
+}
@@ -0,0 +1,124 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NetworkSelector 所有网络串口共用的一个NIO选择器线程。接受连接，读取数据和非阻塞写出都在这个线程中进行；
+ * 其他线程通过execute()提交的任务（注册通道，修改关注的事件）也在这个线程中执行，不需要与select()同步
+ *
+ * @author Yibing Zhang
+ */
+final class NetworkSelector
+{
+    private static NetworkSelector instance;                                     // 唯一实例，第一次使用时创建
+
+    private final Selector         selector;                                     // 选择器
+    private final Queue<Runnable>  tasks = new ConcurrentLinkedQueue<Runnable>();// 待执行的任务
+    private final Thread           thread;                                       // 选择器线程
+
+
+    /**
+     * 通道就绪时的处理者，作为SelectionKey的附件
+     */
+    interface Handler
+    {
+        /**
+         * 通道就绪，在选择器线程中调用
+         *
+         * @param key
+         *            就绪的通道
+         */
+        void ready(SelectionKey key);
+    }
+
+
+    private NetworkSelector() throws IOException
+    {
+        selector = Selector.open();
+        thread = new Thread(this::run, "network");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * 获取选择器，第一次调用时启动选择器线程
+     *
+     * @return 选择器
+     * @throws IOException
+     *             打开选择器出错
+     */
+    static synchronized NetworkSelector getInstance() throws IOException
+    {
+        if (instance == null)
+        {
+            instance = new NetworkSelector();
+        }
+        return instance;
+    }
+
+
+    Selector selector()
+    {
+        return selector;
+    }
+
+
+    /**
+     * 在选择器线程中执行任务，已在选择器线程中时立即执行
+     *
+     * @param task
+     *            任务
+     */
+    void execute(Runnable task)
+    {
+        if (Thread.currentThread() == thread)
+        {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+
+    private void run()
+    {
+        while (true)
+        {
+            try
+            {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid())
+                    {
+                        ((Handler)key.attachment()).ready(key);
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Network selector error: " + e.getMessage());
+            }
+            catch (RuntimeException e)
+            {
+                // 一个串口出错不能让其他串口停止工作
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,722 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+
+/**
+ * NetworkSerialPort 通过网络模拟的串口，没有串口硬件时也可以运行和测试模拟器。串口名称决定协议和本地端口：
+ *
+ * <pre>
+ * tcp:5001             TCP服务器，原始数据
+ * rfc2217:5002         TCP服务器，Telnet COM-PORT-OPTION（RFC 2217），客户端可以设置波特率等线路参数
+ * udp:5003             UDP，数据发往最近一次发来数据报的地址
+ * tcp:127.0.0.1:5001   只在指定地址上监听
+ * </pre>
+ *
+ * TCP同时只有一个客户端，新的连接替换旧的连接；没有客户端时发出的数据被丢弃，与没有接线的串口一样。
+ * 所有网络串口的连接，读取和非阻塞写出都在NetworkSelector的一个线程中进行；输出流把数据放入发送缓冲区，
+ * 缓冲区满时等待，与速率有限的真实串口相同。收到的数据放入接收缓冲区后通知监听器，命令处理与真实串口完全相同
+ *
+ * @author Yibing Zhang
+ */
+public class NetworkSerialPort extends VirtualSerialPort
+{
+    /**
+     * 网络串口的协议
+     */
+    public enum Protocol
+    {
+        TCP, RFC2217, UDP
+    }
+
+    private static final int       BUFFER_SIZE  = 64 * 1024;                       // 收发缓冲区大小
+    private static final int       MAX_DATAGRAM = 8192;                            // 每个UDP数据报的最大长度
+
+    private final Protocol         protocol;                                       // 协议
+    private final NetworkSelector  selector;                                       // 共用的选择器线程
+    private final Object           lock         = new Object();                    // 保护inbox和outbox
+    private final ByteBuffer       inbox        = ByteBuffer.allocate(BUFFER_SIZE);// 收到尚未读取的数据（写模式）
+    private final ByteBuffer       outbox       = ByteBuffer.allocate(BUFFER_SIZE);// 待发送的数据（写模式）
+    private final ByteBuffer       received     = ByteBuffer.allocate(BUFFER_SIZE);// 选择器线程的读取缓冲区
+    private final InputStream      input        = new Input();                     // 输入流
+    private final OutputStream     output       = new Output();                    // 输出流
+    private NetworkChannel         channel;                                        // 监听的TCP服务器或UDP通道
+    private SocketChannel          client;                                         // 当前TCP客户端，只在选择器线程中使用
+    private SelectionKey           key;                                            // 当前收发数据的通道
+    private Rfc2217Session         telnet;                                         // 当前连接的RFC 2217会话
+    private volatile SocketAddress peer;                                           // 数据发往的地址，没有时为null
+    private volatile boolean       suspended;                                      // RFC 2217客户端暂停了数据发送
+    private boolean                suspending;                                     // 收到暂停请求，回复写出后开始暂停
+    private volatile boolean       closed;                                         // 是否已关闭
+    private volatile long          dropped;                                        // 丢弃的字节数
+
+
+    private NetworkSerialPort(String name, Protocol protocol, NetworkSelector selector)
+    {
+        super(name);
+        this.protocol = protocol;
+        this.selector = selector;
+    }
+
+
+    /**
+     * 串口名称是否表示网络串口（以tcp:，rfc2217:或udp:开头）
+     *
+     * @param name
+     *            串口名称
+     * @return 是网络串口时返回true
+     */
+    public static boolean isNetworkName(String name)
+    {
+        return protocolOf(name) != null;
+    }
+
+
+    private static Protocol protocolOf(String name)
+    {
+        int colon = name.indexOf(':');
+        if (colon <= 0)
+        {
+            return null;
+        }
+        String prefix = name.substring(0, colon).toUpperCase(Locale.ROOT);
+        for (Protocol protocol : Protocol.values())
+        {
+            if (protocol.name().equals(prefix))
+            {
+                return protocol;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * 打开网络串口，在本地端口上监听
+     *
+     * @param name
+     *            串口名称，如tcp:5001；端口为0时由系统分配，见getLocalPort()
+     * @return 网络串口
+     * @throws IOException
+     *             端口被占用等
+     * @throws IllegalArgumentException
+     *             名称格式错误
+     */
+    public static NetworkSerialPort open(String name) throws IOException
+    {
+        Protocol protocol = protocolOf(name);
+        if (protocol == null)
+        {
+            throw new IllegalArgumentException("Not a network port: " + name);
+        }
+        NetworkSerialPort port = new NetworkSerialPort(name, protocol, NetworkSelector.getInstance());
+        port.bind(parseAddress(name.substring(name.indexOf(':') + 1)));
+        return port;
+    }
+
+
+    private static InetSocketAddress parseAddress(String address)
+    {
+        int colon = address.lastIndexOf(':');
+        int port;
+        try
+        {
+            port = Integer.parseInt(address.substring(colon + 1));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid network port " + address);
+        }
+        if (port < 0 || port > 65535)
+        {
+            throw new IllegalArgumentException("Invalid network port " + address);
+        }
+        return colon <= 0 ? new InetSocketAddress(port) : new InetSocketAddress(address.substring(0, colon), port);
+    }
+
+
+    /**
+     * 打开并绑定通道，由选择器线程注册
+     */
+    private void bind(InetSocketAddress address) throws IOException
+    {
+        SelectableChannel selectable;
+        int ops;
+        if (protocol == Protocol.UDP)
+        {
+            DatagramChannel datagram = DatagramChannel.open();
+            channel = datagram;
+            selectable = datagram;
+            ops = SelectionKey.OP_READ;
+        }
+        else
+        {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            channel = server;
+            selectable = server;
+            ops = SelectionKey.OP_ACCEPT;
+        }
+        try
+        {
+            selectable.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(address);
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+        selector.execute(() -> {
+            try
+            {
+                SelectionKey registered = selectable.register(selector.selector(), ops,
+                    (NetworkSelector.Handler)this::ready);
+                if (protocol == Protocol.UDP)
+                {
+                    key = registered;
+                }
+            }
+            catch (ClosedChannelException e)
+            {
+                // 注册前已关闭
+            }
+        });
+    }
+
+
+    /**
+     * 通道就绪，在选择器线程中调用
+     */
+    private void ready(SelectionKey selected)
+    {
+        if (selected.isAcceptable())
+        {
+            accept();
+            return;
+        }
+        if (selected.isReadable())
+        {
+            if (protocol == Protocol.UDP)
+            {
+                receive();
+            }
+            else
+            {
+                read();
+            }
+        }
+        if (selected.isValid() && selected.isWritable())
+        {
+            flush();
+        }
+    }
+
+
+    /**
+     * 接受TCP连接，替换之前的连接
+     */
+    private void accept()
+    {
+        SocketChannel accepted;
+        try
+        {
+            accepted = ((ServerSocketChannel)channel).accept();
+            if (accepted == null)
+            {
+                return;
+            }
+            accepted.configureBlocking(false);
+            accepted.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        catch (IOException e)
+        {
+            System.err.println(getName() + ": fail to accept connection: " + e.getMessage());
+            return;
+        }
+        if (client != null)
+        {
+            System.out.println(getName() + ": connection from " + peer + " replaced");
+            disconnect();
+        }
+        try
+        {
+            key = accepted.register(selector.selector(), SelectionKey.OP_READ, (NetworkSelector.Handler)this::ready);
+        }
+        catch (ClosedChannelException e)
+        {
+            return;
+        }
+        client = accepted;
+        suspended = false;
+        peer = accepted.socket().getRemoteSocketAddress();
+        System.out.println(getName() + ": connected from " + peer);
+        if (protocol == Protocol.RFC2217)
+        {
+            telnet = new Rfc2217Session(this);
+            synchronized (lock)
+            {
+                telnet.start(outbox);
+            }
+            flush();
+        }
+    }
+
+
+    /**
+     * 读取TCP客户端发来的数据，放入接收缓冲区后通知监听器
+     */
+    private void read()
+    {
+        received.clear();
+        int n;
+        try
+        {
+            n = client.read(received);
+        }
+        catch (IOException e)
+        {
+            n = -1;
+        }
+        if (n < 0)
+        {
+            System.out.println(getName() + ": " + peer + " disconnected");
+            disconnect();
+            return;
+        }
+        received.flip();
+        boolean data;
+        boolean reply;
+        synchronized (lock)
+        {
+            int before = inbox.position();
+            int pending = outbox.position();
+            if (telnet != null)
+            {
+                dropped += telnet.decode(received, inbox, outbox);
+            }
+            else
+            {
+                store(received);
+            }
+            data = inbox.position() > before;
+            reply = outbox.position() != pending;
+        }
+        if (reply)
+        {
+            flush();
+        }
+        if (data)
+        {
+            notifyDataAvailable();
+        }
+    }
+
+
+    /**
+     * 读取UDP数据报，发送方成为之后数据的接收方
+     */
+    private void receive()
+    {
+        boolean data = false;
+        while (true)
+        {
+            received.clear();
+            SocketAddress from;
+            try
+            {
+                from = ((DatagramChannel)channel).receive(received);
+            }
+            catch (IOException e)
+            {
+                System.err.println(getName() + ": fail to receive: " + e.getMessage());
+                break;
+            }
+            if (from == null)
+            {
+                break;
+            }
+            if (!from.equals(peer))
+            {
+                System.out.println(getName() + ": sending to " + from);
+                peer = from;
+            }
+            received.flip();
+            synchronized (lock)
+            {
+                int before = inbox.position();
+                store(received);
+                data |= inbox.position() > before;
+            }
+        }
+        if (data)
+        {
+            notifyDataAvailable();
+        }
+    }
+
+
+    /**
+     * 把收到的数据放入接收缓冲区，缓冲区满时丢弃（与串口溢出相同）。调用者持有lock
+     */
+    private void store(ByteBuffer data)
+    {
+        int n = Math.min(data.remaining(), inbox.remaining());
+        if (n < data.remaining())
+        {
+            dropped += data.remaining() - n;
+            data.limit(data.position() + n);
+        }
+        inbox.put(data);
+    }
+
+
+    /**
+     * 非阻塞地写出发送缓冲区中的数据，写不完时关注OP_WRITE，在选择器线程中调用
+     */
+    private void flush()
+    {
+        if (key == null || !key.isValid() || peer == null)
+        {
+            return;
+        }
+        boolean pending;
+        boolean failed = false;
+        synchronized (lock)
+        {
+            outbox.flip();
+            try
+            {
+                if (protocol == Protocol.UDP)
+                {
+                    while (outbox.hasRemaining())
+                    {
+                        ByteBuffer datagram = outbox.duplicate();
+                        datagram.limit(Math.min(datagram.limit(), datagram.position() + MAX_DATAGRAM));
+                        if (((DatagramChannel)channel).send(datagram, peer) == 0)
+                        {
+                            break;
+                        }
+                        outbox.position(datagram.position());
+                    }
+                }
+                else if (!suspended)
+                {
+                    client.write(outbox);
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println(getName() + ": fail to send to " + peer + ": " + e.getMessage());
+                outbox.position(outbox.limit());
+                failed = true;
+            }
+            outbox.compact();
+            if (suspending)
+            {
+                suspended = true;
+                suspending = false;
+            }
+            pending = outbox.position() > 0;
+            lock.notifyAll();
+        }
+        if (failed && client != null)
+        {
+            disconnect();
+            return;
+        }
+        key.interestOps(pending && !suspended ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+
+    /**
+     * 关闭当前TCP连接，丢弃未发送的数据，在选择器线程中调用
+     */
+    private void disconnect()
+    {
+        if (client != null)
+        {
+            key.cancel();
+            try
+            {
+                client.close();
+            }
+            catch (IOException e)
+            {
+                System.err.println(getName() + ": fail to close connection");
+            }
+        }
+        client = null;
+        key = null;
+        telnet = null;
+        peer = null;
+        suspended = false;
+        suspending = false;
+        synchronized (lock)
+        {
+            outbox.clear();
+            lock.notifyAll();
+        }
+    }
+
+
+    /**
+     * 设置线路参数，并通知串口的发送线程按新的波特率限速（由RFC 2217客户端调用）
+     */
+    void setLineParameters(int baudRate, int dataBits, int stopBits, int parity)
+    {
+        setSerialPortParams(baudRate, dataBits, stopBits, parity);
+        PortWriter writer = SerialPortManager.getWriter(this);
+        if (writer != null)
+        {
+            writer.lineParametersChanged();
+        }
+        System.out.println(getName() + ": line set to " + baudRate + " baud, " + dataBits + " data bits by client");
+    }
+
+
+    /**
+     * 暂停或恢复发送（RFC 2217 FLOWCONTROL-SUSPEND/RESUME），在选择器线程中调用。暂停在对该请求的回复写出后开始，
+     * 恢复时的回复会触发写出
+     */
+    void setSuspended(boolean suspend)
+    {
+        suspending = suspend;
+        if (!suspend)
+        {
+            suspended = false;
+        }
+    }
+
+
+    /**
+     * 获取协议
+     */
+    public Protocol getProtocol()
+    {
+        return protocol;
+    }
+
+
+    /**
+     * 获取实际监听的本地端口
+     *
+     * @return 已关闭时为-1
+     */
+    public int getLocalPort()
+    {
+        try
+        {
+            return ((InetSocketAddress)channel.getLocalAddress()).getPort();
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
+
+    /**
+     * 是否有可以发送数据的对方（TCP客户端已连接，或已收到过UDP数据报）
+     */
+    public boolean isConnected()
+    {
+        return peer != null;
+    }
+
+
+    /**
+     * 获取因为没有对方或接收缓冲区满而丢弃的字节数
+     */
+    public long getDroppedBytes()
+    {
+        return dropped;
+    }
+
+
+    @Override
+    public InputStream getInputStream()
+    {
+        return input;
+    }
+
+
+    @Override
+    public OutputStream getOutputStream()
+    {
+        return output;
+    }
+
+
+    /**
+     * 关闭监听的通道和当前连接，等待发送的线程立即返回
+     */
+    @Override
+    public void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println(getName() + ": fail to close");
+        }
+        selector.execute(this::disconnect);
+        synchronized (lock)
+        {
+            lock.notifyAll();
+        }
+    }
+
+
+    /**
+     * 输入流，读取接收缓冲区，没有数据时返回0
+     */
+    private final class Input extends InputStream
+    {
+        @Override
+        public int read()
+        {
+            synchronized (lock)
+            {
+                if (inbox.position() == 0)
+                {
+                    return -1;
+                }
+                inbox.flip();
+                int b = inbox.get() & 0xff;
+                inbox.compact();
+                return b;
+            }
+        }
+
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            synchronized (lock)
+            {
+                int n = Math.min(len, inbox.position());
+                if (n == 0)
+                {
+                    return 0;
+                }
+                inbox.flip();
+                inbox.get(b, off, n);
+                inbox.compact();
+                return n;
+            }
+        }
+
+
+        @Override
+        public int available()
+        {
+            synchronized (lock)
+            {
+                return inbox.position();
+            }
+        }
+
+
+        @Override
+        public void close()
+        {
+            // 与串口的输入流一样，关闭后串口仍然可用
+        }
+    }
+
+
+    /**
+     * 输出流，把数据放入发送缓冲区由选择器线程写出；缓冲区满时等待，没有对方时丢弃
+     */
+    private final class Output extends OutputStream
+    {
+        private final byte[] single = new byte[1];// write(int)使用
+
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            single[0] = (byte)b;
+            write(single, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            synchronized (lock)
+            {
+                while (len > 0)
+                {
+                    if (closed || peer == null)
+                    {
+                        dropped += len;
+                        return;
+                    }
+                    if (!outbox.hasRemaining() || protocol == Protocol.RFC2217 && outbox.remaining() < 2)
+                    {
+                        selector.execute(NetworkSerialPort.this::flush);
+                        try
+                        {
+                            lock.wait();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException();
+                        }
+                        continue;
+                    }
+                    int n;
+                    if (protocol == Protocol.RFC2217)
+                    {
+                        n = Rfc2217Session.escape(b, off, len, outbox);
+                    }
+                    else
+                    {
+                        n = Math.min(len, outbox.remaining());
+                        outbox.put(b, off, n);
+                    }
+                    off += n;
+                    len -= n;
+                }
+            }
+        }
+
+
+        @Override
+        public void flush()
+        {
+            selector.execute(NetworkSerialPort.this::flush);
+        }
+
+
+        @Override
+        public void close()
+        {
+            // 与串口的输出流一样，关闭后串口仍然可用
+        }
+    }
+}
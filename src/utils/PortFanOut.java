@@ -0,0 +1,119 @@
+package utils;
+
+import java.util.List;
+import gnu.io.SerialPort;
+
+/**
+ * PortFanOut 把同一个数据源的每条记录发送到多个串口（如主用，备用和记录仪的输入）。记录只读取和编码一次，
+ * 由各串口自己的PortWriter写出；写入时不等待，某个串口积压超过待发送缓冲区容量时按该串口的Overflow放弃记录并计数
+ * （BLOCK时放弃新记录），不会拖慢其他串口。所有串口由同一个发送模块按同一个时钟驱动，各路数据始终同步
+ *
+ * @author Yibing Zhang
+ */
+public class PortFanOut
+{
+    private final SerialPort[] ports;// 输出串口，第一个为传感器自己的串口
+
+
+    /**
+     * Constructor
+     *
+     * @param ports
+     *            输出串口，第一个为传感器自己的串口
+     */
+    public PortFanOut(List<SerialPort> ports)
+    {
+        this.ports = ports.toArray(new SerialPort[0]);
+    }
+
+
+    /**
+     * 把一条记录发送到所有串口，数据会被复制，返回后调用者可以重复使用data
+     *
+     * @param data
+     *            数据
+     * @param offset
+     *            起始位置
+     * @param length
+     *            长度
+     */
+    public void send(byte[] data, int offset, int length)
+    {
+        for (int i = 0; i < ports.length; i++)
+        {
+            PortWriter writer = SerialPortManager.getWriter(ports[i]);
+            if (writer == null)
+            {
+                SerialPortManager.sendToPort(ports[i], data, offset, length);
+            }
+            else
+            {
+                writer.offer(data, offset, length);
+            }
+        }
+    }
+
+
+    /**
+     * 获取输出串口数
+     */
+    public int size()
+    {
+        return ports.length;
+    }
+
+
+    public SerialPort getPort(int index)
+    {
+        return ports[index];
+    }
+
+
+    /**
+     * 获取一个串口当前的积压：等待写出的记录数
+     *
+     * @param index
+     *            串口序号，0为传感器自己的串口
+     * @return 积压的记录数
+     */
+    public int getLag(int index)
+    {
+        PortWriter writer = SerialPortManager.getWriter(ports[index]);
+        return writer == null ? 0 : writer.getQueueDepth();
+    }
+
+
+    /**
+     * 获取一个串口因积压而放弃的记录数（包括COALESCE时被替换掉的记录）
+     *
+     * @param index
+     *            串口序号，0为传感器自己的串口
+     * @return 放弃的记录数
+     */
+    public long getDropped(int index)
+    {
+        PortWriter writer = SerialPortManager.getWriter(ports[index]);
+        return writer == null ? 0 : writer.getDroppedCount() + writer.getCoalescedCount();
+    }
+
+
+    /**
+     * 每个串口的积压，如COM4 lag=3 dropped=0
+     */
+    public String[] describe()
+    {
+        String[] lines = new String[ports.length];
+        for (int i = 0; i < ports.length; i++)
+        {
+            lines[i] = ports[i].getName() + " lag=" + getLag(i) + " dropped=" + getDropped(i);
+        }
+        return lines;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return String.join(", ", describe());
+    }
+}
@@ -0,0 +1,40 @@
+package utils;
+
+import gnu.io.CommPort;
+import gnu.io.NoSuchPortException;
+import gnu.io.PortInUseException;
+import java.util.List;
+
+/**
+ * PortProvider 串口的来源：列出本机的串口，按名称打开串口。缺省为RXTX（CommPortIdentifier），
+ * 测试或没有串口硬件时可以用SerialPortManager.setPortProvider()换成模拟的实现
+ *
+ * @author Yibing Zhang
+ */
+public interface PortProvider
+{
+    /**
+     * 列出所有可用的端口
+     *
+     * @return 端口名称列表
+     */
+    List<String> listPorts();
+
+
+    /**
+     * 打开端口
+     *
+     * @param portName
+     *            端口名称
+     * @param owner
+     *            占用者名称
+     * @param timeout
+     *            端口被占用时等待释放的最长时间(ms)
+     * @return 打开的端口
+     * @throws NoSuchPortException
+     *             没有该端口
+     * @throws PortInUseException
+     *             端口被占用
+     */
+    CommPort open(String portName, String owner, int timeout) throws NoSuchPortException, PortInUseException;
+}
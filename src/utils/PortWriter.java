@@ -0,0 +1,999 @@
+package utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import gnu.io.SerialPort;
+
+/**
+ * PortWriter 每个串口一个的发送线程。串口的输出流只打开一次；数据记录和命令回复都先整条追加到待发送缓冲区，
+ * 由发送线程把积累的所有记录合并成一次write和一次flush。每条记录在缓冲区中是连续的，不同线程发送的数据
+ * 不会交错。待发送数据超过容量时，数据记录按Overflow处理：默认暂缓发送，由发送者在不持有自己的锁时等待（awaitSpace）
+ * 后重试；也可以放弃最旧的，放弃最新的，或者只保留最新的一条。加入记录本身从不等待，发送者不会被停滞的对端拖住。
+ * 命令回复走优先通道：插到所有等待中的数据记录之前，在下一个记录边界发出（不会插在一条记录中间），不等待也不会被放弃。
+ * 以线路速率写出的串口（真实串口或按线路速率发送）每批只取约20ms线路时间的完整记录，回复最多等待正在写出的一批。
+ * 串口开启硬件（RTS/CTS）或软件（XON/XOFF）流控时，对端要求暂停期间发送线程不再写串口，数据留在待发送缓冲区中
+ * 按Overflow处理；收到CTS或OUTPUT_BUFFER_EMPTY事件后继续写出。
+ * 设置LinePacer后按串口真实的字符速率分块写出，模拟真实仪器在该波特率下的线路占用。
+ * 发送线程可以由线程工厂创建（例如虚拟线程），等待使用ReentrantLock和Condition，空闲的发送线程不占用载体线程。
+ *
+ * @author Yibing Zhang
+ */
+public class PortWriter
+{
+    /**
+     * Overflow 待发送缓冲区已满时对新数据记录的处理方式
+     */
+    public enum Overflow
+    {
+        BLOCK, DROP_OLDEST, DROP_NEWEST, COALESCE;
+
+        /**
+         * 解析配置中的名称：block，dropOldest，dropNewest，coalesce
+         *
+         * @param name
+         *            名称
+         * @return 处理方式
+         * @throws IllegalArgumentException
+         *             无法识别
+         */
+        public static Overflow parse(String name)
+        {
+            switch (name)
+            {
+                case "block":
+                    return BLOCK;
+                case "dropOldest":
+                    return DROP_OLDEST;
+                case "dropNewest":
+                    return DROP_NEWEST;
+                case "coalesce":
+                    return COALESCE;
+                default:
+                    throw new IllegalArgumentException("Unknown overflow policy " + name);
+            }
+        }
+    }
+
+    private static final long      RATE_WINDOW  = 1000000000L;           // 速率统计窗口(ns)
+    private static final long      FLOW_POLL    = 100;                   // 流控暂停时检查CTS的周期(ms)，串口不报告事件时也能恢复
+    private static final long      XOFF_TIMEOUT = 1000000000L;           // 等待OUTPUT_BUFFER_EMPTY的最长时间(ns)
+    private static final long      SLICE_TIME   = 20000000L;             // 以线路速率写出时每批数据的线路时间(ns)
+    private static final int       MIN_SLICE    = 64;                    // 每批数据的最小字节数
+
+    private final SerialPort       port;                                 // 串口
+    private final int              capacity;                             // 待发送缓冲区容量
+    private final ReentrantLock    lock         = new ReentrantLock();   // 不用synchronized，虚拟线程等待时不占住载体线程
+    private final Condition        changed      = lock.newCondition();   // 待发送数据，流控状态或运行状态变化
+    private final Thread           thread;                               // 发送线程
+    private volatile OutputStream  out;                                  // 串口输出流，只打开一次，关闭后为null
+    private byte[]                 pending;                              // 待发送缓冲区
+    private int                    pendingLength;                        // 待发送字节数
+    private int                    pendingRecords;                       // 待发送记录数
+    private int[]                  pendingEnds;                          // 每条待发送记录的结束位置
+    private int                    pendingReplies;                       // 待发送的命令回复数，回复总在缓冲区最前面
+    private long[]                 replyTimes;                           // 每条待发送回复加入的时间
+    private long[]                 writingTimes;                         // 正在发送的一批中每条回复加入的时间
+    private int                    writingReplies;                       // 正在发送的一批中的回复数
+    private volatile int           sliceBytes;                           // 每批最多取出的字节数（至少一条记录）
+    private byte[]                 writing;                              // 发送线程正在发送的缓冲区
+    private int                    writingLength;                        // 发送线程正在发送的字节数
+    private int                    writingRecords;                       // 发送线程正在发送的记录数
+    private volatile LinePacer     pacer;                                // 线路速率限制，为null时不限速
+    private boolean                running      = true;                  // 是否运行
+    private volatile Overflow      overflow     = Overflow.BLOCK;        // 缓冲区满时数据记录的处理方式
+    private volatile int           flowControl;                          // 串口的流控方式（SerialPort.FLOWCONTROL_*）
+    private boolean                outputEvents;                         // 串口是否报告过OUTPUT_BUFFER_EMPTY
+    private boolean                outputBusy;                           // XON/XOFF流控时上一批数据还没有全部发出
+    private long                   busySince;                            // 上一批数据交给串口的时间
+    private boolean                paused;                               // 是否正因流控暂停写出
+    private volatile long          dropped;                              // 因缓冲区满被放弃的数据记录数
+    private volatile long          coalesced;                            // 被更新的记录替换掉的数据记录数
+    private volatile long          blocked;                              // 数据记录因缓冲区满而暂缓加入的次数
+    private volatile long          flowPauses;                           // 因流控暂停写出的次数
+    private volatile long          records;                              // 已发送记录数
+    private volatile long          bytes;                                // 已发送字节数
+    private volatile long          writes;                               // 调用write的次数（每次同时flush一次）
+    private volatile long          bytesPerSecond;                       // 最近一个统计窗口的发送速率
+    private volatile long          windowStart;                          // 当前统计窗口开始时间
+    private long                   windowBytes;                          // 当前统计窗口开始时的已发送字节数
+    private final LatencyHistogram writeLatency = new LatencyHistogram();// 每批数据写出（含flush和限速等待）的耗时
+    private final LatencyHistogram replyLatency = new LatencyHistogram();// 命令回复从加入到写出串口的时间
+
+
+    /**
+     * Constructor 打开串口输出流并启动平台守护线程发送
+     *
+     * @param port
+     *            串口
+     * @param capacity
+     *            待发送缓冲区容量(byte)
+     * @throws IOException
+     *             打开输出流出错
+     */
+    public PortWriter(SerialPort port, int capacity) throws IOException
+    {
+        this(port, capacity, null);
+    }
+
+
+    /**
+     * Constructor 打开串口输出流并用threads创建发送线程
+     *
+     * @param port
+     *            串口
+     * @param capacity
+     *            待发送缓冲区容量(byte)
+     * @param threads
+     *            线程工厂，例如虚拟线程工厂；为null时新建平台守护线程
+     * @throws IOException
+     *             打开输出流出错
+     */
+    public PortWriter(SerialPort port, int capacity, ThreadFactory threads) throws IOException
+    {
+        this.port = port;
+        this.capacity = capacity;
+        this.out = port.getOutputStream();
+        this.pending = new byte[Math.min(capacity, 4096)];
+        this.writing = new byte[pending.length];
+        this.pendingEnds = new int[64];
+        this.replyTimes = new long[8];
+        this.writingTimes = new long[8];
+        this.sliceBytes = sliceBytes(port);
+        this.windowStart = System.nanoTime();
+        if (threads == null)
+        {
+            this.thread = new Thread(this::run, "writer-" + port.getName());
+            this.thread.setDaemon(true);
+        }
+        else
+        {
+            this.thread = threads.newThread(this::run);
+            this.thread.setName("writer-" + port.getName());
+        }
+        this.thread.start();
+    }
+
+
+    /**
+     * 把一条命令回复等控制数据插到所有等待中的数据记录之前（排在已有的回复之后），数据会被复制，
+     * 调用者可以马上重复使用data。不等待，缓冲区已满时也放入
+     *
+     * @param data
+     *            数据
+     * @param offset
+     *            起始位置
+     * @param length
+     *            长度
+     * @return 写入器已关闭时返回false
+     */
+    public boolean write(byte[] data, int offset, int length)
+    {
+        lock.lock();
+        try
+        {
+            if (!running)
+            {
+                return false;
+            }
+            insertReply(data, offset, length);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 把一条数据记录加入待发送缓冲区，不等待：缓冲区已满时按overflow处理，BLOCK时不加入，
+     * 由调用者在awaitSpace()之后重试（等待时不应持有会妨碍停止或暂停的锁）
+     *
+     * @param data
+     *            数据
+     * @param offset
+     *            起始位置
+     * @param length
+     *            长度
+     * @return 缓冲区已满且overflow为BLOCK时返回false；记录已加入，被放弃或写入器已关闭时返回true
+     */
+    public boolean tryWriteRecord(byte[] data, int offset, int length)
+    {
+        lock.lock();
+        try
+        {
+            if (overflow == Overflow.BLOCK && running && pendingLength > 0 && pendingLength + length > capacity)
+            {
+                blocked++;
+                return false;
+            }
+            enqueue(data, offset, length);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 等待待发送缓冲区放得下length，单条记录超过容量时等缓冲区清空；写入器关闭时立即返回
+     *
+     * @param length
+     *            要加入的记录长度
+     * @throws InterruptedException
+     *             等待时被中断（如停止发送）
+     */
+    public void awaitSpace(int length) throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            while (running && pendingLength > 0 && pendingLength + length > capacity)
+            {
+                changed.await();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 把一条数据记录加入待发送缓冲区，缓冲区已满时不等待（用于同一数据扇出到多个串口，慢的串口不拖住其他串口）：
+     * overflow为BLOCK时与DROP_NEWEST相同
+     *
+     * @param data
+     *            数据
+     * @param offset
+     *            起始位置
+     * @param length
+     *            长度
+     * @return 记录被放弃或写入器已关闭时返回false
+     */
+    public boolean offer(byte[] data, int offset, int length)
+    {
+        return enqueue(data, offset, length);
+    }
+
+
+    private boolean enqueue(byte[] data, int offset, int length)
+    {
+        lock.lock();
+        try
+        {
+            if (running && pendingLength > 0 && pendingLength + length > capacity)
+            {
+                switch (overflow)
+                {
+                    case BLOCK:
+                    case DROP_NEWEST:
+                        dropped++;
+                        return false;
+                    case DROP_OLDEST:
+                        dropped += evict(length, false);
+                        break;
+                    case COALESCE:
+                        coalesced += evict(length, true);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (!running)
+            {
+                return false;
+            }
+            append(data, offset, length);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 从最旧的开始移除待发送的数据记录，命令回复保留，剩下的记录前移，调用者持有lock
+     *
+     * @param length
+     *            要放入的新记录长度
+     * @param all
+     *            为true时移除所有数据记录，否则只移除到放得下新记录为止
+     * @return 移除的记录数
+     */
+    private int evict(int length, boolean all)
+    {
+        int removed = 0;
+        int kept = pendingReplies;
+        int start = kept == 0 ? 0 : pendingEnds[kept - 1];
+        int to = start;
+        int size = pendingLength;
+        for (int i = pendingReplies; i < pendingRecords; i++)
+        {
+            int end = pendingEnds[i];
+            int len = end - start;
+            if (all || size + length > capacity)
+            {
+                size -= len;
+                removed++;
+            }
+            else
+            {
+                if (to != start)
+                {
+                    System.arraycopy(pending, start, pending, to, len);
+                }
+                to += len;
+                pendingEnds[kept++] = to;
+            }
+            start = end;
+        }
+        pendingLength = to;
+        pendingRecords = kept;
+        changed.signalAll();
+        return removed;
+    }
+
+
+    /**
+     * 追加一条数据记录到待发送缓冲区末尾并唤醒发送线程，调用者持有lock
+     */
+    private void append(byte[] data, int offset, int length)
+    {
+        reserve(length);
+        System.arraycopy(data, offset, pending, pendingLength, length);
+        pendingLength += length;
+        pendingEnds[pendingRecords++] = pendingLength;
+        changed.signalAll();
+    }
+
+
+    /**
+     * 把一条回复插到已有的回复之后，所有数据记录之前，并唤醒发送线程，调用者持有lock
+     */
+    private void insertReply(byte[] data, int offset, int length)
+    {
+        reserve(length);
+        if (pendingReplies == replyTimes.length)
+        {
+            replyTimes = Arrays.copyOf(replyTimes, pendingReplies * 2);
+        }
+        int at = pendingReplies == 0 ? 0 : pendingEnds[pendingReplies - 1];
+        System.arraycopy(pending, at, pending, at + length, pendingLength - at);
+        System.arraycopy(data, offset, pending, at, length);
+        System.arraycopy(pendingEnds, pendingReplies, pendingEnds, pendingReplies + 1, pendingRecords - pendingReplies);
+        pendingRecords++;
+        for (int i = pendingReplies + 1; i < pendingRecords; i++)
+        {
+            pendingEnds[i] += length;
+        }
+        pendingEnds[pendingReplies] = at + length;
+        replyTimes[pendingReplies++] = System.nanoTime();
+        pendingLength += length;
+        changed.signalAll();
+    }
+
+
+    /**
+     * 确保待发送缓冲区还放得下length字节和一条记录，调用者持有lock
+     */
+    private void reserve(int length)
+    {
+        if (pendingLength + length > pending.length)
+        {
+            byte[] bigger = new byte[Math.max(pending.length * 2, pendingLength + length)];
+            System.arraycopy(pending, 0, bigger, 0, pendingLength);
+            pending = bigger;
+        }
+        if (pendingRecords == pendingEnds.length)
+        {
+            pendingEnds = Arrays.copyOf(pendingEnds, pendingRecords * 2);
+        }
+    }
+
+
+    /**
+     * 取出下一批要写出的完整记录放入writing：有回复时只取回复；否则全部待发送数据不超过sliceBytes时直接交换缓冲区，
+     * 超过时只取不超过sliceBytes的记录（至少一条），其余前移，之后加入的回复可以排在它们之前。调用者持有lock
+     *
+     * @return 取出的记录数
+     */
+    private int take()
+    {
+        LinePacer linePacer = pacer;
+        int limit = linePacer != null ? linePacer.getChunkSize() : sliceBytes;
+        int count = pendingRecords;
+        if (pendingReplies > 0)
+        {
+            // 回复单独成一批，不等后面的数据记录写完
+            count = pendingReplies;
+        }
+        else if (pendingLength > limit)
+        {
+            count = 1;
+            while (count < pendingRecords && pendingEnds[count] <= limit)
+            {
+                count++;
+            }
+        }
+        if (count == pendingRecords)
+        {
+            byte[] swap = writing;
+            writing = pending;
+            pending = swap.length >= writing.length ? swap : new byte[writing.length];
+            writingLength = pendingLength;
+        }
+        else
+        {
+            writingLength = pendingEnds[count - 1];
+            if (writing.length < writingLength)
+            {
+                writing = new byte[Math.max(writing.length * 2, writingLength)];
+            }
+            System.arraycopy(pending, 0, writing, 0, writingLength);
+            System.arraycopy(pending, writingLength, pending, 0, pendingLength - writingLength);
+            for (int i = count; i < pendingRecords; i++)
+            {
+                pendingEnds[i - count] = pendingEnds[i] - writingLength;
+            }
+        }
+        writingReplies = Math.min(count, pendingReplies);
+        if (writingReplies > 0)
+        {
+            if (writingTimes.length < writingReplies)
+            {
+                writingTimes = new long[replyTimes.length];
+            }
+            System.arraycopy(replyTimes, 0, writingTimes, 0, writingReplies);
+            System.arraycopy(replyTimes, writingReplies, replyTimes, 0, pendingReplies - writingReplies);
+        }
+        pendingLength -= writingLength;
+        pendingRecords -= count;
+        pendingReplies -= writingReplies;
+        return count;
+    }
+
+
+    /**
+     * 每批最多取出的字节数：网络端口等不按线路速率写出的串口不限，真实串口为SLICE_TIME线路时间的字符数
+     */
+    private static int sliceBytes(SerialPort port)
+    {
+        if (port instanceof VirtualSerialPort)
+        {
+            return Integer.MAX_VALUE;
+        }
+        double bits = LinePacer.bitsPerChar(port.getDataBits(), port.getStopBits(), port.getParity());
+        return (int)Math.max(MIN_SLICE, port.getBaudRate() / bits * SLICE_TIME / 1e9);
+    }
+
+
+    /**
+     * 发送线程：取出所有待发送数据，一次写出并flush
+     */
+    private void run()
+    {
+        while (true)
+        {
+            int length;
+            int count;
+            int replies;
+            lock.lock();
+            try
+            {
+                // 对端要求暂停时不写串口，数据留在缓冲区中按overflow处理；定时检查，串口不报告CTS事件时也能恢复
+                while (running && (pendingLength == 0 || throttled()))
+                {
+                    if (pendingLength > 0 && !paused)
+                    {
+                        paused = true;
+                        flowPauses++;
+                    }
+                    try
+                    {
+                        if (pendingLength == 0)
+                        {
+                            changed.await();
+                        }
+                        else
+                        {
+                            changed.await(FLOW_POLL, TimeUnit.MILLISECONDS);
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        running = false;
+                    }
+                }
+                paused = false;
+                if (pendingLength == 0)
+                {
+                    break;
+                }
+                if (outputEvents && (flowControl & SerialPort.FLOWCONTROL_XONXOFF_OUT) != 0)
+                {
+                    outputBusy = true;
+                    busySince = System.nanoTime();
+                }
+                count = take();
+                length = writingLength;
+                replies = writingReplies;
+                writingRecords = count;
+                changed.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            boolean ok = send(writing, length, count);
+            if (ok && replies > 0)
+            {
+                long now = System.nanoTime();
+                for (int i = 0; i < replies; i++)
+                {
+                    replyLatency.record(now - writingTimes[i]);
+                }
+            }
+            lock.lock();
+            try
+            {
+                writingRecords = 0;
+                changed.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            if (!ok)
+            {
+                if (out != null)
+                {
+                    SerialPortManager.closePort(port);
+                }
+                break;
+            }
+        }
+    }
+
+
+    private boolean send(byte[] data, int length, int count)
+    {
+        int calls = 0;
+        long start = System.nanoTime();
+        // close()等待超时后会关闭输出流，发送线程可能仍在写出
+        OutputStream stream = out;
+        if (stream == null)
+        {
+            return false;
+        }
+        try
+        {
+            LinePacer linePacer = pacer;
+            if (linePacer == null)
+            {
+                stream.write(data, 0, length);
+                stream.flush();
+                calls++;
+            }
+            else
+            {
+                // 按线路速率分块写出
+                for (int offset = 0; offset < length; calls++)
+                {
+                    int chunk = Math.min(linePacer.getChunkSize(), length - offset);
+                    linePacer.acquire(chunk);
+                    stream.write(data, offset, chunk);
+                    stream.flush();
+                    offset += chunk;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            if (out != null)
+            {
+                System.err.println("Fail to send the data");
+            }
+            return false;
+        }
+        catch (InterruptedException e)
+        {
+            // 关闭时被中断，丢弃剩余数据
+            return false;
+        }
+        records += count;
+        bytes += length;
+        writes += calls;
+        long now = System.nanoTime();
+        writeLatency.record(now - start);
+        if (now - windowStart >= RATE_WINDOW)
+        {
+            bytesPerSecond = (bytes - windowBytes) * 1000000000L / (now - windowStart);
+            windowStart = now;
+            windowBytes = bytes;
+        }
+        return true;
+    }
+
+
+    /**
+     * 发送完已有的数据后停止发送线程并关闭输出流
+     */
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            if (!running && out == null)
+            {
+                return;
+            }
+            running = false;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        if (Thread.currentThread() != thread)
+        {
+            try
+            {
+                thread.join(2000);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try
+        {
+            try
+            {
+                if (out != null)
+                {
+                    out.close();
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Output Stream has been closed");
+            }
+            out = null;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 等待已加入的数据全部写出串口（write和flush完成），用于在更改串口参数之前排空发送缓冲区。
+     * 等待期间其他线程加入的数据也要写出
+     *
+     * @param timeout
+     *            最长等待时间(ms)
+     * @return 全部写出（或写入器已关闭）返回true，超时或被中断返回false
+     */
+    public boolean drain(long timeout)
+    {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        lock.lock();
+        try
+        {
+            while (running && (pendingLength > 0 || writingRecords > 0))
+            {
+                long left = deadline - System.nanoTime();
+                if (left <= 0)
+                {
+                    return false;
+                }
+                try
+                {
+                    changed.awaitNanos(left);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 对端是否要求暂停发送，调用者持有lock。RTS/CTS流控时看CTS线；XON/XOFF流控时对端的XOFF由驱动处理，
+     * 只要串口报告OUTPUT_BUFFER_EMPTY，就等上一批数据全部发出后再写下一批，暂停期间数据留在待发送缓冲区中
+     */
+    private boolean throttled()
+    {
+        int mode = flowControl;
+        if ((mode & SerialPort.FLOWCONTROL_RTSCTS_OUT) != 0 && !port.isCTS())
+        {
+            return true;
+        }
+        return (mode & SerialPort.FLOWCONTROL_XONXOFF_OUT) != 0 && outputBusy
+            && System.nanoTime() - busySince < XOFF_TIMEOUT;
+    }
+
+
+    /**
+     * 串口的CTS或DSR线变化，由串口的事件监听调用
+     */
+    public void flowChanged()
+    {
+        lock.lock();
+        try
+        {
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 串口的输出缓冲区已空（OUTPUT_BUFFER_EMPTY），由串口的事件监听调用
+     */
+    public void outputEmpty()
+    {
+        lock.lock();
+        try
+        {
+            outputEvents = true;
+            outputBusy = false;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 设置串口的流控方式，串口本身的流控由调用者设置（见SerialPortManager.setFlowControl）
+     *
+     * @param mode
+     *            SerialPort.FLOWCONTROL_*的组合
+     */
+    public void setFlowControl(int mode)
+    {
+        lock.lock();
+        try
+        {
+            flowControl = mode;
+            outputBusy = false;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    public int getFlowControl()
+    {
+        return flowControl;
+    }
+
+
+    /**
+     * 设置待发送缓冲区已满时对新数据记录的处理方式
+     *
+     * @param overflow
+     *            处理方式
+     */
+    public void setOverflow(Overflow overflow)
+    {
+        lock.lock();
+        try
+        {
+            this.overflow = overflow;
+            changed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    public Overflow getOverflow()
+    {
+        return overflow;
+    }
+
+
+    /**
+     * 是否正因流控暂停写出
+     */
+    public boolean isPaused()
+    {
+        lock.lock();
+        try
+        {
+            return paused;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 开启或关闭按线路速率发送
+     *
+     * @param enabled
+     *            true时按串口当前的波特率和帧格式限速
+     */
+    public void setPacing(boolean enabled)
+    {
+        pacer = enabled ? new LinePacer(port) : null;
+    }
+
+
+    /**
+     * 获取线路速率限制
+     *
+     * @return 未开启时为null
+     */
+    public LinePacer getPacer()
+    {
+        return pacer;
+    }
+
+
+    /**
+     * 串口参数（波特率等）已更改
+     */
+    public void lineParametersChanged()
+    {
+        sliceBytes = sliceBytes(port);
+        LinePacer linePacer = pacer;
+        if (linePacer != null)
+        {
+            linePacer.configure(port);
+        }
+    }
+
+
+    /**
+     * 获取等待发送的记录数（包括正在写串口的一批）
+     */
+    public int getQueueDepth()
+    {
+        lock.lock();
+        try
+        {
+            return pendingRecords + writingRecords;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * 获取等待发送的字节数
+     */
+    public int getPendingBytes()
+    {
+        lock.lock();
+        try
+        {
+            return pendingLength;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    public long getRecordCount()
+    {
+        return records;
+    }
+
+
+    public long getByteCount()
+    {
+        return bytes;
+    }
+
+
+    /**
+     * 获取调用write（及flush）的次数，与getRecordCount()比较可以看出合并的效果
+     */
+    public long getWriteCount()
+    {
+        return writes;
+    }
+
+
+    /**
+     * 获取每批数据写出串口（write和flush，按线路速率发送时含等待）的耗时分布
+     */
+    public LatencyHistogram getWriteLatency()
+    {
+        return writeLatency;
+    }
+
+
+    /**
+     * 获取因缓冲区满被放弃的数据记录数（DROP_OLDEST放弃的旧记录，DROP_NEWEST和offer()放弃的新记录）
+     */
+    public long getDroppedCount()
+    {
+        return dropped;
+    }
+
+
+    /**
+     * 获取COALESCE时被更新的记录替换掉的数据记录数
+     */
+    public long getCoalescedCount()
+    {
+        return coalesced;
+    }
+
+
+    /**
+     * 获取数据记录因缓冲区满而暂缓加入的次数（BLOCK，发送者每次重试都计数）
+     */
+    public long getBlockedCount()
+    {
+        return blocked;
+    }
+
+
+    /**
+     * 获取因流控暂停写出的次数
+     */
+    public long getFlowPauseCount()
+    {
+        return flowPauses;
+    }
+
+
+    /**
+     * 获取命令回复从加入到写出串口（write和flush完成）的时间分布
+     */
+    public LatencyHistogram getReplyLatency()
+    {
+        return replyLatency;
+    }
+
+
+    /**
+     * 获取最近一秒的发送速率，超过两秒没有发送时为0
+     */
+    public long getBytesPerSecond()
+    {
+        return System.nanoTime() - windowStart > 2 * RATE_WINDOW ? 0 : bytesPerSecond;
+    }
+}
@@ -0,0 +1,388 @@
+package utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import gnu.io.SerialPort;
+
+/**
+ * Rfc2217Session 一个RFC 2217（Telnet COM-PORT-OPTION）连接的服务器端。从收到的字节中去掉Telnet命令，
+ * 应答选项协商（只接受BINARY，SUPPRESS-GO-AHEAD和COM-PORT-OPTION），执行客户端设置的波特率，数据位，
+ * 校验位，停止位，流控和暂停发送等，并按协议回复当前值。数据中的0xFF（IAC）由escape()转义
+ *
+ * @author Yibing Zhang
+ */
+final class Rfc2217Session
+{
+    private static final int        IAC           = 255;                    // Telnet命令开始
+    private static final int        DONT          = 254;
+    private static final int        DO            = 253;
+    private static final int        WONT          = 252;
+    private static final int        WILL          = 251;
+    private static final int        SB            = 250;                    // 子协商开始
+    private static final int        SE            = 240;                    // 子协商结束
+    private static final int        BINARY        = 0;                      // 二进制传输选项
+    private static final int        SGA           = 3;                      // SUPPRESS-GO-AHEAD选项
+    private static final int        COM_PORT      = 44;                     // COM-PORT-OPTION选项
+    private static final int        SERVER_OFFSET = 100;                    // 服务器回复的命令号 = 客户端命令号 + 100
+    private static final int        MAX_SUBOPTION = 64;                     // 子协商内容的最大长度，超出部分丢弃
+
+    private static final int        STATE_DATA    = 0;                      // 普通数据
+    private static final int        STATE_IAC     = 1;                      // 收到IAC
+    private static final int        STATE_OPTION  = 2;                      // 收到WILL/WONT/DO/DONT，等待选项
+    private static final int        STATE_SB      = 3;                      // 子协商内容
+    private static final int        STATE_SB_IAC  = 4;                      // 子协商中收到IAC
+
+    private final NetworkSerialPort port;                                   // 网络串口
+    private final boolean[]         local         = new boolean[256];       // 本端已启用的选项
+    private final boolean[]         remote        = new boolean[256];       // 对方已启用的选项
+    private final byte[]            suboption     = new byte[MAX_SUBOPTION];// 子协商内容
+    private int                     suboptionLength;                        // 子协商内容长度
+    private int                     state         = STATE_DATA;             // 解析状态
+    private int                     verb;                                   // 等待选项的WILL/WONT/DO/DONT
+
+
+    Rfc2217Session(NetworkSerialPort port)
+    {
+        this.port = port;
+    }
+
+
+    /**
+     * 连接建立时请求客户端启用COM-PORT-OPTION和二进制传输
+     *
+     * @param reply
+     *            发送缓冲区
+     */
+    void start(ByteBuffer reply)
+    {
+        negotiate(reply, DO, COM_PORT);
+        negotiate(reply, DO, BINARY);
+        negotiate(reply, WILL, BINARY);
+        negotiate(reply, WILL, SGA);
+    }
+
+
+    private void negotiate(ByteBuffer reply, int command, int option)
+    {
+        if (command == DO)
+        {
+            remote[option] = true;
+        }
+        else if (command == WILL)
+        {
+            local[option] = true;
+        }
+        put(reply, IAC, command, option);
+    }
+
+
+    /**
+     * 处理收到的字节：数据放入data，Telnet命令的回复放入reply
+     *
+     * @param in
+     *            收到的字节（读模式）
+     * @param data
+     *            接收缓冲区（写模式），满时数据被丢弃
+     * @param reply
+     *            发送缓冲区（写模式）
+     * @return 丢弃的数据字节数
+     */
+    int decode(ByteBuffer in, ByteBuffer data, ByteBuffer reply)
+    {
+        int dropped = 0;
+        while (in.hasRemaining())
+        {
+            int b = in.get() & 0xff;
+            switch (state)
+            {
+                case STATE_DATA:
+                    if (b == IAC)
+                    {
+                        state = STATE_IAC;
+                    }
+                    else if (data.hasRemaining())
+                    {
+                        data.put((byte)b);
+                    }
+                    else
+                    {
+                        dropped++;
+                    }
+                    break;
+                case STATE_IAC:
+                    state = STATE_DATA;
+                    if (b == IAC)
+                    {
+                        // IAC IAC是数据0xFF
+                        if (data.hasRemaining())
+                        {
+                            data.put((byte)b);
+                        }
+                        else
+                        {
+                            dropped++;
+                        }
+                    }
+                    else if (b == WILL || b == WONT || b == DO || b == DONT)
+                    {
+                        verb = b;
+                        state = STATE_OPTION;
+                    }
+                    else if (b == SB)
+                    {
+                        suboptionLength = 0;
+                        state = STATE_SB;
+                    }
+                    // 其他命令（NOP，AYT，GA等）忽略
+                    break;
+                case STATE_OPTION:
+                    state = STATE_DATA;
+                    option(verb, b, reply);
+                    break;
+                case STATE_SB:
+                    if (b == IAC)
+                    {
+                        state = STATE_SB_IAC;
+                    }
+                    else if (suboptionLength < MAX_SUBOPTION)
+                    {
+                        suboption[suboptionLength++] = (byte)b;
+                    }
+                    break;
+                case STATE_SB_IAC:
+                    if (b == IAC)
+                    {
+                        state = STATE_SB;
+                        if (suboptionLength < MAX_SUBOPTION)
+                        {
+                            suboption[suboptionLength++] = (byte)b;
+                        }
+                    }
+                    else
+                    {
+                        // IAC SE，或者不完整的子协商
+                        state = STATE_DATA;
+                        if (b == SE && suboptionLength > 1 && (suboption[0] & 0xff) == COM_PORT)
+                        {
+                            comPort(data, reply);
+                        }
+                    }
+                    break;
+                default:
+                    state = STATE_DATA;
+            }
+        }
+        return dropped;
+    }
+
+
+    private static boolean supported(int option)
+    {
+        return option == BINARY || option == SGA || option == COM_PORT;
+    }
+
+
+    /**
+     * 应答选项协商，只在状态改变时回复，避免双方无限循环
+     */
+    private void option(int command, int option, ByteBuffer reply)
+    {
+        switch (command)
+        {
+            case WILL:
+                if (!remote[option])
+                {
+                    remote[option] = supported(option);
+                    put(reply, IAC, remote[option] ? DO : DONT, option);
+                }
+                break;
+            case WONT:
+                if (remote[option])
+                {
+                    remote[option] = false;
+                    put(reply, IAC, DONT, option);
+                }
+                break;
+            case DO:
+                if (!local[option])
+                {
+                    local[option] = supported(option);
+                    put(reply, IAC, local[option] ? WILL : WONT, option);
+                }
+                break;
+            case DONT:
+                if (local[option])
+                {
+                    local[option] = false;
+                    put(reply, IAC, WONT, option);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     * 执行一条COM-PORT-OPTION子协商命令并回复当前值。值为0表示查询
+     */
+    private void comPort(ByteBuffer data, ByteBuffer reply)
+    {
+        int command = suboption[1] & 0xff;
+        int value = suboptionLength > 2 ? suboption[2] & 0xff : 0;
+        switch (command)
+        {
+            case 0: // SIGNATURE
+                if (suboptionLength == 2)
+                {
+                    reply(reply, command, ("SensorSimulator " + port.getName()).getBytes(StandardCharsets.US_ASCII));
+                }
+                break;
+            case 1: // SET-BAUDRATE
+                if (suboptionLength >= 6)
+                {
+                    int baudRate = (suboption[2] & 0xff) << 24 | (suboption[3] & 0xff) << 16
+                        | (suboption[4] & 0xff) << 8 | suboption[5] & 0xff;
+                    if (baudRate > 0)
+                    {
+                        port.setLineParameters(baudRate, port.getDataBits(), port.getStopBits(), port.getParity());
+                    }
+                }
+                int current = port.getBaudRate();
+                reply(reply, command, new byte[] {(byte)(current >>> 24), (byte)(current >>> 16),
+                    (byte)(current >>> 8), (byte)current});
+                break;
+            case 2: // SET-DATASIZE
+                if (value >= 5 && value <= 8)
+                {
+                    port.setLineParameters(port.getBaudRate(), value, port.getStopBits(), port.getParity());
+                }
+                reply(reply, command, new byte[] {(byte)port.getDataBits()});
+                break;
+            case 3: // SET-PARITY：1 NONE，2 ODD，3 EVEN，4 MARK，5 SPACE，比SerialPort的常量大1
+                if (value >= 1 && value <= 5)
+                {
+                    port.setLineParameters(port.getBaudRate(), port.getDataBits(), port.getStopBits(), value - 1);
+                }
+                reply(reply, command, new byte[] {(byte)(port.getParity() + 1)});
+                break;
+            case 4: // SET-STOPSIZE：1，2，3为1.5，与SerialPort的常量相同
+                if (value >= 1 && value <= 3)
+                {
+                    port.setLineParameters(port.getBaudRate(), port.getDataBits(), value, port.getParity());
+                }
+                reply(reply, command, new byte[] {(byte)port.getStopBits()});
+                break;
+            case 5: // SET-CONTROL：0查询流控，1无，2 XON/XOFF，3 RTS/CTS；其他（DTR，RTS，BREAK）只回复
+                if (value >= 1 && value <= 3)
+                {
+                    port.setFlowControlMode(value == 1 ? SerialPort.FLOWCONTROL_NONE
+                        : value == 2 ? SerialPort.FLOWCONTROL_XONXOFF_IN | SerialPort.FLOWCONTROL_XONXOFF_OUT
+                            : SerialPort.FLOWCONTROL_RTSCTS_IN | SerialPort.FLOWCONTROL_RTSCTS_OUT);
+                }
+                if (value == 0)
+                {
+                    int mode = port.getFlowControlMode();
+                    value = (mode & SerialPort.FLOWCONTROL_RTSCTS_OUT) != 0 ? 3
+                        : (mode & SerialPort.FLOWCONTROL_XONXOFF_OUT) != 0 ? 2 : 1;
+                }
+                reply(reply, command, new byte[] {(byte)value});
+                break;
+            case 8: // FLOWCONTROL-SUSPEND
+                port.setSuspended(true);
+                reply(reply, command, new byte[0]);
+                break;
+            case 9: // FLOWCONTROL-RESUME
+                port.setSuspended(false);
+                reply(reply, command, new byte[0]);
+                break;
+            case 10: // SET-LINESTATE-MASK
+            case 11: // SET-MODEMSTATE-MASK
+                reply(reply, command, new byte[] {(byte)value});
+                break;
+            case 12: // PURGE-DATA：1接收缓冲区，2发送缓冲区，3两者
+                if ((value & 1) != 0)
+                {
+                    data.clear();
+                }
+                if ((value & 2) != 0)
+                {
+                    reply.clear();
+                }
+                reply(reply, command, new byte[] {(byte)value});
+                break;
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     * 发送 IAC SB COM-PORT-OPTION (command+100) value IAC SE，value中的IAC被转义；发送缓冲区不够时不回复
+     */
+    private static void reply(ByteBuffer reply, int command, byte[] value)
+    {
+        if (reply.remaining() < 6 + value.length * 2)
+        {
+            return;
+        }
+        put(reply, IAC, SB, COM_PORT, command + SERVER_OFFSET);
+        for (byte b : value)
+        {
+            reply.put(b);
+            if ((b & 0xff) == IAC)
+            {
+                reply.put(b);
+            }
+        }
+        put(reply, IAC, SE);
+    }
+
+
+    private static void put(ByteBuffer buffer, int... bytes)
+    {
+        if (buffer.remaining() < bytes.length)
+        {
+            return;
+        }
+        for (int b : bytes)
+        {
+            buffer.put((byte)b);
+        }
+    }
+
+
+    /**
+     * 把数据放入发送缓冲区，0xFF转义为两个0xFF
+     *
+     * @param data
+     *            数据
+     * @param offset
+     *            起始位置
+     * @param length
+     *            长度
+     * @param out
+     *            发送缓冲区（写模式）
+     * @return 放入的数据字节数，缓冲区满时少于length
+     */
+    static int escape(byte[] data, int offset, int length, ByteBuffer out)
+    {
+        int i = 0;
+        while (i < length)
+        {
+            byte b = data[offset + i];
+            int need = (b & 0xff) == IAC ? 2 : 1;
+            if (out.remaining() < need)
+            {
+                break;
+            }
+            out.put(b);
+            if (need == 2)
+            {
+                out.put(b);
+            }
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,39 @@
+package utils;
+
+import gnu.io.CommPort;
+import gnu.io.CommPortIdentifier;
+import gnu.io.NoSuchPortException;
+import gnu.io.PortInUseException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * RxtxPortProvider 通过RXTX的CommPortIdentifier列出和打开串口
+ *
+ * @author Yibing Zhang
+ */
+class RxtxPortProvider implements PortProvider
+{
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> listPorts()
+    {
+        // 获得当前所有可用串口
+        Enumeration<CommPortIdentifier> portList = CommPortIdentifier.getPortIdentifiers();
+        List<String> portNameList = new ArrayList<String>();
+        while (portList.hasMoreElements())
+        {
+            portNameList.add(portList.nextElement().getName());
+        }
+        return portNameList;
+    }
+
+
+    @Override
+    public CommPort open(String portName, String owner, int timeout) throws NoSuchPortException, PortInUseException
+    {
+        // 通过端口名识别端口，设置占用者与timeout（打开操作的超时时间）
+        return CommPortIdentifier.getPortIdentifier(portName).open(owner, timeout);
+    }
+}
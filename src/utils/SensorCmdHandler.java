@@ -1,207 +1,286 @@
-package utils;
-
-import Sensor.Simulation_Task;
-import gnu.io.SerialPort;
-import gnu.io.UnsupportedCommOperationException;
-
-/**
- * SensorCmdHandler 用于处理模拟器接收到的指令，进行相应的操作；若该命令无法识别，则 返回拒绝信息
- * 
- * @author Yibing Zhang
- */
-public class SensorCmdHandler
-{
-    private String          cmd;       // 模拟器接收到的命令
-    private Simulation_Task task;      // 模拟器数据发送模块
-    private String          sensorName;// 模拟器名称
-    private SerialPort      port;      // 串口号
-    private String          fileName;  // 文件名称
-    private int             fileType;  // 文件种类，2进制或非2进制
-    private long            interval;  // 设置间隔
-
-
-    public SensorCmdHandler(String cmd)
-    {
-        this.cmd = cmd;
-    }
-
-
-    /**
-     * 设置handler的参数
-     * 
-     * @param task
-     *            模拟器数据发送模块
-     * @param port
-     *            串口
-     * @param fileName
-     *            文件名称
-     * @param fileType
-     *            文件种类
-     */
-    public void iniHandler(Simulation_Task task, SerialPort port, String fileName, int fileType, long interval)
-    {
-        this.task = task;
-        this.sensorName = task.getsensorName();
-        this.port = port;
-        this.fileName = fileName;
-        this.fileType = fileType;
-        this.interval = interval;
-    }
-
-
-    /**
-     * 处理相应的指令，首先判断是否命令跟随参数，若有，再进行识别该命令和参数的识别；若无，直接识别该命令并
-     * 做出相应的工作。该方法会返回一个模拟器数据发送模块，方便主程序对当前模块的更新
-     * 
-     * @return 模拟器数据发送模块
-     */
-    public Simulation_Task doWork()
-    {
-        // 命令带有参数的
-        if (cmd.contains(" "))
-        {
-            String[] cmds = cmd.split(" ");
-            switch (cmds[0])
-            {
-                case "br":
-                    task = changeRate(cmds[1]);
-                    break;
-                case "setInterval":
-                    setInterval(cmds[1]);
-                    break;
-                default:
-                    SerialPortManager.sendToPort(port, ("Can't recognize this command\n").getBytes());
-            }
-        }
-        // 命令不带有参数的
-        else
-        {
-            switch (cmd)
-            {
-                case "off":
-                    turnOff();// 调用关闭函数
-                    break;
-                case "on":
-                    task = turnOn();// 调用开始函数
-                    break;
-                default:
-                    SerialPortManager.sendToPort(port, ("Can't recognize this command\n").getBytes());
-            }
-        }
-        return task;
-    }
-
-
-    /**
-     * 关闭传感器（关闭模拟器数据发送模块）
-     */
-    private void turnOff()
-    {
-        // 判断仪器是否已关闭
-        if (task.getRunningState())
-        {
-            task.stop();
-            SerialPortManager.sendToPort(port, (sensorName + " has Stopped\n").getBytes());
-        }
-        else
-        {
-            SerialPortManager.sendToPort(port, (sensorName + " has Stopped\n").getBytes());
-        }
-    }
-
-
-    /**
-     * 设置采样间隔
-     * 
-     * @param interval采样间隔
-     */
-    private void setInterval(String interval)
-    {
-        this.interval = 100 * Integer.parseInt(interval);
-        task.setInterval(this.interval);
-    }
-
-    /**
-     * 获取采样间隔
-     * @return采样间隔
-     */
-    public long getInterval()
-    {
-        return interval;
-    }
-
-
-    /**
-     * 打开模拟器（打开模拟器数据发送模块） 该方法会返回一个模拟器数据发送模块，方便主程序对当前模块的更新
-     * 
-     * @return 模拟器数据发送模块
-     */
-    private Simulation_Task turnOn()
-    {
-        if (!task.getRunningState())
-        {
-            task = new Simulation_Task(sensorName, port, fileName, fileType, interval);
-            task.setRunningState(true);
-            Thread thread = new Thread(task);
-            thread.start();
-        }
-        else
-        {
-            SerialPortManager.sendToPort(port, (sensorName + " is running\n").getBytes());
-        }
-        return task;
-    }
-
-
-    /**
-     * 更改模特率。先停止数据传输模块，对该模拟器波特率进行更改，更改后再重启数据发送模块
-     * 
-     * @param rate
-     *            波特率
-     * @return
-     */
-    private Simulation_Task changeRate(String rate)
-    {
-        try
-        {
-            if (!task.getRunningState())
-            {
-                SerialPortManager.sendToPort(port, ("\n").getBytes());
-
-                System.out.println("BaudRate before: " + port.getBaudRate());
-                SerialPortManager.changeBuadeRate(Integer.parseInt(rate), port);
-                System.out.println("BaudRate after: " + port.getBaudRate());
-            }
-            else
-            {
-                task.stop();
-                SerialPortManager.sendToPort(port, ("\n").getBytes());
-
-                System.out.println("BaudRate before: " + port.getBaudRate());
-                SerialPortManager.changeBuadeRate(Integer.parseInt(rate), port);
-                System.out.println("BaudRate after: " + port.getBaudRate());
-
-                Thread.sleep(1000);
-                task = new Simulation_Task(sensorName, port, fileName, fileType, interval);
-                task.setRunningState(true);
-                Thread thread = new Thread(task);
-                thread.start();
-            }
-        }
-        catch (NumberFormatException e)
-        {
-            System.err.println("Invalid baudrate");
-        }
-        catch (UnsupportedCommOperationException e)
-        {
-
-            System.err.println("change baudrate error");
-        }
-        catch (InterruptedException e)
-        {
-            e.printStackTrace();
-        }
-
-        return task;
-    }
-}
+package utils;
+
+import Sensor.Simulation_Task;
+import gnu.io.SerialPort;
+import gnu.io.UnsupportedCommOperationException;
+
+/**
+ * SensorCmdHandler 用于处理模拟器接收到的指令，进行相应的操作；若该命令无法识别，则 返回拒绝信息。
+ * 命令在CommandTable中查找，所有回复在创建时编码好，处理命令时不再分割字符串或拼接回复
+ * 
+ * @author Yibing Zhang
+ */
+public class SensorCmdHandler
+{
+    private static final byte[] REJECT  = "Can't recognize this command\n".getBytes();// 无法识别命令的回复
+    private static final byte[] NEWLINE = "\n".getBytes();                            // 更改波特率的回复
+
+    private static final long   DRAIN_TIMEOUT = 5000;// 更改波特率前等待发送缓冲区排空的最长时间(ms)
+
+    private Simulation_Task     task;                                                 // 模拟器数据发送模块
+    private String              sensorName;                                           // 模拟器名称
+    private SerialPort          port;                                                 // 串口号
+    private long                interval;                                             // 设置间隔
+    private final CommandTable  commands;                                             // 命令表
+    private final byte[]        stopped;                                              // 已停止的回复
+    private final byte[]        running;                                              // 正在运行的回复
+    private SessionLog.Sink     capture;                                              // 会话记录，为null时不记录
+
+
+    /**
+     * Constructor 每个模拟传感器创建一个handler，处理该传感器的所有命令
+     * 
+     * @param task
+     *            模拟器数据发送模块
+     * @param port
+     *            串口
+     */
+    public SensorCmdHandler(Simulation_Task task, SerialPort port)
+    {
+        this(task, port, CommandTable.defaults());
+    }
+
+
+    /**
+     * Constructor 使用指定的命令表
+     * 
+     * @param task
+     *            模拟器数据发送模块
+     * @param port
+     *            串口
+     * @param commands
+     *            命令表
+     */
+    public SensorCmdHandler(Simulation_Task task, SerialPort port, CommandTable commands)
+    {
+        this.task = task;
+        this.sensorName = task.getsensorName();
+        this.port = port;
+        this.interval = task.getInterval();
+        this.commands = commands;
+        this.stopped = (sensorName + " has Stopped\n").getBytes();
+        this.running = (sensorName + " is running\n").getBytes();
+    }
+
+
+    /**
+     * 处理相应的指令，在命令表中查找该命令：固定回复的命令直接发送编码好的回复；内置命令做出相应的工作，
+     * 带参数的内置命令从第一个空格之后读取参数。该方法会返回一个模拟器数据发送模块，方便主程序对当前模块的更新
+     * 
+     * @param cmd
+     *            模拟器接收到的命令
+     * @return 模拟器数据发送模块
+     */
+    public Simulation_Task doWork(String cmd)
+    {
+        CommandTable.Command command = commands.lookup(cmd);
+        if (command == null)
+        {
+            reply(REJECT);
+            return task;
+        }
+        switch (command.getAction())
+        {
+            case REPLY:
+                reply(command.getReply());
+                break;
+            case OFF:
+                turnOff();// 调用关闭函数
+                break;
+            case ON:
+                task = turnOn();// 调用开始函数
+                break;
+            case BAUD_RATE:
+                task = changeRate(parseArgument(cmd, command.getKeyword().length() + 1));
+                break;
+            case INTERVAL:
+                setInterval(parseArgument(cmd, command.getKeyword().length() + 1));
+                break;
+            default:
+                reply(REJECT);
+        }
+        return task;
+    }
+
+
+    /**
+     * 发送回复，有会话记录时同时记录
+     * 
+     * @param data
+     *            回复
+     */
+    private void reply(byte[] data)
+    {
+        SerialPortManager.sendToPort(port, data);
+        if (capture != null)
+        {
+            capture.append(SessionLog.REPLY, data, 0, data.length);
+        }
+    }
+
+
+    /**
+     * 设置会话记录，之后发出的每条回复都会被记录
+     * 
+     * @param capture
+     *            会话记录，为null时不记录
+     */
+    public void setCapture(SessionLog.Sink capture)
+    {
+        this.capture = capture;
+    }
+
+
+    /**
+     * 读取命令参数：从from开始到下一个空格或命令结尾的十进制整数
+     * 
+     * @param cmd
+     *            命令
+     * @param from
+     *            参数开始位置
+     * @return 参数格式错误时返回-1
+     */
+    static int parseArgument(String cmd, int from)
+    {
+        int value = 0;
+        int end = from;
+        while (end < cmd.length() && cmd.charAt(end) != ' ')
+        {
+            int digit = cmd.charAt(end) - '0';
+            if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10)
+            {
+                return -1;
+            }
+            value = value * 10 + digit;
+            end++;
+        }
+        return end == from ? -1 : value;
+    }
+
+
+    /**
+     * 关闭传感器（关闭模拟器数据发送模块）
+     */
+    private void turnOff()
+    {
+        // 判断仪器是否已关闭
+        if (task.getRunningState())
+        {
+            task.stop();
+            reply(stopped);
+        }
+        else
+        {
+            reply(stopped);
+        }
+    }
+
+
+    /**
+     * 设置采样间隔
+     * 
+     * @param interval采样间隔(100ms)，为-1时参数格式错误
+     */
+    private void setInterval(int interval)
+    {
+        if (interval <= 0)
+        {
+            System.err.println("Invalid interval");
+            return;
+        }
+        this.interval = 100L * interval;
+        task.setInterval(this.interval);
+    }
+
+    /**
+     * 获取采样间隔
+     * @return采样间隔
+     */
+    public long getInterval()
+    {
+        return interval;
+    }
+
+
+    /**
+     * 获取当前的模拟器数据发送模块
+     * @return 模拟器数据发送模块
+     */
+    public Simulation_Task getTask()
+    {
+        return task;
+    }
+
+
+    /**
+     * 打开模拟器（打开模拟器数据发送模块） 该方法会返回一个模拟器数据发送模块，方便主程序对当前模块的更新
+     * 
+     * @return 模拟器数据发送模块
+     */
+    private Simulation_Task turnOn()
+    {
+        if (!task.getRunningState())
+        {
+            task = task.renew(interval);
+            task.start();
+        }
+        else
+        {
+            reply(running);
+        }
+        return task;
+    }
+
+
+    /**
+     * 更改模特率。正在发送时先暂停数据发送模块并等待已发出的数据写完，更改波特率后从下一条记录接着发送，
+     * 中断的时间只有排空发送缓冲区的时间；不重新打开数据文件，也不会重复发送已经发出的记录
+     * 
+     * @param rate
+     *            波特率，为-1时参数格式错误
+     * @return 模拟器数据发送模块（不变）
+     */
+    private Simulation_Task changeRate(int rate)
+    {
+        if (rate <= 0)
+        {
+            System.err.println("Invalid baudrate");
+            return task;
+        }
+        boolean sending = task.getRunningState();
+        long start = System.nanoTime();
+        if (sending)
+        {
+            task.hold();
+        }
+        try
+        {
+            reply(NEWLINE);
+            PortWriter writer = SerialPortManager.getWriter(port);
+            if (writer != null && !writer.drain(DRAIN_TIMEOUT))
+            {
+                System.err.println(sensorName + ": output not drained in " + DRAIN_TIMEOUT
+                    + " ms, changing baudrate anyway");
+            }
+
+            System.out.println("BaudRate before: " + port.getBaudRate());
+            SerialPortManager.changeBuadeRate(rate, port);
+            System.out.println("BaudRate after: " + port.getBaudRate());
+        }
+        catch (UnsupportedCommOperationException e)
+        {
+
+            System.err.println("change baudrate error");
+        }
+        finally
+        {
+            if (sending)
+            {
+                task.resume();
+                System.out.println(sensorName + " paused " + (System.nanoTime() - start) / 1000000
+                    + " ms for baudrate change");
+            }
+        }
+        return task;
+    }
+}
@@ -0,0 +1,647 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import Sensor.BinaryFraming;
+import Sensor.FixedRateClock.LatePolicy;
+import Sensor.RecordTimeline;
+import Sensor.RecordTemplate;
+import gnu.io.SerialPort;
+import utils.PortWriter.Overflow;
+
+/**
+ * SensorConfig 单个模拟传感器的配置，对应配置文件中以传感器id为前缀的一组参数，
+ * 与命令行模式的参数一一对应：串口号，模拟器名称，数据文件名称，波特率，文件类别，采样间隔
+ *
+ * @author Yibing Zhang
+ */
+public class SensorConfig
+{
+    public static final String PLAYBACK_STREAM = "stream";// 逐行读取文件回放
+    public static final String PLAYBACK_MAPPED = "mapped";// 内存映射并建立行索引回放
+    public static final String PLAYBACK_FOLLOW = "follow";// 跟随不断追加的文件发送新行
+    public static final String ENCODING_RAW    = "raw";   // 二进制记录原样发送
+    public static final String ENCODING_HEX    = "hex";   // 二进制记录编码为16进制字符发送
+
+    public static final String TIMING_INTERVAL = "interval";// 按采样间隔发送
+    public static final String TIMING_RECORDED = "recorded";// 按记录中的时间戳间隔发送
+
+    private String        id;             // 配置文件中的传感器id
+    private String        portName;       // 串口号
+    private String        sensorName;     // 模拟器名称
+    private String        fileName;       // 数据文件名称
+    private int           baudRate;       // 波特率
+    private int           fileType;       // 文件类别：1为非2进制文件 2 为2进制文件 3 为按模板生成数据
+    private long          interval;       // 采样间隔(ms)
+    private boolean       autoStart;      // 启动后是否立即开始发送数据
+    private String        playback;       // 非二进制文件的回放方式
+    private String        prefix;         // 非二进制文件每条记录的前缀
+    private String        suffix;         // 非二进制文件每条记录的后缀
+    private LatePolicy    latePolicy;     // 发送落后至少一个周期时的处理方式
+    private boolean       wirePacing;     // 是否按串口真实的字符速率发送
+    private BinaryFraming binaryFraming;  // 二进制文件的记录划分方式
+    private String        binaryEncoding; // 二进制记录的发送编码
+    private String        commandFile;    // 命令配置文件，为null时只有内置命令
+    private String        template;       // fileType 3的记录模板
+    private String        captureFile;    // 会话记录文件，为null时不记录
+    private String        replayFile;     // 回放的会话记录文件，为null时不回放
+    private double        replaySpeed;    // 回放加速倍数，无穷大表示尽快
+    private String        timing;         // 发送时间的依据
+    private int           timeField;      // 时间戳所在的字段，从1开始
+    private String        timeDelimiters; // 字段分隔符
+    private String        timeFormat;     // 时间戳格式
+    private double        speed;          // 按时间戳发送时的加速倍数
+    private boolean       followFromStart;// 跟随文件时是否先发送已有的行
+    private List<String>  mirrors;        // 同时接收同一数据的其他串口
+    private int           flowControl;    // 串口的流控方式（SerialPort.FLOWCONTROL_*）
+    private Overflow      overflow;       // 待发送缓冲区已满时对数据记录的处理方式
+
+
+    /**
+     * Constructor 用于直接构造传感器配置（命令行模式）
+     *
+     * @param portName
+     *            串口号
+     * @param sensorName
+     *            模拟器名称
+     * @param fileName
+     *            数据文件名称
+     * @param baudRate
+     *            波特率
+     * @param fileType
+     *            文件类别
+     * @param interval
+     *            采样间隔
+     */
+    public SensorConfig(String portName, String sensorName, String fileName, int baudRate, int fileType,
+        long interval)
+    {
+        this.id = sensorName;
+        this.portName = portName;
+        this.sensorName = sensorName;
+        this.fileName = fileName;
+        this.baudRate = baudRate;
+        this.fileType = fileType;
+        this.interval = interval;
+        this.autoStart = false;
+        this.playback = PLAYBACK_STREAM;
+        this.prefix = ">";
+        this.suffix = "\n";
+        this.latePolicy = LatePolicy.SKIP;
+        this.wirePacing = false;
+        this.binaryFraming = BinaryFraming.byteWise();
+        this.binaryEncoding = ENCODING_RAW;
+        this.commandFile = null;
+        this.template = null;
+        this.captureFile = null;
+        this.replayFile = null;
+        this.replaySpeed = 1;
+        this.timing = TIMING_INTERVAL;
+        this.timeField = 1;
+        this.timeDelimiters = " \t,;";
+        this.timeFormat = RecordTimeline.FORMAT_SECONDS;
+        this.speed = 1;
+        this.followFromStart = false;
+        this.mirrors = Collections.emptyList();
+        this.flowControl = SerialPort.FLOWCONTROL_NONE;
+        this.overflow = Overflow.BLOCK;
+    }
+
+
+    /**
+     * 从配置文件中读取id对应的传感器配置
+     *
+     * @param id
+     *            传感器id
+     * @param props
+     *            配置文件内容
+     * @throws IllegalArgumentException
+     *             缺少必填参数或参数格式错误
+     */
+    SensorConfig(String id, Properties props)
+    {
+        this.id = id;
+        this.portName = required(props, id, "port");
+        this.sensorName = props.getProperty(id + ".name", id).trim();
+        this.baudRate = parseInt(props, id, "baudRate", "9600");
+        this.fileType = parseInt(props, id, "fileType", "1");
+        // 按模板生成数据时不需要数据文件
+        this.fileName = fileType == 3 ? props.getProperty(id + ".file") : required(props, id, "file");
+        this.interval = parseInt(props, id, "interval", "300");
+        this.autoStart = Boolean.parseBoolean(props.getProperty(id + ".autoStart", "false").trim());
+        this.playback = props.getProperty(id + ".playback", PLAYBACK_STREAM).trim();
+        // 前后缀不去掉空白，换行等可用properties转义（如\r\n）
+        this.prefix = props.getProperty(id + ".prefix", ">");
+        this.suffix = props.getProperty(id + ".suffix", "\n");
+        this.latePolicy = LatePolicy.parse(props.getProperty(id + ".latePolicy", "skip").trim());
+        this.wirePacing = Boolean.parseBoolean(props.getProperty(id + ".wirePacing", "false").trim());
+        this.binaryFraming = parseFraming(props, id);
+        this.binaryEncoding = props.getProperty(id + ".binaryEncoding", ENCODING_RAW).trim();
+        String commands = props.getProperty(id + ".commands", "").trim();
+        this.commandFile = commands.isEmpty() ? null : commands;
+        this.template = props.getProperty(id + ".template");
+        String capture = props.getProperty(id + ".capture", "").trim();
+        this.captureFile = capture.isEmpty() ? null : capture;
+        String replay = props.getProperty(id + ".replay", "").trim();
+        this.replayFile = replay.isEmpty() ? null : replay;
+        this.replaySpeed = parseSpeed(props.getProperty(id + ".replaySpeed", "1").trim(), id);
+        this.timing = props.getProperty(id + ".timing", TIMING_INTERVAL).trim();
+        this.timeField = parseInt(props, id, "timestampField", "1");
+        // 分隔符不去掉空白
+        this.timeDelimiters = props.getProperty(id + ".timestampDelimiters", " \t,;");
+        this.timeFormat = props.getProperty(id + ".timestampFormat", RecordTimeline.FORMAT_SECONDS).trim();
+        this.speed = parseDouble(props, id, "speed", "1");
+        String followFrom = props.getProperty(id + ".followFrom", "end").trim();
+        this.followFromStart = followFrom.equals("start");
+        this.mirrors = parseList(props.getProperty(id + ".mirrors", ""));
+        this.flowControl = parseFlowControl(props.getProperty(id + ".flowControl", "none").trim(), id);
+        this.overflow = Overflow.parse(props.getProperty(id + ".overflow", "block").trim());
+        if (!followFrom.equals("start") && !followFrom.equals("end"))
+        {
+            throw new IllegalArgumentException(id + ".followFrom must be start or end");
+        }
+        if (!ENCODING_RAW.equals(binaryEncoding) && !ENCODING_HEX.equals(binaryEncoding))
+        {
+            throw new IllegalArgumentException(id + ".binaryEncoding must be " + ENCODING_RAW + " or " + ENCODING_HEX);
+        }
+        if (fileType != 1 && fileType != 2 && fileType != 3)
+        {
+            throw new IllegalArgumentException(id + ".fileType must be 1, 2 or 3");
+        }
+        if (fileType == 3)
+        {
+            if (template == null)
+            {
+                throw new IllegalArgumentException("Missing " + id + ".template");
+            }
+            try
+            {
+                RecordTemplate.parse(template);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException(id + ".template: " + e.getMessage());
+            }
+        }
+        if (!PLAYBACK_STREAM.equals(playback) && !PLAYBACK_MAPPED.equals(playback) && !PLAYBACK_FOLLOW.equals(playback))
+        {
+            throw new IllegalArgumentException(id + ".playback must be " + PLAYBACK_STREAM + ", " + PLAYBACK_MAPPED
+                + " or " + PLAYBACK_FOLLOW);
+        }
+        if (!PLAYBACK_STREAM.equals(playback) && fileType != 1)
+        {
+            throw new IllegalArgumentException(id + ".playback=" + playback + " requires fileType 1");
+        }
+        if (interval <= 0)
+        {
+            throw new IllegalArgumentException(id + ".interval must be positive");
+        }
+        if (!TIMING_INTERVAL.equals(timing) && !TIMING_RECORDED.equals(timing))
+        {
+            throw new IllegalArgumentException(id + ".timing must be " + TIMING_INTERVAL + " or " + TIMING_RECORDED);
+        }
+        if (TIMING_RECORDED.equals(timing))
+        {
+            if (fileType != 1 || isFollow())
+            {
+                throw new IllegalArgumentException(id + ".timing=" + TIMING_RECORDED
+                    + " requires fileType 1 and playback " + PLAYBACK_STREAM + " or " + PLAYBACK_MAPPED);
+            }
+            if (timeField <= 0)
+            {
+                throw new IllegalArgumentException(id + ".timestampField must be positive");
+            }
+            if (timeDelimiters.isEmpty())
+            {
+                throw new IllegalArgumentException(id + ".timestampDelimiters must not be empty");
+            }
+            try
+            {
+                RecordTimeline.checkFormat(timeFormat);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("Invalid " + id + ".timestampFormat: " + e.getMessage());
+            }
+        }
+        if (isCompressed())
+        {
+            boolean streamed = fileType == 1 ? PLAYBACK_STREAM.equals(playback) && !isRecordedTiming()
+                : fileType == 2 && binaryFraming.getType() == BinaryFraming.Type.BYTE;
+            if (!streamed)
+            {
+                throw new IllegalArgumentException(id + ": a .gz file can only be played back with fileType 1, playback "
+                    + PLAYBACK_STREAM + " and timing " + TIMING_INTERVAL + ", or fileType 2 with binaryFraming byte");
+            }
+        }
+        if (!(speed > 0) || Double.isInfinite(speed))
+        {
+            throw new IllegalArgumentException(id + ".speed must be positive");
+        }
+    }
+
+
+    /**
+     * 解析逗号分隔的列表，忽略空项
+     */
+    private static List<String> parseList(String value)
+    {
+        List<String> list = new ArrayList<String>();
+        for (String item : value.split(","))
+        {
+            if (!item.trim().isEmpty())
+            {
+                list.add(item.trim());
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+
+    /**
+     * 解析流控方式：none，rtscts（硬件流控），xonxoff（软件流控）
+     */
+    private static int parseFlowControl(String value, String id)
+    {
+        switch (value)
+        {
+            case "none":
+                return SerialPort.FLOWCONTROL_NONE;
+            case "rtscts":
+                return SerialPort.FLOWCONTROL_RTSCTS_IN | SerialPort.FLOWCONTROL_RTSCTS_OUT;
+            case "xonxoff":
+                return SerialPort.FLOWCONTROL_XONXOFF_IN | SerialPort.FLOWCONTROL_XONXOFF_OUT;
+            default:
+                throw new IllegalArgumentException(id + ".flowControl must be none, rtscts or xonxoff");
+        }
+    }
+
+
+    /**
+     * 读取二进制文件的记录划分方式：binaryFraming=byte|fixed|lengthPrefixed|sync，
+     * fixed需要recordLength；lengthPrefixed可设置lengthBytes(1|2|4，缺省2)，lengthOrder(big|little，缺省big)，
+     * lengthIncludesHeader(缺省false)；sync需要syncWord（16进制，如7F7F）
+     */
+    private static BinaryFraming parseFraming(Properties props, String id)
+    {
+        String framing = props.getProperty(id + ".binaryFraming", "byte").trim();
+        switch (framing)
+        {
+            case "byte":
+                return BinaryFraming.byteWise();
+            case "fixed":
+                int recordLength = parseInt(props, id, "recordLength", required(props, id, "recordLength"));
+                if (recordLength <= 0)
+                {
+                    throw new IllegalArgumentException(id + ".recordLength must be positive");
+                }
+                return BinaryFraming.fixed(recordLength);
+            case "lengthPrefixed":
+                int lengthBytes = parseInt(props, id, "lengthBytes", "2");
+                if (lengthBytes != 1 && lengthBytes != 2 && lengthBytes != 4)
+                {
+                    throw new IllegalArgumentException(id + ".lengthBytes must be 1, 2 or 4");
+                }
+                String order = props.getProperty(id + ".lengthOrder", "big").trim();
+                if (!order.equals("big") && !order.equals("little"))
+                {
+                    throw new IllegalArgumentException(id + ".lengthOrder must be big or little");
+                }
+                return BinaryFraming.lengthPrefixed(lengthBytes, order.equals("big"),
+                    Boolean.parseBoolean(props.getProperty(id + ".lengthIncludesHeader", "false").trim()));
+            case "sync":
+                String syncWord = required(props, id, "syncWord");
+                try
+                {
+                    return BinaryFraming.sync(BinaryFraming.parseHex(syncWord));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new IllegalArgumentException("Invalid " + id + ".syncWord: " + syncWord);
+                }
+            default:
+                throw new IllegalArgumentException(id + ".binaryFraming must be byte, fixed, lengthPrefixed or sync");
+        }
+    }
+
+
+    /**
+     * 读取回放加速倍数：正数，或max（尽快）
+     */
+    private static double parseSpeed(String value, String id)
+    {
+        if (value.equals("max"))
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        double speed;
+        try
+        {
+            speed = Double.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid " + id + ".replaySpeed: " + value);
+        }
+        if (!(speed > 0) || Double.isInfinite(speed))
+        {
+            throw new IllegalArgumentException(id + ".replaySpeed must be a positive number or max");
+        }
+        return speed;
+    }
+
+
+    private static double parseDouble(Properties props, String id, String key, String def)
+    {
+        String value = props.getProperty(id + "." + key, def).trim();
+        try
+        {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid " + id + "." + key + ": " + value);
+        }
+    }
+
+
+    private static String required(Properties props, String id, String key)
+    {
+        String value = props.getProperty(id + "." + key);
+        if (value == null || value.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("Missing " + id + "." + key);
+        }
+        return value.trim();
+    }
+
+
+    private static int parseInt(Properties props, String id, String key, String def)
+    {
+        String value = props.getProperty(id + "." + key, def).trim();
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid " + id + "." + key + ": " + value);
+        }
+    }
+
+
+    public String getId()
+    {
+        return id;
+    }
+
+
+    public String getPortName()
+    {
+        return portName;
+    }
+
+
+    public String getSensorName()
+    {
+        return sensorName;
+    }
+
+
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+
+    public int getBaudRate()
+    {
+        return baudRate;
+    }
+
+
+    public int getFileType()
+    {
+        return fileType;
+    }
+
+
+    public long getInterval()
+    {
+        return interval;
+    }
+
+
+    public boolean isAutoStart()
+    {
+        return autoStart;
+    }
+
+
+    public String getPlayback()
+    {
+        return playback;
+    }
+
+
+    public String getPrefix()
+    {
+        return prefix;
+    }
+
+
+    public String getSuffix()
+    {
+        return suffix;
+    }
+
+
+    public LatePolicy getLatePolicy()
+    {
+        return latePolicy;
+    }
+
+
+    public boolean isWirePacing()
+    {
+        return wirePacing;
+    }
+
+
+    public BinaryFraming getBinaryFraming()
+    {
+        return binaryFraming;
+    }
+
+
+    public String getBinaryEncoding()
+    {
+        return binaryEncoding;
+    }
+
+
+    /**
+     * 获取命令配置文件
+     *
+     * @return 没有配置时为null
+     */
+    public String getCommandFile()
+    {
+        return commandFile;
+    }
+
+
+    /**
+     * 获取fileType 3的记录模板
+     *
+     * @return 没有配置时为null
+     */
+    public String getTemplate()
+    {
+        return template;
+    }
+
+
+    /**
+     * 获取会话记录文件
+     *
+     * @return 没有配置时为null
+     */
+    public String getCaptureFile()
+    {
+        return captureFile;
+    }
+
+
+    /**
+     * 获取回放的会话记录文件
+     *
+     * @return 没有配置时为null
+     */
+    public String getReplayFile()
+    {
+        return replayFile;
+    }
+
+
+    /**
+     * 获取回放加速倍数
+     *
+     * @return 1为实时，Double.POSITIVE_INFINITY为尽快
+     */
+    public double getReplaySpeed()
+    {
+        return replaySpeed;
+    }
+
+
+    /**
+     * 获取发送时间的依据
+     *
+     * @return TIMING_INTERVAL或TIMING_RECORDED
+     */
+    public String getTiming()
+    {
+        return timing;
+    }
+
+
+    /**
+     * 是否按记录中的时间戳间隔发送
+     */
+    public boolean isRecordedTiming()
+    {
+        return TIMING_RECORDED.equals(timing);
+    }
+
+
+    public int getTimestampField()
+    {
+        return timeField;
+    }
+
+
+    public String getTimestampDelimiters()
+    {
+        return timeDelimiters;
+    }
+
+
+    public String getTimestampFormat()
+    {
+        return timeFormat;
+    }
+
+
+    /**
+     * 获取按时间戳发送时的加速倍数
+     *
+     * @return 1为按原来的节奏
+     */
+    public double getSpeed()
+    {
+        return speed;
+    }
+
+
+    /**
+     * 是否跟随不断追加的文件发送新行（playback=follow）
+     */
+    public boolean isFollow()
+    {
+        return PLAYBACK_FOLLOW.equals(playback);
+    }
+
+
+    /**
+     * 跟随文件时是否先发送文件中已有的行
+     *
+     * @return followFrom=start时为true，缺省（end）只发送之后追加的行
+     */
+    public boolean isFollowFromStart()
+    {
+        return followFromStart;
+    }
+
+
+    /**
+     * 获取同时接收同一数据的其他串口（mirrors，逗号分隔）。这些串口只发送数据记录，不接收命令
+     *
+     * @return 串口号列表，没有时为空
+     */
+    public List<String> getMirrors()
+    {
+        return mirrors;
+    }
+
+
+    /**
+     * 获取串口的流控方式（flowControl=none|rtscts|xonxoff），mirrors中的串口使用相同的方式
+     *
+     * @return SerialPort.FLOWCONTROL_*的组合
+     */
+    public int getFlowControl()
+    {
+        return flowControl;
+    }
+
+
+    /**
+     * 获取待发送缓冲区已满时对数据记录的处理方式（overflow=block|dropOldest|dropNewest|coalesce）
+     */
+    public Overflow getOverflow()
+    {
+        return overflow;
+    }
+
+
+    /**
+     * 数据文件是否为gzip压缩文件（以.gz结尾），fileType 3不读取数据文件
+     */
+    public boolean isCompressed()
+    {
+        return fileType != 3 && fileName != null && fileName.toLowerCase().endsWith(".gz");
+    }
+}
@@ -1,301 +1,714 @@
-package utils;
-
-import gnu.io.CommPort;
-import gnu.io.CommPortIdentifier;
-import gnu.io.NoSuchPortException;
-import gnu.io.PortInUseException;
-import gnu.io.SerialPort;
-import gnu.io.SerialPortEvent;
-import gnu.io.SerialPortEventListener;
-import gnu.io.UnsupportedCommOperationException;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.TooManyListenersException;
-/**
- * SerialPort Manager 基于RXTXcomm的串口管理程序，用于发现串口，打开串口， 关闭串口，
-   *   读取串口数据，发送数据至串口，更改串口波特率，添加事件监听器的功能。
-   *  借鉴：https://blog.csdn.net/yy339452689/article/details/77772421
- * @author Yibing Zhang
- *
- */
-public class SerialPortManager
-{
-
-    /**
-               * 查找所有可用端口
-     * 
-     * @return 可用端口名称列表
-     */
-    @SuppressWarnings("unchecked")
-    public static final ArrayList<String> findPort()
-    {
-        // 获得当前所有可用串口
-        Enumeration<CommPortIdentifier> portList = CommPortIdentifier.getPortIdentifiers();
-        ArrayList<String> portNameList = new ArrayList<String>();
-        // 将可用串口名添加到List并返回该List
-        while (portList.hasMoreElements())
-        {
-            String portName = portList.nextElement().getName();
-            portNameList.add(portName);
-        }
-        return portNameList;
-    }
-
-
-    /**
-               *    打开串口
-     * @param portName 串口名称
-     * @param baudrate 波特率
-     * @return 串口对象
-     * @throws SerialPortParameterFailure 设置串口参数失败
-     * @throws UnsupportedCommOperationException
-     * @throws NoSuchPortException
-     * @throws PortInUseException
-     */
-    public final static SerialPort openPort(String portName, int baudrate)
-    {
-        try
-        {
-            // 通过端口名识别端口
-            CommPortIdentifier portIdentifier = CommPortIdentifier.getPortIdentifier(portName);
-            // 打开端口，设置端口名与timeout（打开操作的超时时间）
-            CommPort commPort = portIdentifier.open(portName, 2000);
-            // 判断是不是串口
-            if (commPort instanceof SerialPort)
-            {
-                SerialPort serialPort = (SerialPort)commPort;
-                // openPortList.add(serialPort);
-                try
-                {
-                    // 设置串口的波特率等参数
-                    serialPort.setSerialPortParams(baudrate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1,
-                        SerialPort.PARITY_NONE);
-
-                }
-                catch (UnsupportedCommOperationException e)
-                {
-                    System.err.println();
-                }
-                return serialPort;
-            }
-            else
-            {
-                // 不是串口
-                System.err.println("Not a instance of port");
-            }
-        }
-        catch (NoSuchPortException e1)
-        {
-            System.err.println("No such port exists");
-        }
-        catch (PortInUseException e2)
-        {
-            System.err.println("This port is in use");
-        }
-        return null;
-    }
-
-    /**
-             * 更改串口
-    * @param baudRate 波特率
-    * @param port 串口
-    * @throws UnsupportedCommOperationException
-    */
-    public static void changeBuadeRate(int baudRate, SerialPort port) throws UnsupportedCommOperationException
-    {
-        port.setSerialPortParams(baudRate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
-    }
-
-
-    /**
-     * 关闭串口
-     * 
-     * @param serialport
-     *            待关闭的串口对象
-     */
-    public static void closePort(SerialPort port)
-    {
-        if (port != null)
-        {
-            System.out.println("closing port " + port.getName());
-            port.close();
-        }
-    }
-
-
-    /**
-               * 向串口发送数据
-     * 
-     * @param serialPort 串口对象
-     * @param order  待发送数据
-     * @throws SendDataToSerialPortFailure
-     * @throws SerialPortOutputStreamCloseFailure
-     */
-    public static void sendToPort(SerialPort serialPort, byte[] order)
-    {
-        OutputStream out = null;
-        try
-        {
-            out = serialPort.getOutputStream();
-            out.write(order);
-            out.flush();
-        }
-        catch (IOException e)
-        {
-            System.err.println("Fail to send the data");
-            closePort(serialPort);
-        }
-        finally
-        {
-            try
-            {
-                if (out != null)
-                {
-                    out.close();
-                    out = null;
-                }
-            }
-            catch (IOException e)
-            {
-                System.err.println("Output Stream has been closed");
-            }
-        }
-    }
-
-
-    /**
-     * 从串口读取数据
-     * 
-     * @param serialPort当前已建立连接的SerialPort对象
-     * @return 读取到的数据
-     * @throws ReadDataFromSerialPortFailure 从串口读取数据时出错
-     * @throws SerialPortInputStreamCloseFailure 关闭串口对象输入流出错
-     */
-    public static byte[] readFromPort(SerialPort serialPort)
-    {
-        InputStream in = null;
-        byte[] bytes = {};
-        try {
-            in = serialPort.getInputStream();
-            //一次读取一个byte
-            byte[] readBuffer = new byte[1];
-            int bytesNum = in.read(readBuffer);
-            while (bytesNum > 0) {
-                bytes = ArrayUtils.concat(bytes, readBuffer);
-                bytesNum = in.read(readBuffer);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (in != null) {
-                    in.close();
-                    in = null;
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return bytes;
-    }
-
-
-    /**
-               * 添加监听器
-     * 
-     * @param port 串口对象
-     * @param listener 串口监听器
-     * @throws TooManyListeners 监听类对象过多
-     */
-    public static void addListener(SerialPort port, DataAvailableListener listener)
-    {
-        try
-        {
-            // 给串口添加监听器
-            port.addEventListener(new SerialPortListener(listener));
-            // 设置当有数据到达时唤醒监听接收线程
-            port.notifyOnDataAvailable(true);
-            // 设置当通信中断时唤醒中断线程
-            port.notifyOnBreakInterrupt(true);
-        }
-        catch (TooManyListenersException e)
-        {
-            System.err.println("Already have a listener");
-        }
-    }
-
-    /**
-     * SerialPortListener 自定义监听器,implements SerialPortEventListener interface
-                * 借鉴：https://docs.oracle.com/cd/E17802_01/products/products/javacomm/reference/api/javax/comm/SerialPortEventListener.html
-     * @author Yibing Zhang
-     *
-     */
-    public static class SerialPortListener implements SerialPortEventListener
-    {
-        private DataAvailableListener mDataAvailableListener;
-        
-        public SerialPortListener(DataAvailableListener mDataAvailableListener)
-        {
-            this.mDataAvailableListener = mDataAvailableListener;
-        }
-
-        public void serialEvent(SerialPortEvent serialPortEvent)
-        {
-            // https://docs.oracle.com/cd/E17802_01/products/products/javacomm/reference/api/javax/comm/SerialPortEvent.html
-            switch (serialPortEvent.getEventType())
-            {
-                case SerialPortEvent.DATA_AVAILABLE: // 1.data available at the
-                                                     // serial port
-                    if (mDataAvailableListener != null)
-                    {
-                        mDataAvailableListener.dataAvailable();
-                    }
-                    break;
-
-                case SerialPortEvent.OUTPUT_BUFFER_EMPTY: // 2.Output buffer is
-                                                          // empty.
-                    break;
-
-                case SerialPortEvent.CTS: // 3.Clear to send.
-                    break;
-
-                case SerialPortEvent.DSR: // 4.Data set ready.
-                    break;
-
-                case SerialPortEvent.RI: // 5.Ring indicator.
-                    break;
-
-                case SerialPortEvent.CD: // 6.Carrier detect.
-                    break;
-
-                case SerialPortEvent.OE: // 7.Overrun error.
-                    break;
-
-                case SerialPortEvent.PE: // 8.Parity error.
-                    break;
-
-                case SerialPortEvent.FE: // 9.Framing error.
-                    break;
-
-                case SerialPortEvent.BI: // 10. Break interrupt.
-                    System.err.println("Break interrupt");
-                    break;
-                default:
-                    break;
-            }
-        }
-       
-    }
-
-
-    /**
-     * interface for the data available listener
-     */
-    public interface DataAvailableListener
-    {
-        void dataAvailable();
-    }
-}
+package utils;
+
+import gnu.io.CommPort;
+import gnu.io.NoSuchPortException;
+import gnu.io.PortInUseException;
+import gnu.io.SerialPort;
+import gnu.io.SerialPortEvent;
+import gnu.io.SerialPortEventListener;
+import gnu.io.UnsupportedCommOperationException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TooManyListenersException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+/**
+ * SerialPort Manager 基于RXTXcomm的串口管理程序，用于发现串口，打开串口， 关闭串口，
+   *   读取串口数据，发送数据至串口，更改串口波特率，添加事件监听器的功能。
+   *  借鉴：https://blog.csdn.net/yy339452689/article/details/77772421
+ * @author Yibing Zhang
+ *
+ */
+public class SerialPortManager
+{
+    private static final int READ_BUFFER_SIZE = 1024;     // 读取缓冲区大小
+    private static final int WRITER_CAPACITY  = 64 * 1024;// 每个串口待发送缓冲区容量
+    private static final int OPEN_TIMEOUT     = 2000;     // 串口被占用时等待释放的最长时间(ms)
+    private static final int OPEN_MARGIN      = 1000;     // 并行打开时，在等待释放之外再等待驱动的时间(ms)
+
+    // 各串口的发送线程
+    private static final ConcurrentHashMap<SerialPort, PortWriter> writers = new ConcurrentHashMap<SerialPort, PortWriter>();
+    // 串口的来源
+    private static volatile PortProvider provider = new RxtxPortProvider();
+    // 最近一次列出的串口，为null时还没有列出过
+    private static volatile List<String> inventory;
+
+    /**
+     * 更换串口的来源（例如测试时使用模拟的串口），同时清除缓存的串口列表
+     *
+     * @param portProvider 串口的来源
+     */
+    public static void setPortProvider(PortProvider portProvider)
+    {
+        provider = portProvider;
+        inventory = null;
+    }
+
+    /**
+               * 查找所有可用端口，结果同时保存为缓存的串口列表
+     * 
+     * @return 可用端口名称列表
+     */
+    public static final ArrayList<String> findPort()
+    {
+        // 获得当前所有可用串口
+        ArrayList<String> portNameList = new ArrayList<String>(provider.listPorts());
+        inventory = Collections.unmodifiableList(new ArrayList<String>(portNameList));
+        return portNameList;
+    }
+
+
+    /**
+     * 获取缓存的串口列表，还没有列出过时列出一次。列表缓存之后，openPort对不在列表中的串口立即返回失败，
+     * 不再逐个查找设备
+     * 
+     * @return 可用端口名称列表
+     */
+    public static List<String> getInventory()
+    {
+        List<String> cached = inventory;
+        return cached != null ? cached : findPort();
+    }
+
+
+    /**
+               *    打开串口
+     * @param portName 串口名称
+     * @param baudrate 波特率
+     * @return 串口对象
+     * @throws SerialPortParameterFailure 设置串口参数失败
+     * @throws UnsupportedCommOperationException
+     * @throws NoSuchPortException
+     * @throws PortInUseException
+     */
+    public final static SerialPort openPort(String portName, int baudrate)
+    {
+        return openPort(portName, baudrate, OPEN_TIMEOUT, null);
+    }
+
+
+    private static SerialPort openPort(String portName, int baudrate, int timeout, ThreadFactory writerThreads)
+    {
+        if (NetworkSerialPort.isNetworkName(portName))
+        {
+            return openNetworkPort(portName, baudrate, writerThreads);
+        }
+        List<String> cached = inventory;
+        if (cached != null && !cached.contains(portName))
+        {
+            System.err.println("No such port exists: " + portName);
+            return null;
+        }
+        try
+        {
+            // 打开端口，设置端口名与timeout（打开操作的超时时间）
+            CommPort commPort = provider.open(portName, portName, timeout);
+            // 判断是不是串口
+            if (commPort instanceof SerialPort)
+            {
+                SerialPort serialPort = (SerialPort)commPort;
+                // openPortList.add(serialPort);
+                try
+                {
+                    // 设置串口的波特率等参数
+                    serialPort.setSerialPortParams(baudrate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1,
+                        SerialPort.PARITY_NONE);
+
+                }
+                catch (UnsupportedCommOperationException e)
+                {
+                    System.err.println();
+                }
+                attachWriter(serialPort, writerThreads);
+                return serialPort;
+            }
+            else
+            {
+                // 不是串口
+                System.err.println("Not a instance of port");
+            }
+        }
+        catch (NoSuchPortException e1)
+        {
+            System.err.println("No such port exists: " + portName);
+        }
+        catch (PortInUseException e2)
+        {
+            System.err.println("This port is in use: " + portName);
+        }
+        return null;
+    }
+
+
+    /**
+     * 同时打开多个串口：先列出一次本机的串口，再每个串口一个线程并行打开，总耗时约为最慢的一个串口。
+     * 超过timeout（加上等待驱动的余量）仍未打开的串口算作失败，之后打开成功时自动关闭。每个失败的串口都会打印原因
+     * 
+     * @param ports 串口名称和波特率
+     * @param timeout 每个串口被占用时等待释放的最长时间(ms)
+     * @return 打开成功的串口，按ports的顺序
+     */
+    public static Map<String, SerialPort> openPorts(Map<String, Integer> ports, int timeout)
+    {
+        return openPorts(ports, timeout, null);
+    }
+
+
+    /**
+     * 同时打开多个串口，每个串口的发送线程由writerThreads创建（例如虚拟线程）
+     * 
+     * @param ports 串口名称和波特率
+     * @param timeout 每个串口被占用时等待释放的最长时间(ms)
+     * @param writerThreads 发送线程的线程工厂，为null时使用平台守护线程
+     * @return 打开成功的串口，按ports的顺序
+     */
+    public static Map<String, SerialPort> openPorts(Map<String, Integer> ports, int timeout,
+        ThreadFactory writerThreads)
+    {
+        Map<String, SerialPort> opened = new LinkedHashMap<String, SerialPort>();
+        if (ports.isEmpty())
+        {
+            return opened;
+        }
+        // 只有网络端口时不需要列出本机的串口（也不需要加载RXTX的本地库）
+        for (String name : ports.keySet())
+        {
+            if (!NetworkSerialPort.isNetworkName(name))
+            {
+                getInventory();
+                break;
+            }
+        }
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(ports.size(), r -> {
+            Thread t = new Thread(r, "port-open-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Map<String, Opening> openings = new LinkedHashMap<String, Opening>();
+        for (Map.Entry<String, Integer> e : ports.entrySet())
+        {
+            Opening opening = new Opening(e.getKey(), e.getValue(), timeout, writerThreads);
+            opening.future = pool.submit(opening::open);
+            openings.put(e.getKey(), opening);
+        }
+        pool.shutdown();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout + OPEN_MARGIN);
+        for (Opening opening : openings.values())
+        {
+            SerialPort port = opening.await(deadline);
+            if (port != null)
+            {
+                opened.put(opening.portName, port);
+            }
+        }
+        return opened;
+    }
+
+
+    /**
+     * Opening 并行打开的一个串口，超时后放弃：之后才打开成功的串口由打开线程关闭
+     */
+    private static final class Opening
+    {
+        private final String        portName;     // 串口名称
+        private final int           baudrate;     // 波特率
+        private final int           timeout;      // 等待释放的最长时间(ms)
+        private final ThreadFactory writerThreads;// 发送线程的线程工厂，为null时使用平台线程
+        private Future<?>           future;       // 打开任务
+        private SerialPort          port;         // 打开的串口
+        private boolean             abandoned;    // 已超时放弃
+
+
+        Opening(String portName, int baudrate, int timeout, ThreadFactory writerThreads)
+        {
+            this.portName = portName;
+            this.baudrate = baudrate;
+            this.timeout = timeout;
+            this.writerThreads = writerThreads;
+        }
+
+
+        /**
+         * 在打开线程中执行
+         */
+        void open()
+        {
+            SerialPort result = openPort(portName, baudrate, timeout, writerThreads);
+            synchronized (this)
+            {
+                if (!abandoned)
+                {
+                    port = result;
+                    return;
+                }
+            }
+            if (result != null)
+            {
+                System.err.println(portName + " opened after the timeout, closing it");
+                closePort(result);
+            }
+        }
+
+
+        /**
+         * 等待打开结束
+         *
+         * @param deadline 最晚等到的时间(System.nanoTime)
+         * @return 打开的串口，失败或超时时返回null
+         */
+        SerialPort await(long deadline)
+        {
+            try
+            {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException e)
+            {
+                synchronized (this)
+                {
+                    if (port == null)
+                    {
+                        abandoned = true;
+                        System.err.println("Timed out opening " + portName);
+                        return null;
+                    }
+                }
+            }
+            catch (ExecutionException e)
+            {
+                System.err.println("Fail to open " + portName + ": " + e.getCause());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this)
+            {
+                abandoned = port == null;
+                return port;
+            }
+        }
+    }
+
+    /**
+     * 打开网络串口（tcp:端口，rfc2217:端口，udp:端口），不需要串口硬件
+     * 
+     * @param portName 串口名称
+     * @param baudrate 波特率，用于按线路速率限速
+     * @param writerThreads 发送线程的线程工厂，为null时使用平台线程
+     * @return 串口对象，打开失败时返回null
+     */
+    private static SerialPort openNetworkPort(String portName, int baudrate, ThreadFactory writerThreads)
+    {
+        NetworkSerialPort port;
+        try
+        {
+            port = NetworkSerialPort.open(portName);
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            System.err.println("Fail to open network port " + portName + ": " + e.getMessage());
+            return null;
+        }
+        port.setSerialPortParams(baudrate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        attachWriter(port, writerThreads);
+        System.out.println("Listening on " + port.getProtocol().name().toLowerCase() + " port " + port.getLocalPort());
+        return port;
+    }
+
+    /**
+             * 更改串口
+    * @param baudRate 波特率
+    * @param port 串口
+    * @throws UnsupportedCommOperationException
+    */
+    public static void changeBuadeRate(int baudRate, SerialPort port) throws UnsupportedCommOperationException
+    {
+        port.setSerialPortParams(baudRate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        PortWriter writer = writers.get(port);
+        if (writer != null)
+        {
+            writer.lineParametersChanged();
+        }
+    }
+
+
+    /**
+     * 为串口创建常驻的发送线程，之后该串口的sendToPort都经过它合并发送。openPort会自动调用
+     * 
+     * @param port 串口
+     * @return 该串口的发送线程，打开输出流失败时返回null
+     */
+    public static PortWriter attachWriter(SerialPort port)
+    {
+        return attachWriter(port, null);
+    }
+
+
+    /**
+     * 为串口创建常驻的发送线程，线程由threads创建（例如虚拟线程），串口已有发送线程时直接返回它
+     * 
+     * @param port 串口
+     * @param threads 线程工厂，为null时使用平台守护线程
+     * @return 该串口的发送线程，打开输出流失败时返回null
+     */
+    public static PortWriter attachWriter(SerialPort port, ThreadFactory threads)
+    {
+        PortWriter writer = writers.get(port);
+        if (writer != null)
+        {
+            return writer;
+        }
+        try
+        {
+            writer = new PortWriter(port, WRITER_CAPACITY, threads);
+        }
+        catch (IOException e)
+        {
+            System.err.println("Fail to open the output stream");
+            return null;
+        }
+        PortWriter existing = writers.putIfAbsent(port, writer);
+        if (existing != null)
+        {
+            writer.close();
+            return existing;
+        }
+        return writer;
+    }
+
+
+    /**
+     * 设置串口的流控方式和待发送缓冲区已满时的处理方式，应在addListener之前调用，
+     * 开启流控时addListener同时监听CTS，DSR和OUTPUT_BUFFER_EMPTY事件，对端允许发送后发送线程立即继续
+     * 
+     * @param port 串口
+     * @param flowControl SerialPort.FLOWCONTROL_*的组合
+     * @param overflow 缓冲区已满时的处理方式
+     */
+    public static void setFlowControl(SerialPort port, int flowControl, PortWriter.Overflow overflow)
+    {
+        try
+        {
+            port.setFlowControlMode(flowControl);
+        }
+        catch (UnsupportedCommOperationException e)
+        {
+            System.err.println("Flow control is not supported by " + port.getName());
+        }
+        PortWriter writer = writers.get(port);
+        if (writer != null)
+        {
+            writer.setFlowControl(flowControl);
+            writer.setOverflow(overflow);
+        }
+    }
+
+
+    /**
+     * 获取串口的发送线程
+     * 
+     * @param port 串口
+     * @return 发送线程，没有时返回null
+     */
+    public static PortWriter getWriter(SerialPort port)
+    {
+        return writers.get(port);
+    }
+
+
+    /**
+     * 关闭串口，关闭前先发送完待发送的数据
+     * 
+     * @param serialport
+     *            待关闭的串口对象
+     */
+    public static void closePort(SerialPort port)
+    {
+        if (port != null)
+        {
+            PortWriter writer = writers.remove(port);
+            if (writer != null)
+            {
+                writer.close();
+            }
+            System.out.println("closing port " + port.getName());
+            port.close();
+        }
+    }
+
+
+    /**
+               * 向串口发送命令回复等控制数据，串口有发送线程时排在等待中的数据记录之前优先发送，否则直接写出
+     * 
+     * @param serialPort 串口对象
+     * @param order  待发送数据
+     * @throws SendDataToSerialPortFailure
+     * @throws SerialPortOutputStreamCloseFailure
+     */
+    public static void sendToPort(SerialPort serialPort, byte[] order)
+    {
+        sendToPort(serialPort, order, 0, order.length);
+    }
+
+
+    /**
+               * 向串口发送数据的一部分
+     * 
+     * @param serialPort 串口对象
+     * @param data  数据
+     * @param offset  起始位置
+     * @param length  长度
+     */
+    public static void sendToPort(SerialPort serialPort, byte[] data, int offset, int length)
+    {
+        PortWriter writer = writers.get(serialPort);
+        if (writer != null)
+        {
+            writer.write(data, offset, length);
+            return;
+        }
+        OutputStream out = null;
+        try
+        {
+            out = serialPort.getOutputStream();
+            out.write(data, offset, length);
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Fail to send the data");
+            closePort(serialPort);
+        }
+        finally
+        {
+            try
+            {
+                if (out != null)
+                {
+                    out.close();
+                    out = null;
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Output Stream has been closed");
+            }
+        }
+    }
+
+
+    /**
+     * 向串口发送一条数据记录，不等待：串口有发送线程时待发送缓冲区已满则按其Overflow处理，否则直接写出
+     * 
+     * @param serialPort 串口对象
+     * @param data  数据
+     * @param offset  起始位置
+     * @param length  长度
+     * @return 缓冲区已满且为BLOCK时返回false，记录没有加入，应在PortWriter.awaitSpace()之后重试
+     */
+    public static boolean sendRecord(SerialPort serialPort, byte[] data, int offset, int length)
+    {
+        PortWriter writer = writers.get(serialPort);
+        if (writer != null)
+        {
+            return writer.tryWriteRecord(data, offset, length);
+        }
+        sendToPort(serialPort, data, offset, length);
+        return true;
+    }
+
+
+    /**
+     * 从串口读取数据
+     * 
+     * @param serialPort当前已建立连接的SerialPort对象
+     * @return 读取到的数据
+     * @throws ReadDataFromSerialPortFailure 从串口读取数据时出错
+     * @throws SerialPortInputStreamCloseFailure 关闭串口对象输入流出错
+     */
+    public static byte[] readFromPort(SerialPort serialPort)
+    {
+        InputStream in = null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            in = serialPort.getInputStream();
+            //批量读取，直到没有可读数据
+            byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+            int bytesNum = in.read(readBuffer);
+            while (bytesNum > 0) {
+                bytes.write(readBuffer, 0, bytesNum);
+                bytesNum = in.read(readBuffer);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                    in = null;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+
+    /**
+     * 从串口读取当前可用的数据到调用者提供的缓冲区，不创建新的数组，也不关闭输入流
+     * 
+     * @param serialPort 当前已建立连接的SerialPort对象
+     * @param buffer 接收缓冲区，可重复使用
+     * @return 读取到的字节数，没有数据时为0，出错时为-1
+     */
+    public static int readFromPort(SerialPort serialPort, byte[] buffer)
+    {
+        try
+        {
+            int bytesNum = serialPort.getInputStream().read(buffer, 0, buffer.length);
+            return bytesNum < 0 ? -1 : bytesNum;
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+
+    /**
+               * 添加监听器
+     * 
+     * @param port 串口对象
+     * @param listener 串口监听器
+     * @throws TooManyListeners 监听类对象过多
+     */
+    public static void addListener(SerialPort port, DataAvailableListener listener)
+    {
+        try
+        {
+            // 给串口添加监听器
+            port.addEventListener(new SerialPortListener(port, listener));
+            // 设置当有数据到达时唤醒监听接收线程
+            port.notifyOnDataAvailable(true);
+            // 设置当通信中断时唤醒中断线程
+            port.notifyOnBreakInterrupt(true);
+            // 开启流控时对端允许发送后唤醒发送线程
+            PortWriter writer = writers.get(port);
+            if (writer != null && writer.getFlowControl() != SerialPort.FLOWCONTROL_NONE)
+            {
+                port.notifyOnCTS(true);
+                port.notifyOnDSR(true);
+                port.notifyOnOutputEmpty(true);
+            }
+        }
+        catch (TooManyListenersException e)
+        {
+            System.err.println("Already have a listener");
+        }
+    }
+
+    /**
+     * SerialPortListener 自定义监听器,implements SerialPortEventListener interface
+                * 借鉴：https://docs.oracle.com/cd/E17802_01/products/products/javacomm/reference/api/javax/comm/SerialPortEventListener.html
+     * @author Yibing Zhang
+     *
+     */
+    public static class SerialPortListener implements SerialPortEventListener
+    {
+        private DataAvailableListener mDataAvailableListener;
+        private SerialPort port;
+        
+        public SerialPortListener(DataAvailableListener mDataAvailableListener)
+        {
+            this(null, mDataAvailableListener);
+        }
+
+        public SerialPortListener(SerialPort port, DataAvailableListener mDataAvailableListener)
+        {
+            this.port = port;
+            this.mDataAvailableListener = mDataAvailableListener;
+        }
+
+        public void serialEvent(SerialPortEvent serialPortEvent)
+        {
+            // https://docs.oracle.com/cd/E17802_01/products/products/javacomm/reference/api/javax/comm/SerialPortEvent.html
+            switch (serialPortEvent.getEventType())
+            {
+                case SerialPortEvent.DATA_AVAILABLE: // 1.data available at the
+                                                     // serial port
+                    if (mDataAvailableListener != null)
+                    {
+                        mDataAvailableListener.dataAvailable();
+                    }
+                    break;
+
+                case SerialPortEvent.OUTPUT_BUFFER_EMPTY: // 2.Output buffer is
+                                                          // empty.
+                    PortWriter emptied = port == null ? null : writers.get(port);
+                    if (emptied != null)
+                    {
+                        emptied.outputEmpty();
+                    }
+                    break;
+
+                case SerialPortEvent.CTS: // 3.Clear to send.
+                case SerialPortEvent.DSR: // 4.Data set ready.
+                    PortWriter writer = port == null ? null : writers.get(port);
+                    if (writer != null)
+                    {
+                        writer.flowChanged();
+                    }
+                    break;
+
+                case SerialPortEvent.RI: // 5.Ring indicator.
+                    break;
+
+                case SerialPortEvent.CD: // 6.Carrier detect.
+                    break;
+
+                case SerialPortEvent.OE: // 7.Overrun error.
+                    break;
+
+                case SerialPortEvent.PE: // 8.Parity error.
+                    break;
+
+                case SerialPortEvent.FE: // 9.Framing error.
+                    break;
+
+                case SerialPortEvent.BI: // 10. Break interrupt.
+                    System.err.println("Break interrupt");
+                    break;
+                default:
+                    break;
+            }
+        }
+       
+    }
+
+
+    /**
+     * interface for the data available listener
+     */
+    public interface DataAvailableListener
+    {
+        void dataAvailable();
+    }
+}
@@ -0,0 +1,428 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionLog 模拟传感器会话记录：收到的每条命令，发出的每条数据记录和每条命令回复，连同纳秒时间，
+ * 只追加地写入一个紧凑的二进制文件，用于重现现场问题（见Runner.SessionReplay）。文件格式：
+ *
+ * <pre>
+ * 会话头：'S' 'I' 'M' 'L'，版本(1字节)，开始时间(8字节，epoch毫秒)，传感器名称长度(2字节)，名称(UTF-8)
+ * 条目：  类型(1字节：1命令，2数据记录，3回复)，距上一条目(或会话开始)的纳秒数(varint)，长度(varint)，内容
+ * </pre>
+ *
+ * 同一文件可以追加多个会话，读取时首尾相接。最后一个条目不完整（进程被强行结束）时读取到它之前为止
+ *
+ * @author Yibing Zhang
+ */
+public final class SessionLog
+{
+    public static final int     COMMAND        = 1;                   // 收到的命令（不含CR LF）
+    public static final int     RECORD         = 2;                   // 发出的数据记录
+    public static final int     REPLY          = 3;                   // 发出的命令回复
+
+    private static final byte[] MAGIC          = {'S', 'I', 'M', 'L'};// 会话头标志
+    private static final int    VERSION        = 1;                   // 文件格式版本
+    private static final int    BUFFER_SIZE    = 64 * 1024;           // 读写缓冲区大小
+    private static final long   FLUSH_INTERVAL = 1000000000L;         // 写入文件的最长间隔(ns)
+
+
+    private SessionLog()
+    {
+    }
+
+
+    /**
+     * 会话记录的接收者：记录文件，或回放时比较输出的SessionReplay
+     */
+    public interface Sink
+    {
+        /**
+         * 记录一个条目，时间为调用时刻
+         *
+         * @param type
+         *            COMMAND，RECORD或REPLY
+         * @param data
+         *            内容，不会被保留
+         * @param offset
+         *            起始位置
+         * @param length
+         *            长度
+         */
+        void append(int type, byte[] data, int offset, int length);
+    }
+
+
+    /**
+     * 打开记录文件并写入会话头，文件已存在时追加
+     *
+     * @param fileName
+     *            记录文件名称
+     * @param sensorName
+     *            传感器名称
+     * @return 记录文件
+     * @throws IOException
+     *             打开或写入文件出错
+     */
+    public static Writer create(String fileName, String sensorName) throws IOException
+    {
+        return new Writer(fileName, sensorName);
+    }
+
+
+    /**
+     * 打开记录文件读取
+     *
+     * @param fileName
+     *            记录文件名称
+     * @return 读取器
+     * @throws IOException
+     *             打开文件出错
+     */
+    public static Reader open(String fileName) throws IOException
+    {
+        return new Reader(fileName);
+    }
+
+
+    /**
+     * Flusher 所有记录文件共用的后台写入线程，第一次创建Writer时才启动
+     */
+    private static final class Flusher
+    {
+        static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-log-flush");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+
+    /**
+     * Writer 只追加的记录文件。append在发送线程中调用，数据记录和回复只写入缓冲区，缓冲区满或距上次写入超过1秒时才写文件；
+     * 命令立即写文件。传感器不再发送时由后台线程每秒把缓冲区中剩下的条目写入文件，进程被强行结束时最多丢失最近1秒的条目，
+     * 不会丢失触发问题的命令
+     */
+    public static final class Writer implements Sink, Closeable
+    {
+        private final String             fileName;                    // 记录文件名称
+        private final OutputStream       out;                         // 文件输出流
+        private final byte[]             header = new byte[1 + 10 + 5];// 条目头：类型，时间，长度
+        private final ScheduledFuture<?> timer;                       // 后台定时写入
+        private long                     last;                        // 上一条目的时间(System.nanoTime)
+        private long                     flushed;                     // 上次写文件的时间
+        private boolean                  dirty;                       // 缓冲区中是否有还没有写文件的条目
+        private boolean                  closed;                      // 是否已关闭（或写入出错）
+
+
+        private Writer(String fileName, String sensorName) throws IOException
+        {
+            this.fileName = fileName;
+            this.out = new BufferedOutputStream(new FileOutputStream(fileName, true), BUFFER_SIZE);
+            byte[] name = sensorName.getBytes(StandardCharsets.UTF_8);
+            byte[] head = new byte[MAGIC.length + 1 + 8 + 2];
+            System.arraycopy(MAGIC, 0, head, 0, MAGIC.length);
+            head[MAGIC.length] = VERSION;
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < 8; i++)
+            {
+                head[MAGIC.length + 1 + i] = (byte)(now >>> (56 - 8 * i));
+            }
+            head[head.length - 2] = (byte)(name.length >>> 8);
+            head[head.length - 1] = (byte)name.length;
+            try
+            {
+                out.write(head);
+                out.write(name);
+                out.flush();
+            }
+            catch (IOException e)
+            {
+                out.close();
+                throw e;
+            }
+            this.last = System.nanoTime();
+            this.flushed = last;
+            this.timer = Flusher.TIMER.scheduleWithFixedDelay(this::flushIdle, FLUSH_INTERVAL, FLUSH_INTERVAL,
+                TimeUnit.NANOSECONDS);
+        }
+
+
+        @Override
+        public synchronized void append(int type, byte[] data, int offset, int length)
+        {
+            if (closed)
+            {
+                return;
+            }
+            long now = System.nanoTime();
+            int n = 0;
+            header[n++] = (byte)type;
+            n = putVarint(header, n, now - last);
+            n = putVarint(header, n, length);
+            try
+            {
+                out.write(header, 0, n);
+                out.write(data, offset, length);
+                dirty = true;
+                if (type == COMMAND || now - flushed > FLUSH_INTERVAL)
+                {
+                    flush(now);
+                }
+            }
+            catch (IOException e)
+            {
+                System.err.println("Fail to write session log " + fileName + ": " + e.getMessage());
+                close();
+            }
+            last = now;
+        }
+
+
+        private void flush(long now) throws IOException
+        {
+            out.flush();
+            flushed = now;
+            dirty = false;
+        }
+
+
+        /**
+         * 后台线程调用：缓冲区中的条目超过FLUSH_INTERVAL还没有写文件时写入
+         */
+        private synchronized void flushIdle()
+        {
+            long now = System.nanoTime();
+            if (closed || !dirty || now - flushed < FLUSH_INTERVAL)
+            {
+                return;
+            }
+            try
+            {
+                flush(now);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Fail to write session log " + fileName + ": " + e.getMessage());
+                close();
+            }
+        }
+
+
+        private static int putVarint(byte[] buffer, int position, long value)
+        {
+            while ((value & ~0x7fL) != 0)
+            {
+                buffer[position++] = (byte)((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte)value;
+            return position;
+        }
+
+
+        /**
+         * 写入剩余的数据并关闭文件
+         */
+        @Override
+        public synchronized void close()
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            timer.cancel(false);
+            try
+            {
+                out.close();
+            }
+            catch (IOException e)
+            {
+                System.err.println("Fail to close session log " + fileName);
+            }
+        }
+    }
+
+
+    /**
+     * Reader 按顺序读取记录文件中的条目
+     */
+    public static final class Reader implements Closeable
+    {
+        private final DataInputStream in;                    // 文件输入流
+        private String                sensorName;            // 第一个会话的传感器名称
+        private long                  startMillis;           // 第一个会话的开始时间(epoch毫秒)
+        private int                   sessions;              // 已读到的会话数
+        private int                   type;                  // 当前条目的类型
+        private long                  nanos;                 // 当前条目距第一个会话开始的纳秒数
+        private byte[]                data   = new byte[256];// 当前条目的内容
+        private int                   length;                // 当前条目的长度
+
+
+        private Reader(String fileName) throws IOException
+        {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE));
+        }
+
+
+        /**
+         * 读取下一个条目
+         *
+         * @return 没有更多条目时返回false
+         * @throws IOException
+         *             读取出错或文件格式错误
+         */
+        public boolean next() throws IOException
+        {
+            try
+            {
+                while (true)
+                {
+                    int b = in.read();
+                    if (b < 0)
+                    {
+                        return false;
+                    }
+                    if (b == MAGIC[0])
+                    {
+                        readHeader();
+                        continue;
+                    }
+                    if (b < COMMAND || b > REPLY || sessions == 0)
+                    {
+                        throw new IOException("Not a session log");
+                    }
+                    type = b;
+                    nanos += readVarint();
+                    long size = readVarint();
+                    if (size > Integer.MAX_VALUE)
+                    {
+                        throw new IOException("Corrupt session log");
+                    }
+                    length = (int)size;
+                    if (length > data.length)
+                    {
+                        data = new byte[Math.max(length, data.length * 2)];
+                    }
+                    in.readFully(data, 0, length);
+                    return true;
+                }
+            }
+            catch (EOFException e)
+            {
+                // 最后一个条目不完整
+                return false;
+            }
+        }
+
+
+        private void readHeader() throws IOException
+        {
+            for (int i = 1; i < MAGIC.length; i++)
+            {
+                if (in.readUnsignedByte() != MAGIC[i])
+                {
+                    throw new IOException("Not a session log");
+                }
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION)
+            {
+                throw new IOException("Unsupported session log version " + version);
+            }
+            long millis = in.readLong();
+            byte[] name = new byte[in.readUnsignedShort()];
+            in.readFully(name);
+            if (sessions++ == 0)
+            {
+                startMillis = millis;
+                sensorName = new String(name, StandardCharsets.UTF_8);
+            }
+        }
+
+
+        private long readVarint() throws IOException
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                int b = in.readUnsignedByte();
+                value |= (long)(b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt session log");
+        }
+
+
+        public String getSensorName()
+        {
+            return sensorName;
+        }
+
+
+        /**
+         * 获取第一个会话的开始时间(epoch毫秒)
+         */
+        public long getStartMillis()
+        {
+            return startMillis;
+        }
+
+
+        /**
+         * 获取当前条目的类型：COMMAND，RECORD或REPLY
+         */
+        public int getType()
+        {
+            return type;
+        }
+
+
+        /**
+         * 获取当前条目距第一个会话开始的时间(ns)，多个会话首尾相接
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+
+        /**
+         * 获取当前条目的内容，下一次next()后会被覆盖
+         */
+        public byte[] getData()
+        {
+            return data;
+        }
+
+
+        public int getLength()
+        {
+            return length;
+        }
+
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
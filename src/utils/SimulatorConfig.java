@@ -0,0 +1,323 @@
+package utils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * SimulatorConfig 多传感器配置文件，使用properties格式，例如：
+ *
+ * <pre>
+ * # 执行方式：auto，virtual（每个传感器一个虚拟线程），shared（共享调度器）
+ * scheduler.mode=auto
+ * # 共享调度器线程数
+ * scheduler.threads=4
+ * # 命令处理线程数
+ * dispatcher.threads=2
+ * # 共享数据文件缓存的内存上限(MB)
+ * cache.maxMB=1024
+ * # 启动时并行打开所有串口，每个串口被占用时等待释放的最长时间(ms)
+ * port.openTimeout=2000
+ * # 运行统计：是否注册JMX MBean，快照周期(s)，快照写入的CSV文件，是否打印快照
+ * metrics.jmx=true
+ * metrics.period=10
+ * metrics.csv=metrics.csv
+ * metrics.log=false
+ * # 回放位置检查点：保存各传感器回放位置的文件，保存周期(s)
+ * checkpoint.file=simulator.checkpoint
+ * checkpoint.period=1
+ * # 需要模拟的传感器id列表，逗号分隔
+ * sensors=ctd,adcp
+ * ctd.port=COM2
+ * ctd.name=CTD
+ * ctd.file=ctd.dat
+ * ctd.baudRate=9600
+ * ctd.fileType=1
+ * ctd.interval=300
+ * ctd.autoStart=false
+ * ctd.mirrors=COM4,COM5
+ * adcp.port=COM3
+ * adcp.file=adcp.bin
+ * adcp.fileType=2
+ * </pre>
+ *
+ * name缺省为id，baudRate缺省9600，fileType缺省1，interval缺省300ms，autoStart缺省false；
+ * mirrors为同时接收同一数据的其他串口（只发送数据记录，不接收命令），缺省没有；
+ * scheduler.mode缺省auto（JVM支持虚拟线程即Java 21及以上时为virtual，否则为shared），virtual时scheduler.threads不起作用；
+ * scheduler.threads缺省为传感器数与CPU数2倍中的较小者；dispatcher.threads缺省为传感器数与4中的较小者，virtual时为传感器数；
+ * cache.maxMB缺省1024，port.openTimeout缺省2000ms，metrics.jmx缺省true，metrics.period缺省10s，metrics.csv缺省不写，metrics.log缺省false；
+ * checkpoint.file缺省不保存回放位置（每次启动从头开始），checkpoint.period缺省1s
+ *
+ * @author Yibing Zhang
+ */
+public class SimulatorConfig
+{
+    private static final long  DEFAULT_CACHE_MB = 1024;// 缺省数据文件缓存上限(MB)
+
+    private boolean            virtualThreads;   // 是否使用虚拟线程发送数据和处理命令
+    private int                schedulerThreads; // 共享调度器线程数
+    private int                dispatcherThreads;// 命令处理线程数
+    private long               cacheBytes;       // 共享数据文件缓存的内存上限
+    private int                openTimeout;      // 串口被占用时等待释放的最长时间(ms)
+    private boolean            metricsJmx;       // 是否注册JMX MBean
+    private int                metricsPeriod;    // 运行统计快照周期(s)
+    private String             metricsCsv;       // 快照写入的CSV文件，为null时不写
+    private boolean            metricsLog;       // 是否打印快照
+    private String             checkpointFile;   // 保存回放位置的文件，为null时不保存
+    private int                checkpointPeriod; // 保存回放位置的周期(s)
+    private List<SensorConfig> sensors;          // 传感器配置列表
+
+
+    private SimulatorConfig(int schedulerThreads, int dispatcherThreads, long cacheBytes, List<SensorConfig> sensors)
+    {
+        this.virtualThreads = VirtualThreads.isSupported();
+        this.schedulerThreads = schedulerThreads;
+        this.dispatcherThreads = dispatcherThreads;
+        this.cacheBytes = cacheBytes;
+        this.openTimeout = 2000;
+        this.metricsJmx = true;
+        this.metricsPeriod = 10;
+        this.metricsCsv = null;
+        this.metricsLog = false;
+        this.checkpointFile = null;
+        this.checkpointPeriod = 1;
+        this.sensors = sensors;
+    }
+
+
+    /**
+     * 只有一个传感器的配置（命令行模式）
+     *
+     * @param sensor
+     *            传感器配置
+     * @return 配置
+     */
+    public static SimulatorConfig single(SensorConfig sensor)
+    {
+        return new SimulatorConfig(1, 1, DEFAULT_CACHE_MB * 1024 * 1024, Collections.singletonList(sensor));
+    }
+
+
+    /**
+     * 读取配置文件
+     *
+     * @param fileName
+     *            配置文件名称
+     * @return 配置
+     * @throws IOException
+     *             读取文件出错
+     * @throws IllegalArgumentException
+     *             配置内容有误
+     */
+    public static SimulatorConfig load(String fileName) throws IOException
+    {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(fileName))
+        {
+            props.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+        return parse(props);
+    }
+
+
+    /**
+     * 解析配置内容
+     *
+     * @param props
+     *            配置内容
+     * @return 配置
+     * @throws IllegalArgumentException
+     *             配置内容有误
+     */
+    public static SimulatorConfig parse(Properties props)
+    {
+        String ids = props.getProperty("sensors", "").trim();
+        if (ids.isEmpty())
+        {
+            throw new IllegalArgumentException("No sensors configured");
+        }
+        List<SensorConfig> sensors = new ArrayList<SensorConfig>();
+        List<String> ports = new ArrayList<String>();
+        for (String id : ids.split(","))
+        {
+            SensorConfig sensor = new SensorConfig(id.trim(), props);
+            List<String> outputs = new ArrayList<String>(sensor.getMirrors());
+            outputs.add(0, sensor.getPortName());
+            for (String portName : outputs)
+            {
+                if (ports.contains(portName))
+                {
+                    throw new IllegalArgumentException("Port " + portName + " is used more than once");
+                }
+                ports.add(portName);
+            }
+            sensors.add(sensor);
+        }
+        boolean virtualThreads = parseMode(props.getProperty("scheduler.mode", "auto").trim());
+        int schedulerThreads = parsePositive(props, "scheduler.threads",
+            Math.min(sensors.size(), Runtime.getRuntime().availableProcessors() * 2));
+        int dispatcherThreads = parsePositive(props, "dispatcher.threads",
+            virtualThreads ? sensors.size() : Math.min(sensors.size(), 4));
+        long cacheMB = parsePositive(props, "cache.maxMB", (int)DEFAULT_CACHE_MB);
+        SimulatorConfig config = new SimulatorConfig(schedulerThreads, dispatcherThreads, cacheMB * 1024 * 1024,
+            Collections.unmodifiableList(sensors));
+        config.virtualThreads = virtualThreads;
+        config.openTimeout = parsePositive(props, "port.openTimeout", 2000);
+        config.metricsJmx = Boolean.parseBoolean(props.getProperty("metrics.jmx", "true").trim());
+        config.metricsPeriod = parsePositive(props, "metrics.period", 10);
+        String csv = props.getProperty("metrics.csv", "").trim();
+        config.metricsCsv = csv.isEmpty() ? null : csv;
+        config.metricsLog = Boolean.parseBoolean(props.getProperty("metrics.log", "false").trim());
+        String checkpoint = props.getProperty("checkpoint.file", "").trim();
+        config.checkpointFile = checkpoint.isEmpty() ? null : checkpoint;
+        config.checkpointPeriod = parsePositive(props, "checkpoint.period", 1);
+        return config;
+    }
+
+
+    /**
+     * 解析scheduler.mode
+     *
+     * @return 是否使用虚拟线程
+     */
+    private static boolean parseMode(String mode)
+    {
+        switch (mode)
+        {
+            case "auto":
+                return VirtualThreads.isSupported();
+            case "virtual":
+                if (!VirtualThreads.isSupported())
+                {
+                    throw new IllegalArgumentException("scheduler.mode=virtual needs Java 21 or later");
+                }
+                return true;
+            case "shared":
+                return false;
+            default:
+                throw new IllegalArgumentException("Invalid scheduler.mode " + mode);
+        }
+    }
+
+
+    private static int parsePositive(Properties props, String key, int def)
+    {
+        int value;
+        try
+        {
+            value = Integer.parseInt(props.getProperty(key, String.valueOf(def)).trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid " + key);
+        }
+        if (value <= 0)
+        {
+            throw new IllegalArgumentException(key + " must be positive");
+        }
+        return value;
+    }
+
+
+    /**
+     * 是否使用虚拟线程：每个传感器的数据发送在自己的虚拟线程中进行，命令处理线程也是虚拟线程
+     */
+    public boolean isVirtualThreads()
+    {
+        return virtualThreads;
+    }
+
+
+    public int getSchedulerThreads()
+    {
+        return schedulerThreads;
+    }
+
+
+    public int getDispatcherThreads()
+    {
+        return dispatcherThreads;
+    }
+
+
+    /**
+     * 获取共享数据文件缓存的内存上限(byte)
+     */
+    public long getCacheBytes()
+    {
+        return cacheBytes;
+    }
+
+
+    /**
+     * 获取启动时每个串口被占用时等待释放的最长时间(ms)
+     */
+    public int getOpenTimeout()
+    {
+        return openTimeout;
+    }
+
+
+    public boolean isMetricsJmx()
+    {
+        return metricsJmx;
+    }
+
+
+    /**
+     * 获取运行统计快照周期(s)
+     */
+    public int getMetricsPeriod()
+    {
+        return metricsPeriod;
+    }
+
+
+    /**
+     * 获取快照写入的CSV文件
+     *
+     * @return 没有配置时为null
+     */
+    public String getMetricsCsv()
+    {
+        return metricsCsv;
+    }
+
+
+    public boolean isMetricsLog()
+    {
+        return metricsLog;
+    }
+
+
+    /**
+     * 获取保存回放位置的文件
+     *
+     * @return 没有配置时为null
+     */
+    public String getCheckpointFile()
+    {
+        return checkpointFile;
+    }
+
+
+    /**
+     * 获取保存回放位置的周期(s)
+     */
+    public int getCheckpointPeriod()
+    {
+        return checkpointPeriod;
+    }
+
+
+    public List<SensorConfig> getSensors()
+    {
+        return sensors;
+    }
+}
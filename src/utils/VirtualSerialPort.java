@@ -0,0 +1,442 @@
+package utils;
+
+import gnu.io.SerialPort;
+import gnu.io.SerialPortEvent;
+import gnu.io.SerialPortEventListener;
+
+/**
+ * VirtualSerialPort 不对应真实串口的SerialPort基类，例如网络串口和测试用的内存串口。线路参数只是记录下来，
+ * 监听器在子类收到数据时通过notifyDataAvailable()通知，其他串口功能都是空操作。
+ * 子类提供输入输出流；输入流没有数据时read应返回0（与RXTX相同），输入输出流的close不应关闭串口
+ *
+ * @author Yibing Zhang
+ */
+public abstract class VirtualSerialPort extends SerialPort
+{
+    private volatile int                     baudRate    = 9600;            // 波特率
+    private volatile int                     dataBits    = DATABITS_8;      // 数据位
+    private volatile int                     stopBits    = STOPBITS_1;      // 停止位
+    private volatile int                     parity      = PARITY_NONE;     // 校验位
+    private volatile int                     flowControl = FLOWCONTROL_NONE;// 流控方式
+    private volatile SerialPortEventListener listener;                      // 监听器
+    private volatile boolean                 notifyData;                    // 是否通知有数据到达
+
+
+    protected VirtualSerialPort(String name)
+    {
+        this.name = name;
+    }
+
+
+    /**
+     * 子类收到数据后调用，通知监听器有数据可读
+     */
+    protected void notifyDataAvailable()
+    {
+        SerialPortEventListener l = listener;
+        if (l != null && notifyData)
+        {
+            l.serialEvent(new SerialPortEvent(this, SerialPortEvent.DATA_AVAILABLE, false, true));
+        }
+    }
+
+
+    @Override
+    public void setSerialPortParams(int baudRate, int dataBits, int stopBits, int parity)
+    {
+        this.baudRate = baudRate;
+        this.dataBits = dataBits;
+        this.stopBits = stopBits;
+        this.parity = parity;
+    }
+
+
+    @Override
+    public int getBaudRate()
+    {
+        return baudRate;
+    }
+
+
+    @Override
+    public int getDataBits()
+    {
+        return dataBits;
+    }
+
+
+    @Override
+    public int getStopBits()
+    {
+        return stopBits;
+    }
+
+
+    @Override
+    public int getParity()
+    {
+        return parity;
+    }
+
+
+    @Override
+    public void setFlowControlMode(int mode)
+    {
+        this.flowControl = mode;
+    }
+
+
+    @Override
+    public int getFlowControlMode()
+    {
+        return flowControl;
+    }
+
+
+    @Override
+    public void addEventListener(SerialPortEventListener listener)
+    {
+        this.listener = listener;
+    }
+
+
+    @Override
+    public void removeEventListener()
+    {
+        listener = null;
+    }
+
+
+    @Override
+    public void notifyOnDataAvailable(boolean enable)
+    {
+        notifyData = enable;
+    }
+
+
+    /**
+     * 子类释放自己的资源；CommPort.close()会查找RXTX的端口标识，这里不能调用
+     */
+    @Override
+    public void close()
+    {
+    }
+
+
+    // 以下串口功能在虚拟串口中没有意义
+
+    @Override
+    public boolean isDTR()
+    {
+        return true;
+    }
+
+
+    @Override
+    public void setDTR(boolean dtr)
+    {
+    }
+
+
+    @Override
+    public void setRTS(boolean rts)
+    {
+    }
+
+
+    @Override
+    public boolean isCTS()
+    {
+        return true;
+    }
+
+
+    @Override
+    public boolean isDSR()
+    {
+        return true;
+    }
+
+
+    @Override
+    public boolean isCD()
+    {
+        return true;
+    }
+
+
+    @Override
+    public boolean isRI()
+    {
+        return false;
+    }
+
+
+    @Override
+    public boolean isRTS()
+    {
+        return true;
+    }
+
+
+    @Override
+    public void sendBreak(int duration)
+    {
+    }
+
+
+    @Override
+    public void notifyOnOutputEmpty(boolean enable)
+    {
+    }
+
+
+    @Override
+    public void notifyOnCTS(boolean enable)
+    {
+    }
+
+
+    @Override
+    public void notifyOnDSR(boolean enable)
+    {
+    }
+
+
+    @Override
+    public void notifyOnRingIndicator(boolean enable)
+    {
+    }
+
+
+    @Override
+    public void notifyOnCarrierDetect(boolean enable)
+    {
+    }
+
+
+    @Override
+    public void notifyOnOverrunError(boolean enable)
+    {
+    }
+
+
+    @Override
+    public void notifyOnParityError(boolean enable)
+    {
+    }
+
+
+    @Override
+    public void notifyOnFramingError(boolean enable)
+    {
+    }
+
+
+    @Override
+    public void notifyOnBreakInterrupt(boolean enable)
+    {
+    }
+
+
+    @Override
+    public byte getParityErrorChar()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public boolean setParityErrorChar(byte b)
+    {
+        return false;
+    }
+
+
+    @Override
+    public byte getEndOfInputChar()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public boolean setEndOfInputChar(byte b)
+    {
+        return false;
+    }
+
+
+    @Override
+    public boolean setUARTType(String type, boolean test)
+    {
+        return false;
+    }
+
+
+    @Override
+    public String getUARTType()
+    {
+        return "virtual";
+    }
+
+
+    @Override
+    public boolean setBaudBase(int baudBase)
+    {
+        return false;
+    }
+
+
+    @Override
+    public int getBaudBase()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public boolean setDivisor(int divisor)
+    {
+        return false;
+    }
+
+
+    @Override
+    public int getDivisor()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public boolean setLowLatency()
+    {
+        return false;
+    }
+
+
+    @Override
+    public boolean getLowLatency()
+    {
+        return false;
+    }
+
+
+    @Override
+    public boolean setCallOutHangup(boolean hangup)
+    {
+        return false;
+    }
+
+
+    @Override
+    public boolean getCallOutHangup()
+    {
+        return false;
+    }
+
+
+    @Override
+    public void enableReceiveFraming(int framingByte)
+    {
+    }
+
+
+    @Override
+    public void disableReceiveFraming()
+    {
+    }
+
+
+    @Override
+    public boolean isReceiveFramingEnabled()
+    {
+        return false;
+    }
+
+
+    @Override
+    public int getReceiveFramingByte()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public void disableReceiveTimeout()
+    {
+    }
+
+
+    @Override
+    public void enableReceiveTimeout(int timeout)
+    {
+    }
+
+
+    @Override
+    public boolean isReceiveTimeoutEnabled()
+    {
+        return false;
+    }
+
+
+    @Override
+    public int getReceiveTimeout()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public void enableReceiveThreshold(int threshold)
+    {
+    }
+
+
+    @Override
+    public void disableReceiveThreshold()
+    {
+    }
+
+
+    @Override
+    public int getReceiveThreshold()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public boolean isReceiveThresholdEnabled()
+    {
+        return false;
+    }
+
+
+    @Override
+    public void setInputBufferSize(int size)
+    {
+    }
+
+
+    @Override
+    public int getInputBufferSize()
+    {
+        return 0;
+    }
+
+
+    @Override
+    public void setOutputBufferSize(int size)
+    {
+    }
+
+
+    @Override
+    public int getOutputBufferSize()
+    {
+        return 0;
+    }
+}
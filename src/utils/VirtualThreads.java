@@ -0,0 +1,71 @@
+package utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * VirtualThreads 在Java 21及以上的JVM中创建虚拟线程。工程按Java 8编译，不能直接调用Thread.ofVirtual()，
+ * 因此通过反射创建线程工厂；JVM不支持虚拟线程时isSupported()返回false，newFactory()返回null
+ *
+ * @author Yibing Zhang
+ */
+public final class VirtualThreads
+{
+    private static final Method  OF_VIRTUAL = find("java.lang.Thread", "ofVirtual");                             // Thread.ofVirtual()
+    private static final Method  NAME       = find("java.lang.Thread$Builder", "name", String.class, long.class);// Builder.name(prefix, start)
+    private static final Method  FACTORY    = find("java.lang.Thread$Builder", "factory");                       // Builder.factory()
+    private static final boolean SUPPORTED  = newFactory("probe-") != null;                                      // JVM是否支持虚拟线程
+
+
+    private VirtualThreads()
+    {
+    }
+
+
+    private static Method find(String className, String name, Class<?>... parameterTypes)
+    {
+        try
+        {
+            return Class.forName(className).getMethod(name, parameterTypes);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * JVM是否支持虚拟线程（Java 21及以上）
+     */
+    public static boolean isSupported()
+    {
+        return SUPPORTED;
+    }
+
+
+    /**
+     * 创建虚拟线程工厂
+     *
+     * @param prefix
+     *            线程名前缀，后面接从1开始的序号
+     * @return 线程工厂，JVM不支持虚拟线程时返回null
+     */
+    public static ThreadFactory newFactory(String prefix)
+    {
+        if (OF_VIRTUAL == null || NAME == null || FACTORY == null)
+        {
+            return null;
+        }
+        try
+        {
+            Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 1L);
+            return (ThreadFactory)FACTORY.invoke(builder);
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            // Java 19/20中虚拟线程是预览功能，未启用时抛出UnsupportedOperationException
+            return null;
+        }
+    }
+}